@@ -8,26 +8,47 @@ import 'package:epson_printer_platform_interface/epson_printer_platform_interfac
 class EpsonPrinter {
   static final EpsonPrinterPlatform _platform = EpsonPrinterPlatform.instance;
 
-  /// Discovers available Epson printers on the network/bluetooth
-  static Future<List<String>> discoverPrinters() {
-    return _platform.discoverPrinters();
+  /// Discovers available Epson printers on the network/bluetooth.
+  ///
+  /// With [useCache] (Android) printers found within the discovery cache TTL are returned at once
+  /// and the search runs in the background to refresh the cache; the same applies to the other
+  /// discover methods.
+  static Future<List<String>> discoverPrinters({bool useCache = false}) {
+    return _platform.discoverPrinters(useCache: useCache);
   }
 
   /// Discovers available Bluetooth Epson printers. On iOS this returns both live and already paired devices.
-  static Future<List<String>> discoverBluetoothPrinters() {
-    return _platform.discoverBluetoothPrinters();
+  static Future<List<String>> discoverBluetoothPrinters({bool useCache = false}) {
+    return _platform.discoverBluetoothPrinters(useCache: useCache);
   }
 
-  /// Discovers available USB Epson printers specifically
-  static Future<List<String>> discoverUsbPrinters() {
-    return _platform.discoverUsbPrinters();
+  /// Discovers available USB Epson printers specifically.
+  ///
+  /// On Android attached Epson printers are read from the USB device list, which is kept current by
+  /// attach/detach broadcasts, so this returns immediately; the SDK's USB discovery only runs when
+  /// another printer-class device is attached or [sdkDiscovery] is set. discoverAllPrinters uses
+  /// the same fast path for its USB stage.
+  static Future<List<String>> discoverUsbPrinters({bool useCache = false, bool sdkDiscovery = false}) {
+    return _platform.discoverUsbPrinters(useCache: useCache, sdkDiscovery: sdkDiscovery);
   }
 
-  /// Discovers all printer interfaces in one go (native orchestrated)
-  static Future<List<String>> discoverAllPrinters() {
-    return _platform.discoverAllPrinters();
+  /// Discovers all printer interfaces in one go (native orchestrated).
+  ///
+  /// By default LAN, Bluetooth and USB are searched one after another (about 13 s). With
+  /// [singleSession] Android runs one all-transport search for at most [timeoutMs] (default 8000)
+  /// that returns as soon as [expectedTarget] (e.g. `TCP:192.168.1.20` or `BT:00:01:90:AA:BB:CC`)
+  /// answers, and pushes every printer to [discoveryEvents] as it is found.
+  static Future<List<String>> discoverAllPrinters(
+      {bool singleSession = false, String? expectedTarget, int? timeoutMs, bool useCache = false}) {
+    return _platform.discoverAllPrinters(
+        singleSession: singleSession, expectedTarget: expectedTarget, timeoutMs: timeoutMs, useCache: useCache);
   }
 
+  /// Single-session discovery progress: `found` events (`entry`, `target`, `portType`, `source`
+  /// `live` or `bonded`, `elapsedMs`) and a final `done` event with `reason` (`timeout` or
+  /// `expectedFound`) and `count`, all tagged with `sessionId`
+  static Stream<Map<String, dynamic>> get discoveryEvents => _platform.discoveryEvents;
+
   @Deprecated('Use discoverBluetoothPrinters() instead; it returns paired and live Bluetooth printers.')
   static Future<List<String>> findPairedBluetoothPrinters() {
     // Alias to keep API simple and consistent
@@ -43,34 +64,91 @@ class EpsonPrinter {
     return _platform.usbDiagnostics();
   }
 
-  /// Connects to a Epson printer using the provided settings
-  static Future<void> connect(EpsonConnectionSettings settings) {
+  /// Connects to a Epson printer using the provided settings.
+  ///
+  /// On Android nothing runs on the UI thread, and the result has per-phase times in ms:
+  /// - `discoveryStopMs`: stopping discovery
+  /// - `settleMs`: Bluetooth settle wait
+  /// - `queueMs`: waiting behind an earlier connect or disconnect
+  /// - `prepareMs`: releasing an earlier connection to the same printer
+  /// - `sdkConnectMs`: the SDK connect itself
+  /// - `totalMs`: the whole call
+  ///
+  /// It also reports the `target` actually connected to. [cancelConnect] or [disconnect] fail a
+  /// pending connect with `CONNECT_CANCELLED`.
+  ///
+  /// On Android several printers can be connected at once (say kitchen and counter); connecting
+  /// one leaves the others connected. Each has its own job queue, so their jobs print in
+  /// parallel. Calls that take a `target` address one of them; without it they go to the printer
+  /// connected last.
+  static Future<Map<String, dynamic>> connect(EpsonConnectionSettings settings) {
     return _platform.connect(settings);
   }
 
-  /// Disconnects from the current printer
-  static Future<void> disconnect() {
-    return _platform.disconnect();
+  /// Cancels connects still in progress (Android) and returns how many were cancelled. A connect
+  /// already inside the SDK is answered at once; its printer is released when the SDK returns. A
+  /// connect that has already registered its printer is not counted and completes normally.
+  static Future<int> cancelConnect() {
+    return _platform.cancelConnect();
+  }
+
+  /// Disconnects [target], or every connected printer when it is null
+  static Future<void> disconnect({String? target}) {
+    return _platform.disconnect(target: target);
   }
 
-  /// Prints a receipt with the given content
-  static Future<void> printReceipt(EpsonPrintJob printJob) {
+  /// Lists the connected printers (Android): `target`, `link` state, `printableWidth`,
+  /// `queueDepth`, `inFlightJobId` and `isDefault` for the one calls without a target go to
+  static Future<List<Map<String, dynamic>>> getConnectedPrinters() {
+    return _platform.getConnectedPrinters();
+  }
+
+  /// Prints a receipt with the given content.
+  ///
+  /// On Android the future completes once the printer reports the job finished (`onPtrReceive`),
+  /// and the result carries `jobId`, `queueWaitMs`, `buildMs`, `transferMs`, `printMs`, `totalMs`
+  /// and image details such as `imagePeakBytes`. `settings['timeout']` bounds the wait (ms).
+  ///
+  /// `settings['encoder'] = 'escpos'` builds the receipt as one raw ESC/POS buffer instead of one
+  /// SDK call per command. Receipts it cannot encode (non-ASCII text, feed positions, ...) fall back
+  /// to the SDK; the result's `encoder` and `escposFallback` say which path was used.
+  ///
+  /// Alignment and style changes that repeat the current state are dropped and consecutive text is
+  /// merged before the buffer is built (`commandsEliminated`, `textsMerged`, `bytesSaved` in the
+  /// result); pass `settings['optimize'] = false` to send the commands exactly as given.
+  ///
+  /// `settings['imageBandHeight']` (or an image's `bandHeight` parameter) splits tall images into
+  /// bands of that many rows, each its own raster command in the same send, so the printer can start
+  /// on the first band while the rest is still arriving; the result then carries `imageBands`.
+  static Future<Map<String, dynamic>> printReceipt(EpsonPrintJob printJob) {
     return _platform.printReceipt(printJob);
   }
 
-  /// Gets the current printer status
-  static Future<EpsonPrinterStatus> getStatus() {
-    return _platform.getStatus();
+  /// Gets the current printer status.
+  ///
+  /// On Android this is answered from the status monitor's cache without talking to the printer;
+  /// `status` is `connected`, `offline` (cover open, paper out, error), `reconnecting` or
+  /// `disconnected`. Paper, cover and error fields are only tracked when the connection was made
+  /// with `EpsonConnectionSettings.monitorStatus` (`monitored` is false otherwise).
+  static Future<EpsonPrinterStatus> getStatus({String? target}) {
+    return _platform.getStatus(target: target);
   }
 
-  /// Opens the cash drawer connected to the printer
-  static Future<void> openCashDrawer() {
-    return _platform.openCashDrawer();
+  /// Opens the cash drawer connected to the printer.
+  ///
+  /// On Android the drawer kick that last worked for the printer is tried first; the others
+  /// (pin 2/5, 100/200 ms, addPulse then raw ESC p) follow only if the SDK rejects it. A printer
+  /// error (cover open, offline) or no answer within 5 s fails with `DRAWER_FAILED` at once, as no
+  /// other kick would help and the drawer may already have opened; a kick is only remembered once
+  /// the printer confirmed it. The result has the kick used (`method`, `pin`, `pulseMs`), its
+  /// `source` (`learned`, `default` or `override`) and `attempts`, the number of kicks tried.
+  static Future<Map<String, dynamic>> openCashDrawer({String? target}) {
+    return _platform.openCashDrawer(target: target);
   }
 
   /// Checks if a printer is currently connected
-  static Future<bool> isConnected() {
-    return _platform.isConnected();
+  static Future<bool> isConnected({String? target}) {
+    return _platform.isConnected(target: target);
   }
 
   /// Returns current native discovery state (idle, discoveringLan, discoveringBluetooth, discoveringUsb, cleaningUp, suspendedAfterUsbDisconnect)
@@ -84,8 +162,200 @@ class EpsonPrinter {
   }
 
   /// Detects the paper width of the connected printer
-  static Future<String> detectPaperWidth() {
-    return _platform.detectPaperWidth();
+  static Future<String> detectPaperWidth({String? target}) {
+    return _platform.detectPaperWidth(target: target);
+  }
+
+  /// Returns the print job queue state (depth, capacity, oldestJobAgeMs, running job kind).
+  /// Jobs submitted while the queue is full fail with a `QUEUE_FULL` PlatformException.
+  static Future<Map<String, dynamic>> getJobQueueStatus({String? target}) {
+    return _platform.getJobQueueStatus(target: target);
+  }
+
+  /// Prints several receipts with a single send (much faster over Bluetooth than one call each).
+  ///
+  /// The result's `receipts` list has one entry per input with `status` `printed`, `skipped`
+  /// (could not be built; not sent) or `unconfirmed` (sent, but the printer reported a failure
+  /// for the batch). A printer failure surfaces as a `PRINT_FAILED` PlatformException whose
+  /// `details` carry the same map.
+  static Future<Map<String, dynamic>> printBatch(List<EpsonPrintJob> receipts,
+      {bool cutBetween = true, Map<String, dynamic>? settings, String? target}) {
+    return _platform.printBatch(receipts, cutBetween: cutBetween, settings: settings, target: target);
+  }
+
+  /// Registers a receipt template. Text, barcode data and image paths may contain `{{name}}`
+  /// placeholders; the result lists the variable names the template expects.
+  static Future<Map<String, dynamic>> registerTemplate(String id, List<EpsonPrintCommand> commands) {
+    return _platform.registerTemplate(id, commands);
+  }
+
+  /// Prints a registered template with the given placeholder values
+  static Future<Map<String, dynamic>> printTemplate(String id, Map<String, String> variables,
+      {Map<String, dynamic>? settings, String? target}) {
+    return _platform.printTemplate(id, variables, settings: settings, target: target);
+  }
+
+  /// Removes a registered template
+  static Future<bool> unregisterTemplate(String id) {
+    return _platform.unregisterTemplate(id);
+  }
+
+  /// Returns image cache counters (hits, misses, evictions, entries, bytes, maxBytes)
+  static Future<Map<String, dynamic>> getImageCacheStats() {
+    return _platform.getImageCacheStats();
+  }
+
+  /// Sets the image cache memory budget and/or clears it
+  static Future<Map<String, dynamic>> configureImageCache({int? maxBytes, bool clear = false}) {
+    return _platform.configureImageCache(maxBytes: maxBytes, clear: clear);
+  }
+
+  /// Uploads [imagePath] into the printer's NV graphics memory under [key] (two characters).
+  ///
+  /// The plugin records per printer which image each key holds and skips the upload when the
+  /// printer already has the same raster (`uploaded: false`); [force] uploads anyway, e.g. after
+  /// the logo was changed with another tool. NV memory has limited write cycles, so avoid
+  /// uploading on every receipt; an `nvLogo` command with an `imagePath` does this automatically.
+  static Future<Map<String, dynamic>> uploadNvLogo(String key, String imagePath,
+      {int? targetWidth, int? bwThreshold, bool force = false, String? target}) {
+    return _platform.uploadNvLogo(key, imagePath,
+        targetWidth: targetWidth, bwThreshold: bwThreshold, force: force, target: target);
+  }
+
+  /// Deletes the NV logo stored under [key]
+  static Future<Map<String, dynamic>> deleteNvLogo(String key, {String? target}) {
+    return _platform.deleteNvLogo(key, target: target);
+  }
+
+  /// Forgets what the plugin recorded for [key] (or for every key) on the printer, without
+  /// touching the printer; the next `nvLogo` command with an `imagePath` uploads again. The record
+  /// cannot be checked against the printer, so call this when a printer was replaced or reset.
+  /// Returns how many entries were dropped.
+  static Future<int> forgetNvLogos({String? key, String? target}) {
+    return _platform.forgetNvLogos(key: key, target: target);
+  }
+
+  /// Returns the NV logos recorded for the connected printer (key -> hash, width, height, uploadedAt)
+  static Future<Map<String, dynamic>> getNvLogos({String? target}) {
+    return _platform.getNvLogos(target: target);
+  }
+
+  /// Returns `dots`, the width images are scaled to, and its `source`: `printer` (paper width
+  /// reported at connect), `settings` (`EpsonConnectionSettings.printableWidth`) or `default`
+  /// (series default, used when the printer did not answer)
+  static Future<Map<String, dynamic>> getPrintableWidth({String? target}) {
+    return _platform.getPrintableWidth(target: target);
+  }
+
+  /// Finds LAN printers in [cidr] (e.g. `10.20.0.0/22`, at most a /16) where discovery broadcast
+  /// is filtered, by connecting to every host in parallel (Android).
+  ///
+  /// Port 9100 is asked for the printer name; hosts that answer are returned in `printers` as
+  /// `TCP:ip:name` and streamed to [discoveryEvents] (`source: probe`) as they are found. With
+  /// [requireIdentify] off, any host accepting one of [ports] (default 9100 and 8008) counts.
+  /// [timeoutMs] caps the per-host connect timeout, which otherwise follows the measured round
+  /// trip; concurrency adapts up to [maxConcurrency] (default 128). `abortDiscovery` cancels.
+  static Future<Map<String, dynamic>> probeSubnet(String cidr,
+      {List<int>? ports, int? timeoutMs, int? identifyTimeoutMs, int? maxConcurrency, bool requireIdentify = true}) {
+    return _platform.probeSubnet(cidr,
+        ports: ports,
+        timeoutMs: timeoutMs,
+        identifyTimeoutMs: identifyTimeoutMs,
+        maxConcurrency: maxConcurrency,
+        requireIdentify: requireIdentify);
+  }
+
+  /// Returns the discovery cache: `ttlMs`, `lastConnected` (target `useCachedTarget` connects to,
+  /// null when stale) and `printers` (target -> name, transport, mac, lastSeen, lastConnectMs, fresh)
+  static Future<Map<String, dynamic>> getDiscoveryCache() {
+    return _platform.getDiscoveryCache();
+  }
+
+  /// Sets how long discovered printers stay fresh (default 24 h) and/or clears the cache
+  static Future<int> configureDiscoveryCache({int? ttlMs, bool clear = false}) {
+    return _platform.configureDiscoveryCache(ttlMs: ttlMs, clear: clear);
+  }
+
+  /// Returns every known printer once, however many transports it was found on. Targets are
+  /// grouped when they share a MAC address, IP address or serial number (USB, and LAN printers
+  /// found by [probeSubnet]). Each record has `name`, `identifiers`, `best` and `transports`, fastest
+  /// first (`target`, `transport`, `name`, `connectMs`, `bytesPerSec`, `jobs`). Ranking uses
+  /// measured throughput, then connect latency, then USB over LAN over Bluetooth.
+  static Future<List<Map<String, dynamic>>> getPrinterIdentities() {
+    return _platform.getPrinterIdentities();
+  }
+
+  /// Forgets printer identities and their transport measurements
+  static Future<void> clearPrinterIdentities() {
+    return _platform.clearPrinterIdentities();
+  }
+
+  /// Returns, per printer target, the `learned` drawer kick (with `learnedAt`) and any `override`
+  static Future<Map<String, dynamic>> getDrawerProfiles() {
+    return _platform.getDrawerProfiles();
+  }
+
+  /// Pins the drawer kick of [target] (default: the printer connected last) to connector [pin]
+  /// (2 or 5) and [pulseMs] (100..500 in steps of 100, or 2..510 with [rawEscPos]); only that
+  /// kick is tried from then on. Called with neither [pin] nor [pulseMs] it removes the override.
+  static Future<Map<String, dynamic>> setDrawerOverride(
+      {String? target, int? pin, int? pulseMs, bool rawEscPos = false}) {
+    return _platform.setDrawerOverride(target: target, pin: pin, pulseMs: pulseMs, rawEscPos: rawEscPos);
+  }
+
+  /// Forgets learned drawer kicks and overrides for [target], or for every printer when null
+  static Future<void> clearDrawerProfiles({String? target}) {
+    return _platform.clearDrawerProfiles(target: target);
+  }
+
+  /// Returns keep-alive statistics (Android):
+  /// - `state`: `connected`, `reconnecting`, `disconnected`, or `unmanaged` when connected with
+  ///   `autoReconnect: false` (the link is up but not watched)
+  /// - `linkLosses`: how often the link dropped
+  /// - `reconnects`: reconnects by the plugin
+  /// - `sdkReconnects`: recoveries the SDK made on its own
+  /// - `reconnectAttempts`, `gaveUp`
+  /// - `downtimeMs`, `lastDowntimeMs`, `currentDowntimeMs`
+  /// - `lastCause`, `lastError`
+  /// - `queue`: the job queue snapshot; `held` is true while jobs wait for the link
+  static Future<Map<String, dynamic>> getConnectionMetrics({String? target}) {
+    return _platform.getConnectionMetrics(target: target);
+  }
+
+  /// Returns rolling statistics over the last jobs: `jobs`, `failures`, `jobsByKind`, `errors`
+  /// (error code -> count) and `histograms` with count/min/max/mean/p50/p90/p99 for `queueWaitMs`,
+  /// `buildMs`, `imageDecodeMs`, `transferMs`, `printMs`, `totalMs`, `bytes` and friends.
+  /// `bytes` is exact for ESC/POS-encoded receipts and an estimate for SDK-built ones
+  /// (`bytesEstimated`). [reset] starts a new window after returning the current one.
+  static Future<Map<String, dynamic>> getPrintMetrics({bool reset = false}) {
+    return _platform.getPrintMetrics(reset: reset);
+  }
+
+  /// Emits one record per finished job: the job's result map plus `kind`, `status` (`ok` or
+  /// `failed`), `error` and `timestamp`
+  static Stream<Map<String, dynamic>> get jobEvents => _platform.jobEvents;
+
+  /// Emits the printer's status whenever its status monitor reports a change (Android): the
+  /// [getStatus] fields plus `target`, `event` (`paperEmpty`, `coverOpen`, `online`, ...,
+  /// `started`, `stopped`), `blockedBy` (the error a print would fail with, or null) and `ageMs`
+  static Stream<Map<String, dynamic>> get statusEvents => _platform.statusEvents;
+
+  /// Decodes [imagePath] once and thresholds it [iterations] times with the former single-threaded
+  /// loop (`legacyUs`), the 1-bpp packer on one thread (`sequentialPackUs`) and on the bounded
+  /// fork-join pool (`parallelPackUs`); `speedup` is legacy over parallel. Nothing is printed.
+  static Future<Map<String, dynamic>> benchmarkImagePacking(String imagePath,
+      {int threshold = 128, int iterations = 10, int? targetWidth, int? printerWidth}) {
+    return _platform.benchmarkImagePacking(imagePath,
+        threshold: threshold, iterations: iterations, targetWidth: targetWidth, printerWidth: printerWidth);
+  }
+
+  /// Builds [commands] [iterations] times through the SDK and through the ESC/POS encoder on an
+  /// unconnected printer object and returns average times (`sdkBuildUs`, `escposEncodeUs`,
+  /// `escposBuildUs`) and `escposBytes`. Nothing is printed.
+  static Future<Map<String, dynamic>> benchmarkEncoder(List<EpsonPrintCommand> commands,
+      {int iterations = 50, EpsonPrinterSeries? printerSeries, EpsonModelLang? modelLang}) {
+    return _platform.benchmarkEncoder(commands,
+        iterations: iterations, printerSeries: printerSeries, modelLang: modelLang);
   }
 }
 
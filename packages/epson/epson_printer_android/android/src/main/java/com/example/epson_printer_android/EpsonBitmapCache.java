@@ -0,0 +1,94 @@
+package com.example.epson_printer_android;
+
+import android.graphics.Bitmap;
+import android.util.LruCache;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Memory-budgeted LRU of print-ready bitmaps (decoded, scaled and thresholded).
+ *
+ * Entries are keyed by everything that influences the output pixels, including the file's
+ * modification time, so replacing the logo on disk never serves a stale raster. Cached bitmaps are
+ * shared between jobs and must never be recycled by callers.
+ */
+final class EpsonBitmapCache {
+
+  /** A print-ready image plus the facts the image command needs to emit it. */
+  static final class Entry {
+    final Bitmap bitmap;
+    final boolean thresholded;
+    final double blackRatio;
+    // 1-bpp form of a thresholded bitmap for the ESC/POS and NV paths; null otherwise
+    final EpsonRasterPacker.Packed packed;
+
+    Entry(Bitmap bitmap, boolean thresholded, double blackRatio) {
+      this(bitmap, thresholded, blackRatio, null);
+    }
+
+    Entry(Bitmap bitmap, boolean thresholded, double blackRatio, EpsonRasterPacker.Packed packed) {
+      this.bitmap = bitmap;
+      this.thresholded = thresholded;
+      this.blackRatio = blackRatio;
+      this.packed = packed;
+    }
+
+    int byteCount() {
+      return bitmap.getByteCount() + (packed != null ? packed.data.length : 0);
+    }
+  }
+
+  static final int DEFAULT_MAX_BYTES = defaultBudget();
+
+  private final LruCache<String, Entry> lru;
+
+  EpsonBitmapCache(int maxBytes) {
+    lru = new LruCache<String, Entry>(Math.max(1, maxBytes)) {
+      @Override protected int sizeOf(String key, Entry value) {
+        return value.byteCount();
+      }
+    };
+  }
+
+  // 1/16 of the app heap, capped at 8 MB: enough for a handful of 576-dot logos and coupons
+  private static int defaultBudget() {
+    long heap = Runtime.getRuntime().maxMemory();
+    return (int) Math.min(8L * 1024 * 1024, heap / 16);
+  }
+
+  /** Returns null when the file is missing so callers fall through to a (failing) decode. */
+  static String key(String path, int targetWidth, int bwThreshold, int printerWidth) {
+    File f = new File(path);
+    if (!f.exists()) return null;
+    return path + '|' + f.lastModified() + '|' + f.length() + '|' + targetWidth + '|' + bwThreshold + '|' + printerWidth;
+  }
+
+  Entry get(String key) {
+    return key != null ? lru.get(key) : null;
+  }
+
+  void put(String key, Entry entry) {
+    if (key != null && entry != null && entry.bitmap != null) lru.put(key, entry);
+  }
+
+  void resize(int maxBytes) {
+    lru.resize(Math.max(1, maxBytes));
+  }
+
+  void clear() {
+    lru.evictAll();
+  }
+
+  Map<String, Object> stats() {
+    Map<String, Object> m = new HashMap<>();
+    m.put("hits", lru.hitCount());
+    m.put("misses", lru.missCount());
+    m.put("evictions", lru.evictionCount());
+    m.put("entries", lru.snapshot().size());
+    m.put("bytes", lru.size());
+    m.put("maxBytes", lru.maxSize());
+    return m;
+  }
+}
@@ -0,0 +1,280 @@
+package com.example.epson_printer_android;
+
+import android.os.SystemClock;
+
+import com.epson.epos2.ConnectionListener;
+import com.epson.epos2.printer.Printer;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the connected printer's link up between jobs.
+ *
+ * The SDK reports link changes through {@code setConnectionEventListener}: RECONNECTING/RECONNECT
+ * while it recovers on its own, DISCONNECT once it has given up. Jobs failing with ERR_DISCONNECT
+ * count as a lost link too. While the link is down the job queue is held (queued jobs wait rather
+ * than fail) and, after a DISCONNECT, the same {@code Printer} is reconnected on the connect thread
+ * with exponential backoff and jitter, without the disconnect/discovery-blackout cycle of a full
+ * reconnect from Dart. The queue is released when the link is back, or drained with an error once
+ * the outage outlasts {@code maxDowntimeMs}. The job whose failure revealed the outage has already
+ * been answered with ERR_DISCONNECT and is not sent again; only the jobs queued behind it wait.
+ */
+final class EpsonConnectionKeeper {
+
+  /** What the keeper does to the connection; every method is called on the connect thread. */
+  interface Link {
+    /** One reconnect attempt; throws if the printer could not be reached. */
+    void reconnect() throws Exception;
+
+    void hold();
+
+    void release();
+
+    void giveUp(String reason);
+  }
+
+  static final long DEFAULT_MAX_DOWNTIME_MS = 120000;
+  private static final long BACKOFF_BASE_MS = 500;
+  private static final long BACKOFF_CAP_MS = 15000;
+
+  private final ScheduledExecutorService exec;
+  private final Random jitter = new Random();
+
+  // Bumped on every attach/detach so callbacks and retries of an old connection do nothing
+  private int generation;
+  private Link link;
+  private long maxDowntimeMs = DEFAULT_MAX_DOWNTIME_MS;
+  private String state = "disconnected"; // disconnected | connected | reconnecting | unmanaged
+  private boolean sdkRecovering;
+  // A backoff chain is scheduled or running; only one per outage
+  private boolean retrying;
+  private long downSince;
+  private int attemptInOutage;
+
+  // Stats
+  private int linkLosses;
+  private int reconnects;
+  private int sdkReconnects;
+  private int attempts;
+  private int gaveUp;
+  private long downtimeMs;
+  private long lastDowntimeMs;
+  private String lastCause;
+  private String lastError;
+
+  EpsonConnectionKeeper(ScheduledExecutorService exec) {
+    this.exec = exec;
+  }
+
+  /** Starts watching a freshly connected printer. */
+  void attach(Printer printer, Link link, long maxDowntimeMs) {
+    final int gen;
+    synchronized (this) {
+      gen = ++generation;
+      this.link = link;
+      this.maxDowntimeMs = maxDowntimeMs > 0 ? maxDowntimeMs : DEFAULT_MAX_DOWNTIME_MS;
+      state = "connected";
+      sdkRecovering = false;
+      retrying = false;
+    }
+    final ConnectionListener listener = (deviceObj, eventType) -> onConnection(gen, eventType);
+    try {
+      printer.setConnectionEventListener(listener);
+    } catch (Throwable t) {
+      android.util.Log.d("EpsonPrinter", "Connection events unavailable: " + t.getMessage());
+    }
+  }
+
+  /** A printer connected with autoReconnect off: the link is up but nobody watches it. */
+  synchronized void unmanaged() {
+    generation++;
+    link = null;
+    state = "unmanaged";
+    retrying = false;
+  }
+
+  /** Stops watching (disconnect, new connect); a pending reconnect is abandoned. */
+  void detach(Printer printer) {
+    synchronized (this) {
+      generation++;
+      if ("reconnecting".equals(state)) endOutage();
+      link = null;
+      state = "disconnected";
+      retrying = false;
+    }
+    if (printer != null) {
+      try { printer.setConnectionEventListener(null); } catch (Throwable ignored) {}
+    }
+  }
+
+  synchronized String state() {
+    return state;
+  }
+
+  private void onConnection(int gen, int eventType) {
+    if (eventType == Printer.EVENT_RECONNECTING) {
+      synchronized (this) {
+        if (gen != generation || !"connected".equals(state)) return;
+        sdkRecovering = true;
+      }
+      lost(gen, "EVENT_RECONNECTING", false);
+    } else if (eventType == Printer.EVENT_RECONNECT) {
+      synchronized (this) {
+        if (gen != generation || !sdkRecovering) return;
+        sdkRecovering = false;
+        sdkReconnects++;
+      }
+      exec.execute(() -> restored(gen));
+    } else if (eventType == Printer.EVENT_DISCONNECT) {
+      synchronized (this) {
+        if (gen != generation) return;
+        sdkRecovering = false;
+      }
+      lost(gen, "EVENT_DISCONNECT", true);
+    }
+  }
+
+  /** A job failed because the link is gone (ERR_DISCONNECT). */
+  void linkLost(String cause) {
+    int gen;
+    synchronized (this) {
+      if (sdkRecovering) return;
+      gen = generation;
+    }
+    lost(gen, cause, true);
+  }
+
+  private void lost(final int gen, String cause, boolean reconnect) {
+    final boolean startRetry;
+    synchronized (this) {
+      if (gen != generation || link == null || "disconnected".equals(state)) return;
+      if (!"reconnecting".equals(state)) {
+        state = "reconnecting";
+        downSince = SystemClock.elapsedRealtime();
+        attemptInOutage = 0;
+        linkLosses++;
+        watchdog(gen, downSince);
+      }
+      lastCause = cause;
+      startRetry = reconnect && !retrying;
+      if (startRetry) retrying = true;
+    }
+    android.util.Log.d("EpsonPrinter", "Printer link lost (" + cause + ")");
+    exec.execute(() -> {
+      Link l = currentLink(gen);
+      if (l == null) return;
+      l.hold();
+      if (startRetry) schedule(gen);
+    });
+  }
+
+  // If the SDK reports RECONNECTING but never RECONNECT/DISCONNECT, take over after maxDowntimeMs
+  private void watchdog(final int gen, final long outage) {
+    exec.schedule(() -> {
+      synchronized (this) {
+        if (gen != generation || downSince != outage || !"reconnecting".equals(state) || retrying) return;
+        sdkRecovering = false;
+        retrying = true;
+      }
+      schedule(gen);
+    }, maxDowntimeMs, TimeUnit.MILLISECONDS);
+  }
+
+  private synchronized Link currentLink(int gen) {
+    return gen == generation ? link : null;
+  }
+
+  // Equal jitter: half the exponential step, plus a random part of the other half
+  private synchronized long nextDelayMs() {
+    long step = Math.min(BACKOFF_CAP_MS, BACKOFF_BASE_MS << Math.min(attemptInOutage, 10));
+    return step / 2 + (long) (jitter.nextDouble() * (step / 2));
+  }
+
+  private void schedule(final int gen) {
+    exec.schedule(() -> attempt(gen), nextDelayMs(), TimeUnit.MILLISECONDS);
+  }
+
+  // Connect thread
+  private void attempt(int gen) {
+    Link l;
+    synchronized (this) {
+      l = gen == generation ? link : null;
+      if (l == null) return;
+      if (!"reconnecting".equals(state) || sdkRecovering) {
+        retrying = false;
+        return;
+      }
+      attempts++;
+      attemptInOutage++;
+    }
+    try {
+      l.reconnect();
+    } catch (Exception e) {
+      boolean expired;
+      synchronized (this) {
+        if (gen != generation) return;
+        lastError = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+        expired = SystemClock.elapsedRealtime() - downSince >= maxDowntimeMs;
+        if (expired) {
+          gaveUp++;
+          retrying = false;
+          endOutage();
+          state = "disconnected";
+          link = null;
+        }
+      }
+      if (expired) {
+        android.util.Log.d("EpsonPrinter", "Reconnect gave up after " + attemptInOutage + " attempts");
+        l.giveUp("Printer link lost and not restored within " + maxDowntimeMs + " ms");
+      } else {
+        schedule(gen);
+      }
+      return;
+    }
+    synchronized (this) {
+      if (gen != generation) return;
+      reconnects++;
+      retrying = false;
+    }
+    restored(gen);
+  }
+
+  // Connect thread
+  private void restored(int gen) {
+    Link l;
+    synchronized (this) {
+      l = gen == generation ? link : null;
+      if (l == null || !"reconnecting".equals(state)) return;
+      endOutage();
+      state = "connected";
+    }
+    android.util.Log.d("EpsonPrinter", "Printer link restored after " + lastDowntimeMs + " ms");
+    l.release();
+  }
+
+  private void endOutage() {
+    lastDowntimeMs = SystemClock.elapsedRealtime() - downSince;
+    downtimeMs += lastDowntimeMs;
+  }
+
+  synchronized Map<String, Object> stats() {
+    Map<String, Object> m = new HashMap<>();
+    m.put("state", state);
+    m.put("linkLosses", linkLosses);
+    m.put("reconnects", reconnects);
+    m.put("sdkReconnects", sdkReconnects);
+    m.put("reconnectAttempts", attempts);
+    m.put("gaveUp", gaveUp);
+    m.put("downtimeMs", downtimeMs + ("reconnecting".equals(state) ? SystemClock.elapsedRealtime() - downSince : 0));
+    m.put("lastDowntimeMs", lastDowntimeMs);
+    m.put("currentDowntimeMs", "reconnecting".equals(state) ? SystemClock.elapsedRealtime() - downSince : 0);
+    m.put("maxDowntimeMs", maxDowntimeMs);
+    m.put("lastCause", lastCause);
+    m.put("lastError", lastError);
+    return m;
+  }
+}
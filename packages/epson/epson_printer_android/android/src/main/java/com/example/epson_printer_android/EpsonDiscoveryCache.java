@@ -0,0 +1,170 @@
+package com.example.epson_printer_android;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Printers seen by discovery (target, name, transport, MAC, last seen, last connect latency),
+ * persisted across app restarts so a cashier app can list and connect to its printer without
+ * waiting for a fresh search.
+ *
+ * An entry is fresh while it was seen or connected to within the TTL; stale entries are kept
+ * (and listed) but never returned as discovery results or used by connect.
+ */
+final class EpsonDiscoveryCache {
+
+  private static final String PREFS = "epson_discovery_cache";
+  private static final String TTL_KEY = "\nttlMs";
+  private static final String LAST_KEY = "\nlastConnected";
+
+  static final long DEFAULT_TTL_MS = 24L * 60 * 60 * 1000;
+
+  private final SharedPreferences prefs;
+
+  EpsonDiscoveryCache(Context context) {
+    prefs = context.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+  }
+
+  /** One cached printer; fields are tab-separated in the preferences value. */
+  private static final class Entry {
+    String name = "";
+    String mac = "";
+    long lastSeen;
+    long connectMs = -1;
+
+    static Entry parse(String v) {
+      Entry e = new Entry();
+      if (v == null) return e;
+      String[] f = v.split("\t", -1);
+      if (f.length < 4) return e;
+      e.name = f[0];
+      e.mac = f[1];
+      try { e.lastSeen = Long.parseLong(f[2]); } catch (NumberFormatException ignored) {}
+      try { e.connectMs = Long.parseLong(f[3]); } catch (NumberFormatException ignored) {}
+      return e;
+    }
+
+    String format() {
+      return name.replace('\t', ' ') + '\t' + mac + '\t' + lastSeen + '\t' + connectMs;
+    }
+  }
+
+  /** "TCP:192.168.1.20:TM-m30" -> "TCP:192.168.1.20"; the address itself may contain colons. */
+  static String targetOf(String entry) {
+    int idx = entry.lastIndexOf(':');
+    return idx > 0 ? entry.substring(0, idx) : entry;
+  }
+
+  static String transportOf(String target) {
+    int idx = target.indexOf(':');
+    return idx > 0 ? target.substring(0, idx) : "";
+  }
+
+  private static String macOf(String target) {
+    String address = target.substring(target.indexOf(':') + 1);
+    return address.matches("(?i)([0-9a-f]{2}[:-]){5}[0-9a-f]{2}") ? address.toUpperCase() : "";
+  }
+
+  synchronized long ttlMs() {
+    return prefs.getLong(TTL_KEY, DEFAULT_TTL_MS);
+  }
+
+  synchronized void setTtlMs(long ttlMs) {
+    prefs.edit().putLong(TTL_KEY, Math.max(0, ttlMs)).apply();
+  }
+
+  /** Records discovery entries ("PORT:address:name") as seen now. */
+  synchronized void seen(List<String> entries) {
+    if (entries == null || entries.isEmpty()) return;
+    long now = System.currentTimeMillis();
+    SharedPreferences.Editor ed = prefs.edit();
+    for (String entry : entries) {
+      String target = targetOf(entry);
+      if (target.equals(entry)) continue;
+      Entry e = Entry.parse(prefs.getString(target, null));
+      e.name = entry.substring(target.length() + 1);
+      if (e.mac.isEmpty()) e.mac = macOf(target);
+      e.lastSeen = now;
+      ed.putString(target, e.format());
+    }
+    ed.apply();
+  }
+
+  synchronized void seen(String entry, String mac) {
+    List<String> one = new ArrayList<>();
+    one.add(entry);
+    seen(one);
+    if (mac == null || mac.isEmpty()) return;
+    String target = targetOf(entry);
+    Entry e = Entry.parse(prefs.getString(target, null));
+    e.mac = mac.toUpperCase();
+    prefs.edit().putString(target, e.format()).apply();
+  }
+
+  /** A successful connect counts as a sighting and becomes the target connect-from-cache uses. */
+  synchronized void connected(String target, long latencyMs) {
+    Entry e = Entry.parse(prefs.getString(target, null));
+    if (e.name.isEmpty()) e.name = "Printer";
+    if (e.mac.isEmpty()) e.mac = macOf(target);
+    e.lastSeen = System.currentTimeMillis();
+    e.connectMs = latencyMs;
+    prefs.edit().putString(target, e.format()).putString(LAST_KEY, target).apply();
+  }
+
+  synchronized boolean isFresh(String target) {
+    String v = prefs.getString(target, null);
+    return v != null && System.currentTimeMillis() - Entry.parse(v).lastSeen <= ttlMs();
+  }
+
+  /** The most recently connected target if it is still fresh, else null. */
+  synchronized String lastConnectedTarget() {
+    String target = prefs.getString(LAST_KEY, null);
+    return target != null && isFresh(target) ? target : null;
+  }
+
+  /** Fresh entries as discovery strings, optionally limited to one transport ("TCP", "BT", "USB"). */
+  synchronized List<String> fresh(String transport) {
+    List<String> out = new ArrayList<>();
+    long now = System.currentTimeMillis();
+    long ttl = ttlMs();
+    for (Map.Entry<String, ?> kv : prefs.getAll().entrySet()) {
+      String target = kv.getKey();
+      if (target.startsWith("\n") || !(kv.getValue() instanceof String)) continue;
+      if (transport != null && !transport.equals(transportOf(target))) continue;
+      Entry e = Entry.parse((String) kv.getValue());
+      if (now - e.lastSeen <= ttl) out.add(target + ":" + e.name);
+    }
+    return out;
+  }
+
+  /** Every cached printer keyed by target, with its age and freshness. */
+  synchronized Map<String, Object> list() {
+    Map<String, Object> out = new HashMap<>();
+    long now = System.currentTimeMillis();
+    long ttl = ttlMs();
+    for (Map.Entry<String, ?> kv : prefs.getAll().entrySet()) {
+      String target = kv.getKey();
+      if (target.startsWith("\n") || !(kv.getValue() instanceof String)) continue;
+      Entry e = Entry.parse((String) kv.getValue());
+      Map<String, Object> m = new HashMap<>();
+      m.put("name", e.name);
+      m.put("transport", transportOf(target));
+      m.put("mac", e.mac.isEmpty() ? null : e.mac);
+      m.put("lastSeen", e.lastSeen);
+      m.put("lastConnectMs", e.connectMs >= 0 ? e.connectMs : null);
+      m.put("fresh", now - e.lastSeen <= ttl);
+      out.put(target, m);
+    }
+    return out;
+  }
+
+  synchronized void clear() {
+    long ttl = ttlMs();
+    prefs.edit().clear().putLong(TTL_KEY, ttl).apply();
+  }
+}
@@ -0,0 +1,222 @@
+package com.example.epson_printer_android;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import com.epson.epos2.Epos2Exception;
+import com.epson.epos2.discovery.Discovery;
+import com.epson.epos2.discovery.DiscoveryListener;
+import com.epson.epos2.discovery.FilterOption;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Owns the SDK's single global discovery session and the plugin's discovery state.
+ *
+ * Every {@code Discovery.start/stop} runs on one scheduled thread. A stop that reports
+ * ERR_PROCESSING is retried on a short timer instead of sleeping, and callers get a callback on the
+ * main thread once discovery has really stopped. Settle delays (Bluetooth stack after discovery,
+ * USB after disconnect) are measured from when discovery actually stopped, so they cost nothing
+ * when it stopped long ago. Time spent in each state is accumulated for getDiscoveryState.
+ */
+final class EpsonDiscoveryController {
+
+  /** Called on the main thread when a timed session ends; {@code started} is false if start failed. */
+  interface Done { void run(boolean started); }
+
+  // ERR_PROCESSING retry period and how long a stop may keep retrying before callers proceed anyway
+  private static final long STOP_RETRY_MS = 25;
+  private static final long STOP_DEADLINE_MS = 3000;
+
+  private final Context context;
+  private final Handler main = new Handler(Looper.getMainLooper());
+  private final ScheduledExecutorService exec = Executors.newSingleThreadScheduledExecutor(r -> {
+    Thread t = new Thread(r, "epson-discovery");
+    t.setDaemon(true);
+    return t;
+  });
+
+  private String state = "idle";
+  private long enteredAt = SystemClock.elapsedRealtime();
+  private final Map<String, Long> timeInState = new LinkedHashMap<>();
+  private final Map<String, Integer> entries = new HashMap<>();
+  private long suspendedUntil;
+  private ScheduledFuture<?> resume;
+
+  // Touched only on the executor thread
+  private boolean running;
+  private ScheduledFuture<?> sessionEnd;
+  private Done sessionDone;
+  private long lastStoppedAt;
+
+  // Stats
+  private int stopRetries;
+  private long stopWaitMs;
+  private long settleWaitMs;
+
+  EpsonDiscoveryController(Context context) {
+    this.context = context;
+  }
+
+  // --- State ---
+
+  synchronized String state() {
+    return state;
+  }
+
+  synchronized boolean isIdle() {
+    return "idle".equals(state);
+  }
+
+  private synchronized void setState(String s) {
+    if (s.equals(state)) return;
+    long now = SystemClock.elapsedRealtime();
+    Long spent = timeInState.get(state);
+    timeInState.put(state, (spent != null ? spent : 0L) + (now - enteredAt));
+    Integer n = entries.get(s);
+    entries.put(s, n != null ? n + 1 : 1);
+    state = s;
+    enteredAt = now;
+  }
+
+  /** True while cleaning up or inside a post-disconnect suspension window. */
+  synchronized boolean isSuspended() {
+    return "cleaningUp".equals(state) || SystemClock.elapsedRealtime() < suspendedUntil;
+  }
+
+  /** Blocks new discoveries for {@code millis} (USB stack settling after a disconnect). */
+  synchronized void suspend(long millis) {
+    setState("suspendedAfterUsbDisconnect");
+    suspendedUntil = SystemClock.elapsedRealtime() + Math.max(0, millis);
+    if (resume != null) resume.cancel(false);
+    resume = exec.schedule(() -> {
+      synchronized (EpsonDiscoveryController.this) {
+        if (SystemClock.elapsedRealtime() >= suspendedUntil && "suspendedAfterUsbDisconnect".equals(state)) setState("idle");
+      }
+    }, Math.max(0, millis), TimeUnit.MILLISECONDS);
+  }
+
+  synchronized Map<String, Object> stats() {
+    long now = SystemClock.elapsedRealtime();
+    Map<String, Object> spent = new LinkedHashMap<>();
+    for (Map.Entry<String, Long> e : timeInState.entrySet()) spent.put(e.getKey(), e.getValue());
+    Long cur = timeInState.get(state);
+    spent.put(state, (cur != null ? cur : 0L) + (now - enteredAt));
+    Map<String, Object> m = new HashMap<>();
+    m.put("timeInStateMs", spent);
+    m.put("entries", new HashMap<>(entries));
+    m.put("currentStateMs", now - enteredAt);
+    m.put("stopRetries", stopRetries);
+    m.put("stopWaitMs", stopWaitMs);
+    m.put("settleWaitMs", settleWaitMs);
+    return m;
+  }
+
+  // --- Sessions ---
+
+  /** Stops any running discovery, then runs {@code then} on the main thread. */
+  void stop(Runnable then) {
+    exec.execute(() -> stopNow(SystemClock.elapsedRealtime(), () -> main.post(then)));
+  }
+
+  /** Like {@link #stop} but shows {@code cleaningUp} while stopping and returns to idle after. */
+  void cleanup(Runnable then) {
+    setState("cleaningUp");
+    exec.execute(() -> stopNow(SystemClock.elapsedRealtime(), () -> {
+      setState("idle");
+      main.post(then);
+    }));
+  }
+
+  /** One extra stop {@code delayMs} from now, for SDK builds that leave USB discovery threads behind. */
+  void stopLater(long delayMs) {
+    exec.schedule(() -> stopNow(SystemClock.elapsedRealtime(), () -> {}), delayMs, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Stops whatever is running, starts a session showing {@code sessionState}, stops it after
+   * {@code windowMs} and then calls {@code done} on the main thread. A session cut short by
+   * {@link #finishEarly} or by another stop/run still gets its {@code done}.
+   */
+  void run(final String sessionState, final FilterOption filter, final DiscoveryListener listener,
+           final int windowMs, final Done done) {
+    exec.execute(() -> stopNow(SystemClock.elapsedRealtime(), () -> {
+      try {
+        Discovery.start(context, filter, listener);
+      } catch (Exception e) {
+        android.util.Log.d("EpsonPrinter", "Discovery.start failed for " + sessionState + ": " + e.getMessage());
+        main.post(() -> done.run(false));
+        return;
+      }
+      running = true;
+      sessionDone = done;
+      setState(sessionState);
+      sessionEnd = exec.schedule(() -> stopNow(SystemClock.elapsedRealtime(), () -> {}),
+          Math.max(0, windowMs), TimeUnit.MILLISECONDS);
+    }));
+  }
+
+  /** Ends the running timed session now. */
+  void finishEarly() {
+    exec.execute(() -> {
+      if (sessionDone != null) stopNow(SystemClock.elapsedRealtime(), () -> {});
+    });
+  }
+
+  /** Runs {@code then} on the main thread once discovery has been stopped for at least {@code settleMs}. */
+  void afterSettle(final long settleMs, final Runnable then) {
+    exec.execute(() -> {
+      long wait = lastStoppedAt == 0 ? 0 : Math.max(0, lastStoppedAt + settleMs - SystemClock.elapsedRealtime());
+      synchronized (this) { settleWaitMs += wait; }
+      main.postDelayed(then, wait);
+    });
+  }
+
+  void shutdown() {
+    exec.shutdownNow();
+  }
+
+  // Executor thread only. ERR_PROCESSING means the SDK is still winding down: try again shortly.
+  private void stopNow(final long startedAt, final Runnable then) {
+    try {
+      Discovery.stop();
+    } catch (Epos2Exception e) {
+      if (e.getErrorStatus() == Epos2Exception.ERR_PROCESSING
+          && SystemClock.elapsedRealtime() - startedAt < STOP_DEADLINE_MS) {
+        synchronized (this) { stopRetries++; }
+        exec.schedule(() -> stopNow(startedAt, then), STOP_RETRY_MS, TimeUnit.MILLISECONDS);
+        return;
+      }
+    } catch (Throwable ignored) {}
+    long now = SystemClock.elapsedRealtime();
+    synchronized (this) { stopWaitMs += now - startedAt; }
+    if (running) {
+      running = false;
+      lastStoppedAt = now;
+    }
+    if (sessionEnd != null) {
+      sessionEnd.cancel(false);
+      sessionEnd = null;
+    }
+    final Done ended = sessionDone;
+    sessionDone = null;
+    if (ended != null) {
+      synchronized (this) { if (state.startsWith("discovering")) setState("idle"); }
+      main.post(() -> ended.run(true));
+    }
+    then.run();
+  }
+
+  /** Marks a disconnect as the latest moment the transport was released (connect settles from here). */
+  void markReleased() {
+    exec.execute(() -> lastStoppedAt = SystemClock.elapsedRealtime());
+  }
+}
@@ -0,0 +1,191 @@
+package com.example.epson_printer_android;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import com.epson.epos2.printer.Printer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Remembers per printer target which drawer kick opened its cash drawer, persisted across app
+ * restarts.
+ *
+ * {@code openCashDrawer} otherwise walks up to eight pin/pulse/command combinations, each a full
+ * send round trip. The first one that works is recorded and tried first next time; if it stops
+ * working it is forgotten and the walk starts over. An override set for a target is the only
+ * combination tried for it.
+ */
+final class EpsonDrawerProfiles {
+
+  /** One drawer kick: SDK {@code addPulse} or raw ESC p, on connector pin 2 or 5, for {@code ms}. */
+  static final class Pulse {
+    final boolean raw;
+    final int pin;
+    final int ms;
+
+    Pulse(boolean raw, int pin, int ms) {
+      this.raw = raw;
+      this.pin = pin;
+      this.ms = ms;
+    }
+
+    /** Validated override; the SDK only knows 100..500 ms, ESC p takes 2..510 ms in 2 ms units. */
+    static Pulse of(boolean raw, int pin, int ms) {
+      if (pin != 2 && pin != 5) throw new IllegalArgumentException("Drawer pin must be 2 or 5: " + pin);
+      boolean valid = raw ? ms >= 2 && ms <= 510 : ms >= 100 && ms <= 500 && ms % 100 == 0;
+      if (!valid) throw new IllegalArgumentException("Unsupported drawer pulse width: " + ms + " ms");
+      return new Pulse(raw, pin, ms);
+    }
+
+    int sdkDrawer() {
+      return pin == 5 ? Printer.DRAWER_5PIN : Printer.DRAWER_2PIN;
+    }
+
+    int sdkPulse() {
+      switch (ms) {
+        case 200: return Printer.PULSE_200;
+        case 300: return Printer.PULSE_300;
+        case 400: return Printer.PULSE_400;
+        case 500: return Printer.PULSE_500;
+        default: return Printer.PULSE_100;
+      }
+    }
+
+    // ESC p m t1 t2: m 0 = pin 2, 1 = pin 5; on and off times in 2 ms units
+    byte[] escPos() {
+      byte t = (byte) (ms / 2);
+      return new byte[] { 0x1B, 0x70, (byte) (pin == 5 ? 1 : 0), t, t };
+    }
+
+    String encode() {
+      return (raw ? "escp" : "sdk") + ',' + pin + ',' + ms;
+    }
+
+    static Pulse decode(String v) {
+      if (v == null) return null;
+      String[] f = v.split(",");
+      if (f.length < 3) return null;
+      try {
+        return of("escp".equals(f[0]), Integer.parseInt(f[1]), Integer.parseInt(f[2]));
+      } catch (IllegalArgumentException e) {
+        return null;
+      }
+    }
+
+    Map<String, Object> toMap() {
+      Map<String, Object> m = new HashMap<>();
+      m.put("method", raw ? "escpos" : "sdk");
+      m.put("pin", pin);
+      m.put("pulseMs", ms);
+      return m;
+    }
+
+    @Override public boolean equals(Object o) {
+      if (!(o instanceof Pulse)) return false;
+      Pulse p = (Pulse) o;
+      return raw == p.raw && pin == p.pin && ms == p.ms;
+    }
+
+    @Override public int hashCode() {
+      return java.util.Objects.hash(raw, pin, ms);
+    }
+  }
+
+  // The order openCashDrawer has always tried: addPulse first, raw ESC p for SDK builds that reject it
+  static final List<Pulse> DEFAULTS = Collections.unmodifiableList(Arrays.asList(
+      new Pulse(false, 2, 100), new Pulse(false, 2, 200), new Pulse(false, 5, 100), new Pulse(false, 5, 200),
+      new Pulse(true, 2, 100), new Pulse(true, 2, 200), new Pulse(true, 5, 100), new Pulse(true, 5, 200)));
+
+  private static final String PREFS = "epson_drawer_profiles";
+  private static final String LEARNED = "learned\n";
+  private static final String OVERRIDE = "override\n";
+
+  private final SharedPreferences prefs;
+
+  EpsonDrawerProfiles(Context context) {
+    prefs = context.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+  }
+
+  synchronized Pulse override(String target) {
+    return target != null ? Pulse.decode(prefs.getString(OVERRIDE + target, null)) : null;
+  }
+
+  synchronized Pulse learned(String target) {
+    return target != null ? Pulse.decode(prefs.getString(LEARNED + target, null)) : null;
+  }
+
+  /** Combinations to try for a target, in order: the override alone, else the learned one first. */
+  static List<Pulse> plan(Pulse override, Pulse learned) {
+    if (override != null) return Collections.singletonList(override);
+    List<Pulse> out = new ArrayList<>(DEFAULTS.size() + 1);
+    if (learned != null) out.add(learned);
+    for (Pulse p : DEFAULTS) {
+      if (!p.equals(learned)) out.add(p);
+    }
+    return out;
+  }
+
+  /** Records the combination that opened the drawer; written only when it changed. */
+  synchronized void learn(String target, Pulse pulse) {
+    if (target == null || pulse.equals(learned(target))) return;
+    prefs.edit().putString(LEARNED + target, pulse.encode() + ',' + System.currentTimeMillis()).apply();
+  }
+
+  synchronized void forgetLearned(String target) {
+    if (target == null) return;
+    prefs.edit().remove(LEARNED + target).apply();
+  }
+
+  /** Pins {@code target} to one combination; null removes the override. */
+  synchronized void setOverride(String target, Pulse pulse) {
+    if (pulse == null) {
+      prefs.edit().remove(OVERRIDE + target).apply();
+    } else {
+      prefs.edit().putString(OVERRIDE + target, pulse.encode()).apply();
+    }
+  }
+
+  /** Forgets learned combinations and overrides for {@code target}, or for every printer when null. */
+  synchronized void clear(String target) {
+    if (target == null) {
+      prefs.edit().clear().apply();
+    } else {
+      prefs.edit().remove(LEARNED + target).remove(OVERRIDE + target).apply();
+    }
+  }
+
+  /** Target to {@code learned} (with {@code learnedAt}) and {@code override}, for every printer on record. */
+  synchronized Map<String, Object> list() {
+    Map<String, Object> out = new HashMap<>();
+    for (Map.Entry<String, ?> e : prefs.getAll().entrySet()) {
+      if (!(e.getValue() instanceof String)) continue;
+      String key = e.getKey();
+      boolean learnedKey = key.startsWith(LEARNED);
+      if (!learnedKey && !key.startsWith(OVERRIDE)) continue;
+      String target = key.substring(learnedKey ? LEARNED.length() : OVERRIDE.length());
+      Pulse p = Pulse.decode((String) e.getValue());
+      if (p == null) continue;
+      @SuppressWarnings("unchecked")
+      Map<String, Object> entry = (Map<String, Object>) out.get(target);
+      if (entry == null) {
+        entry = new HashMap<>();
+        out.put(target, entry);
+      }
+      Map<String, Object> m = p.toMap();
+      if (learnedKey) {
+        String[] f = ((String) e.getValue()).split(",");
+        if (f.length > 3) {
+          try { m.put("learnedAt", Long.parseLong(f[3])); } catch (NumberFormatException ignored) {}
+        }
+      }
+      entry.put(learnedKey ? "learned" : "override", m);
+    }
+    return out;
+  }
+}
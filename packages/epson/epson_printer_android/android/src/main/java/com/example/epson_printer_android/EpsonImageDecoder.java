@@ -0,0 +1,106 @@
+package com.example.epson_printer_android;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import com.epson.epos2.printer.Printer;
+
+/**
+ * Decodes image files straight to (close to) their printable width.
+ *
+ * Bounds are read first, then the decoder subsamples by a power of two and applies density scaling
+ * so a 4000px photo never materialises as a full-size ARGB_8888 bitmap on the print path. RGB_565
+ * is requested because receipts are printed mono anyway; the decoder still falls back to ARGB_8888
+ * for sources with alpha.
+ */
+final class EpsonImageDecoder {
+
+  // Widest raster a standard 80mm Epson head prints; used when neither the caller nor the
+  // connection says otherwise
+  static final int DEFAULT_PRINTABLE_DOTS = 576;
+
+  static final class Decoded {
+    final Bitmap bitmap;
+    final int sourceWidth;
+    final int sourceHeight;
+    final int sampleSize;
+    /** Largest number of bitmap bytes alive at once while decoding. */
+    final long peakBytes;
+
+    Decoded(Bitmap bitmap, int sourceWidth, int sourceHeight, int sampleSize, long peakBytes) {
+      this.bitmap = bitmap;
+      this.sourceWidth = sourceWidth;
+      this.sourceHeight = sourceHeight;
+      this.sampleSize = sampleSize;
+      this.peakBytes = peakBytes;
+    }
+  }
+
+  private EpsonImageDecoder() {}
+
+  /**
+   * Printable dots across for a series and paper width in mm (0 = unknown, assume the widest paper
+   * the model takes). The TM-T88 family prints at 180 dpi, the TM-U220 is a 9-pin impact head, and
+   * the rest of the supported models are 203 dpi thermal.
+   */
+  static int printableDots(int series, int paperMm) {
+    boolean narrow = paperMm > 0 && paperMm <= 58;
+    if (series == Printer.TM_T88 || series == Printer.TM_T88VII) return narrow ? 360 : 512;
+    if (series == Printer.TM_U220) return 200;
+    return narrow ? 384 : DEFAULT_PRINTABLE_DOTS;
+  }
+
+  /** Width the image will be printed at: the requested width, never wider than the paper. */
+  static int resolveWidth(int sourceWidth, int targetWidth, int printerWidth) {
+    int limit = printerWidth > 0 ? printerWidth : (targetWidth > 0 ? targetWidth : DEFAULT_PRINTABLE_DOTS);
+    int want = targetWidth > 0 ? Math.min(targetWidth, limit) : limit;
+    return Math.max(1, Math.min(sourceWidth, want));
+  }
+
+  /** Largest power of two that keeps the subsampled width at or above {@code want}. */
+  static int sampleSizeFor(int sourceWidth, int want) {
+    int sample = 1;
+    while (sourceWidth / (sample * 2) >= want) sample *= 2;
+    return sample;
+  }
+
+  /** Returns null if the file cannot be decoded. */
+  static Decoded decode(String path, int targetWidth, int printerWidth) {
+    BitmapFactory.Options bounds = new BitmapFactory.Options();
+    bounds.inJustDecodeBounds = true;
+    BitmapFactory.decodeFile(path, bounds);
+    if (bounds.outWidth <= 0 || bounds.outHeight <= 0) return null;
+
+    int srcW = bounds.outWidth;
+    int srcH = bounds.outHeight;
+    int width = resolveWidth(srcW, targetWidth, printerWidth);
+    int sample = sampleSizeFor(srcW, width);
+
+    BitmapFactory.Options opts = new BitmapFactory.Options();
+    opts.inSampleSize = sample;
+    opts.inPreferredConfig = Bitmap.Config.RGB_565;
+    opts.inDither = false;
+    // Lets thresholding write black/white back in place instead of allocating a copy
+    opts.inMutable = true;
+    int sampledW = srcW / sample;
+    if (sampledW > width) {
+      // Let the decoder do the final resize instead of allocating a second bitmap
+      opts.inScaled = true;
+      opts.inDensity = sampledW;
+      opts.inTargetDensity = width;
+    }
+    Bitmap bmp = BitmapFactory.decodeFile(path, opts);
+    if (bmp == null) return null;
+    long peak = bmp.getByteCount();
+
+    // Density scaling rounds; make sure we never hand the printer more dots than it can print
+    if (bmp.getWidth() > width) {
+      int h = Math.max(1, (int) ((long) bmp.getHeight() * width / bmp.getWidth()));
+      Bitmap scaled = Bitmap.createScaledBitmap(bmp, width, h, true);
+      peak += scaled.getByteCount();
+      if (scaled != bmp) bmp.recycle();
+      bmp = scaled;
+    }
+    return new Decoded(bmp, srcW, srcH, sample, peak);
+  }
+}
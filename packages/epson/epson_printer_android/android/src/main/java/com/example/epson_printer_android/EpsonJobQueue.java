@@ -0,0 +1,167 @@
+package com.example.epson_printer_android;
+
+import android.os.SystemClock;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded FIFO of print jobs served by one long-lived worker thread.
+ *
+ * One queue is created per connected printer so jobs run strictly in submission order and callers
+ * never block on the printer; when the queue is full {@link #offer} refuses the job instead of
+ * spawning another thread.
+ */
+final class EpsonJobQueue {
+
+  /** A unit of work for the printer. {@link #cancel} is called instead of {@link #run} if the queue shuts down first. */
+  abstract static class Job {
+    final String kind;
+    long enqueuedAtMs;
+    long startedAtMs;
+
+    Job(String kind) {
+      this.kind = kind;
+    }
+
+    abstract void run();
+
+    abstract void cancel(String reason);
+
+    /** Called on the worker when {@link #run} threw, so the caller still gets an answer. */
+    void crashed(Throwable t) {}
+
+    /** Time the job spent waiting in the queue before the worker picked it up. */
+    long queueWaitMs() {
+      return startedAtMs > 0 ? startedAtMs - enqueuedAtMs : 0;
+    }
+  }
+
+  private final String name;
+  private final int capacity;
+  private final ArrayDeque<Job> pending = new ArrayDeque<>();
+  private final Thread worker;
+  private Job running;
+  private boolean shutdown = false;
+  private boolean held = false;
+  private long submitted = 0;
+  private long completed = 0;
+  private long rejected = 0;
+
+  EpsonJobQueue(String name, int capacity) {
+    this.name = name;
+    this.capacity = Math.max(1, capacity);
+    this.worker = new Thread(this::loop, "EpsonJobWorker-" + name);
+    this.worker.setDaemon(true);
+    this.worker.start();
+  }
+
+  int capacity() {
+    return capacity;
+  }
+
+  /** Enqueues a job. Returns false (and counts a rejection) if the queue is full or shut down. */
+  synchronized boolean offer(Job job) {
+    if (shutdown || pending.size() >= capacity) {
+      rejected++;
+      return false;
+    }
+    job.enqueuedAtMs = SystemClock.elapsedRealtime();
+    pending.addLast(job);
+    submitted++;
+    notifyAll();
+    return true;
+  }
+
+  /** Keeps jobs queued, still accepting new ones, until {@link #release}; a running job is unaffected. */
+  synchronized void hold() {
+    held = true;
+  }
+
+  synchronized void release() {
+    held = false;
+    notifyAll();
+  }
+
+  /** Jobs waiting to run, not counting the one in progress. */
+  synchronized int depth() {
+    return pending.size();
+  }
+
+  synchronized Map<String, Object> snapshot() {
+    long now = SystemClock.elapsedRealtime();
+    Job oldest = running != null ? running : pending.peekFirst();
+    Map<String, Object> m = new HashMap<>();
+    m.put("name", name);
+    m.put("depth", pending.size());
+    m.put("capacity", capacity);
+    m.put("running", running != null ? running.kind : null);
+    m.put("held", held);
+    m.put("oldestJobAgeMs", oldest != null ? now - oldest.enqueuedAtMs : 0L);
+    m.put("submitted", submitted);
+    m.put("completed", completed);
+    m.put("rejected", rejected);
+    return m;
+  }
+
+  /** Stops the worker after the current job; every job still waiting is cancelled with {@code reason}. */
+  void shutdown(String reason) {
+    List<Job> dropped;
+    synchronized (this) {
+      if (shutdown) return;
+      shutdown = true;
+      dropped = new ArrayList<>(pending);
+      pending.clear();
+      notifyAll();
+    }
+    for (Job j : dropped) {
+      try { j.cancel(reason); } catch (Throwable ignored) {}
+    }
+  }
+
+  /**
+   * Waits up to {@code timeoutMs} for the job in progress to return; true once none is running.
+   * Called from the worker itself it returns true at once, as waiting would never end.
+   */
+  boolean awaitIdle(long timeoutMs) {
+    if (Thread.currentThread() == worker) return true;
+    long deadline = SystemClock.elapsedRealtime() + timeoutMs;
+    synchronized (this) {
+      while (running != null) {
+        long left = deadline - SystemClock.elapsedRealtime();
+        if (left <= 0) return false;
+        try { wait(left); } catch (InterruptedException e) { Thread.currentThread().interrupt(); return false; }
+      }
+      return true;
+    }
+  }
+
+  private void loop() {
+    while (true) {
+      Job job;
+      synchronized (this) {
+        while ((pending.isEmpty() || held) && !shutdown) {
+          try { wait(); } catch (InterruptedException e) { return; }
+        }
+        if (shutdown) return;
+        job = pending.pollFirst();
+        job.startedAtMs = SystemClock.elapsedRealtime();
+        running = job;
+      }
+      try {
+        job.run();
+      } catch (Throwable t) {
+        android.util.Log.e("EpsonPrinter", "Job " + job.kind + " crashed on " + name, t);
+        try { job.crashed(t); } catch (Throwable ignored) {}
+      }
+      synchronized (this) {
+        running = null;
+        completed++;
+        notifyAll();
+      }
+    }
+  }
+}
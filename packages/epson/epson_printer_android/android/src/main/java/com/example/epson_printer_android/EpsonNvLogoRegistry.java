@@ -0,0 +1,96 @@
+package com.example.epson_printer_android;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Remembers which image (by hash of the stored raster) each printer holds under each NV graphics
+ * key code, persisted across app restarts.
+ *
+ * ePOS2 cannot read GS ( L responses back through {@code sendData}, so this registry is the only
+ * view of the printer's NV memory: an entry is written once the printer confirms the upload job,
+ * and a missing or different hash means the logo has to be uploaded again. A printer that lost its
+ * NV memory (replaced, factory reset, rewritten by another tool) is not noticed; callers re-upload
+ * with {@code force} or drop the printer's entries with {@link #forgetAll}.
+ */
+final class EpsonNvLogoRegistry {
+
+  private static final String PREFS = "epson_nv_logos";
+
+  private final SharedPreferences prefs;
+
+  EpsonNvLogoRegistry(Context context) {
+    prefs = context.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+  }
+
+  /** Key codes are two characters in 0x20..0x7E (GS ( L kc1 kc2). */
+  static boolean isValidKey(String key) {
+    if (key == null || key.length() != 2) return false;
+    for (int i = 0; i < 2; i++) {
+      char c = key.charAt(i);
+      if (c < 0x20 || c > 0x7E) return false;
+    }
+    return true;
+  }
+
+  private static String prefKey(String target, String key) {
+    return target + '\n' + key;
+  }
+
+  /** Hash of the image stored under {@code key} on {@code target}, or null if unknown. */
+  synchronized String hashOf(String target, String key) {
+    if (target == null) return null;
+    String v = prefs.getString(prefKey(target, key), null);
+    if (v == null) return null;
+    int comma = v.indexOf(',');
+    return comma >= 0 ? v.substring(0, comma) : v;
+  }
+
+  synchronized void record(String target, String key, String hash, int width, int height) {
+    if (target == null) return;
+    prefs.edit().putString(prefKey(target, key), hash + ',' + width + ',' + height + ',' + System.currentTimeMillis()).apply();
+  }
+
+  synchronized void forget(String target, String key) {
+    if (target == null) return;
+    prefs.edit().remove(prefKey(target, key)).apply();
+  }
+
+  /** Drops every entry for {@code target}, so each of its logos is uploaded again on next use. */
+  synchronized int forgetAll(String target) {
+    if (target == null) return 0;
+    String prefix = target + '\n';
+    SharedPreferences.Editor editor = prefs.edit();
+    int n = 0;
+    for (String k : prefs.getAll().keySet()) {
+      if (k.startsWith(prefix)) {
+        editor.remove(k);
+        n++;
+      }
+    }
+    editor.apply();
+    return n;
+  }
+
+  /** Everything recorded for {@code target}: key code to hash, width, height and uploadedAt. */
+  synchronized Map<String, Object> list(String target) {
+    Map<String, Object> out = new HashMap<>();
+    if (target == null) return out;
+    String prefix = target + '\n';
+    for (Map.Entry<String, ?> e : prefs.getAll().entrySet()) {
+      if (!e.getKey().startsWith(prefix) || !(e.getValue() instanceof String)) continue;
+      String[] f = ((String) e.getValue()).split(",");
+      if (f.length < 4) continue;
+      Map<String, Object> m = new HashMap<>();
+      m.put("hash", f[0]);
+      m.put("width", ReceiptCommand.getInt(f[1], 0));
+      m.put("height", ReceiptCommand.getInt(f[2], 0));
+      try { m.put("uploadedAt", Long.parseLong(f[3])); } catch (NumberFormatException ignored) {}
+      out.put(e.getKey().substring(prefix.length()), m);
+    }
+    return out;
+  }
+}
@@ -0,0 +1,126 @@
+package com.example.epson_printer_android;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Rolling per-job numbers for the plugin: one fixed-size window of samples per metric (queue wait,
+ * build, decode, sendData latency, print, bytes, ...) plus counters by job kind and error code.
+ *
+ * Recording is O(1) under one lock; percentiles are only computed when {@link #snapshot} is called.
+ */
+final class EpsonPrintMetrics {
+
+  /** Summary keys that are recorded as histograms when a job reports them. */
+  static final String[] METRICS = {
+    "queueWaitMs", "waitForPreviousMs", "prepareMs", "buildMs", "imageDecodeMs",
+    "transferMs", "printMs", "totalMs", "bytes",
+  };
+
+  static final int DEFAULT_WINDOW = 512;
+
+  /** Last {@code window} samples of one metric. */
+  private static final class Rolling {
+    private final long[] samples;
+    private int next;
+    private int size;
+
+    Rolling(int window) {
+      samples = new long[window];
+    }
+
+    void add(long v) {
+      samples[next] = v;
+      next = (next + 1) % samples.length;
+      if (size < samples.length) size++;
+    }
+
+    Map<String, Object> describe() {
+      Map<String, Object> m = new HashMap<>();
+      m.put("count", size);
+      if (size == 0) return m;
+      long[] sorted = Arrays.copyOf(samples, size);
+      Arrays.sort(sorted);
+      long sum = 0;
+      for (long v : sorted) sum += v;
+      m.put("min", sorted[0]);
+      m.put("max", sorted[size - 1]);
+      m.put("mean", (double) sum / size);
+      m.put("p50", percentile(sorted, 50));
+      m.put("p90", percentile(sorted, 90));
+      m.put("p99", percentile(sorted, 99));
+      return m;
+    }
+
+    private static long percentile(long[] sorted, int p) {
+      int idx = (int) Math.ceil(p / 100.0 * sorted.length) - 1;
+      return sorted[Math.max(0, Math.min(sorted.length - 1, idx))];
+    }
+  }
+
+  private final int window;
+  private final Map<String, Rolling> histograms = new LinkedHashMap<>();
+  private final Map<String, Integer> jobsByKind = new HashMap<>();
+  private final Map<String, Integer> errors = new HashMap<>();
+  private long since = System.currentTimeMillis();
+  private int jobs;
+  private int failures;
+
+  EpsonPrintMetrics(int window) {
+    this.window = Math.max(16, window);
+  }
+
+  /**
+   * Records one finished job from its summary map; {@code error} is null for a successful job.
+   * Returns the record that is pushed to Dart listeners.
+   */
+  synchronized Map<String, Object> record(String kind, Map<String, Object> summary, String error) {
+    jobs++;
+    jobsByKind.put(kind, jobsByKind.containsKey(kind) ? jobsByKind.get(kind) + 1 : 1);
+    if (error != null) {
+      failures++;
+      errors.put(error, errors.containsKey(error) ? errors.get(error) + 1 : 1);
+    }
+    for (String metric : METRICS) {
+      Object v = summary.get(metric);
+      if (!(v instanceof Number) || ((Number) v).longValue() < 0) continue;
+      Rolling r = histograms.get(metric);
+      if (r == null) {
+        r = new Rolling(window);
+        histograms.put(metric, r);
+      }
+      r.add(((Number) v).longValue());
+    }
+    Map<String, Object> event = new HashMap<>(summary);
+    event.put("kind", kind);
+    event.put("status", error == null ? "ok" : "failed");
+    if (error != null) event.put("error", error);
+    event.put("timestamp", System.currentTimeMillis());
+    return event;
+  }
+
+  synchronized Map<String, Object> snapshot() {
+    Map<String, Object> m = new HashMap<>();
+    m.put("since", since);
+    m.put("window", window);
+    m.put("jobs", jobs);
+    m.put("failures", failures);
+    m.put("jobsByKind", new HashMap<>(jobsByKind));
+    m.put("errors", new HashMap<>(errors));
+    Map<String, Object> h = new LinkedHashMap<>();
+    for (Map.Entry<String, Rolling> e : histograms.entrySet()) h.put(e.getKey(), e.getValue().describe());
+    m.put("histograms", h);
+    return m;
+  }
+
+  synchronized void reset() {
+    histograms.clear();
+    jobsByKind.clear();
+    errors.clear();
+    jobs = 0;
+    failures = 0;
+    since = System.currentTimeMillis();
+  }
+}
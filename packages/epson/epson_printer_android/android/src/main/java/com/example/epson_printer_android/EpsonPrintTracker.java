@@ -0,0 +1,135 @@
+package com.example.epson_printer_android;
+
+import android.os.SystemClock;
+
+import com.epson.epos2.printer.Printer;
+import com.epson.epos2.printer.PrinterStatusInfo;
+import com.epson.epos2.printer.ReceiveListener;
+
+/**
+ * Ties each {@code sendData} to the {@code onPtrReceive} callback that reports its outcome.
+ *
+ * The SDK allows one outstanding send per printer, so the tracker holds at most one in-flight job.
+ * The job worker calls {@link #awaitIdle} before touching the command buffer again, which lets it
+ * prepare the next receipt while the previous one is still printing.
+ *
+ * {@code sendData} takes no job id, so the {@code printJobId} the SDK reports cannot be matched to
+ * ours. Instead a job given up on by {@link #awaitIdle} is remembered as still owed a callback:
+ * the next callback is consumed as that late one, and {@link #begin} waits a short while for it so
+ * it cannot complete the following job.
+ */
+final class EpsonPrintTracker implements ReceiveListener {
+
+  /** Callback code used when no onPtrReceive arrived before the wait gave up. */
+  static final int CODE_TRACKER_TIMEOUT = -1;
+  /** Callback code used when the connection went away with a job in flight. */
+  static final int CODE_TRACKER_ABORTED = -2;
+
+  interface Completion {
+    /** Called exactly once, from the SDK callback thread or the thread that gave up waiting. */
+    void onComplete(int code, PrinterStatusInfo status, long printMs);
+  }
+
+  private static final class InFlight {
+    final String jobId;
+    final Completion completion;
+    final long sentAtMs;
+
+    InFlight(String jobId, Completion completion, long sentAtMs) {
+      this.jobId = jobId;
+      this.completion = completion;
+      this.sentAtMs = sentAtMs;
+    }
+  }
+
+  // How long begin() waits for a timed-out job's late callback before assuming it was lost
+  private static final long OWED_DRAIN_MS = 3000;
+
+  private InFlight inFlight;
+  private long jobCounter = 0;
+  // Jobs completed with CODE_TRACKER_TIMEOUT whose onPtrReceive has not arrived yet
+  private int owed;
+
+  synchronized String nextJobId() {
+    return "job-" + (++jobCounter);
+  }
+
+  /** Registers the job whose sendData is about to be issued. */
+  synchronized void begin(String jobId, Completion completion) {
+    if (owed > 0) {
+      long deadline = SystemClock.elapsedRealtime() + OWED_DRAIN_MS;
+      while (owed > 0) {
+        long left = deadline - SystemClock.elapsedRealtime();
+        if (left <= 0) break;
+        try { wait(left); } catch (InterruptedException e) { Thread.currentThread().interrupt(); break; }
+      }
+      if (owed > 0) {
+        android.util.Log.d("EpsonPrinter", owed + " late callback(s) never arrived; tracking " + jobId);
+        owed = 0;
+      }
+    }
+    inFlight = new InFlight(jobId, completion, SystemClock.elapsedRealtime());
+  }
+
+  /** Drops the registration when sendData itself threw, so no callback will follow. */
+  synchronized void cancelBegin(String jobId) {
+    if (inFlight != null && inFlight.jobId.equals(jobId)) {
+      inFlight = null;
+      notifyAll();
+    }
+  }
+
+  synchronized String inFlightJobId() {
+    return inFlight != null ? inFlight.jobId : null;
+  }
+
+  @Override
+  public void onPtrReceive(Printer printer, int code, PrinterStatusInfo status, String printJobId) {
+    synchronized (this) {
+      if (owed > 0) {
+        // The SDK answers sends in order, so this belongs to the job that already timed out
+        owed--;
+        notifyAll();
+        android.util.Log.d("EpsonPrinter", "Dropped late callback " + code + " (" + printJobId + ")");
+        return;
+      }
+    }
+    complete(code, status);
+  }
+
+  /**
+   * Blocks until nothing is in flight. If {@code timeoutMs} passes first, the in-flight job is
+   * completed with {@link #CODE_TRACKER_TIMEOUT}; returns false in that case.
+   */
+  boolean awaitIdle(long timeoutMs) {
+    long deadline = SystemClock.elapsedRealtime() + timeoutMs;
+    synchronized (this) {
+      while (inFlight != null) {
+        long left = deadline - SystemClock.elapsedRealtime();
+        if (left <= 0) break;
+        try { wait(left); } catch (InterruptedException e) { Thread.currentThread().interrupt(); break; }
+      }
+      if (inFlight == null) return true;
+      owed++;
+    }
+    complete(CODE_TRACKER_TIMEOUT, null);
+    return false;
+  }
+
+  /** Fails whatever is in flight; used when the connection is torn down. */
+  void abort() {
+    complete(CODE_TRACKER_ABORTED, null);
+  }
+
+  private void complete(int code, PrinterStatusInfo status) {
+    InFlight done;
+    synchronized (this) {
+      done = inFlight;
+      inFlight = null;
+      notifyAll();
+    }
+    if (done != null && done.completion != null) {
+      done.completion.onComplete(code, status, SystemClock.elapsedRealtime() - done.sentAtMs);
+    }
+  }
+}
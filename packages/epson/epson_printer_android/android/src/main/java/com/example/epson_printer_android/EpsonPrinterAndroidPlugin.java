@@ -2,23 +2,24 @@ package com.example.epson_printer_android;
 
 import android.app.Activity;
 import android.content.Context;
+import android.graphics.Bitmap;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.bluetooth.BluetoothAdapter;
 import android.bluetooth.BluetoothDevice;
-import android.hardware.usb.UsbDevice;
-import android.hardware.usb.UsbInterface;
-import android.hardware.usb.UsbManager;
 import androidx.annotation.NonNull;
 import io.flutter.embedding.engine.plugins.FlutterPlugin;
 import io.flutter.embedding.engine.plugins.activity.ActivityAware;
 import io.flutter.embedding.engine.plugins.activity.ActivityPluginBinding;
+import io.flutter.plugin.common.EventChannel;
 import io.flutter.plugin.common.MethodCall;
 import io.flutter.plugin.common.MethodChannel;
 import io.flutter.plugin.common.MethodChannel.MethodCallHandler;
 import io.flutter.plugin.common.MethodChannel.Result;
 
 // Epson SDK imports
+import com.epson.epos2.Epos2CallbackCode;
 import com.epson.epos2.Epos2Exception;
 import com.epson.epos2.discovery.DeviceInfo;
 import com.epson.epos2.discovery.Discovery;
@@ -33,57 +34,167 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
 /** EpsonPrinterAndroidPlugin */
 public class EpsonPrinterAndroidPlugin implements FlutterPlugin, MethodCallHandler, ActivityAware {
   private MethodChannel channel;
+  // Pushes one record per finished job to Dart (EpsonPrinter.jobEvents)
+  private EventChannel jobEventChannel;
+  private volatile EventChannel.EventSink jobEventSink;
+  // Streams printers found by single-session discoverAllPrinters as they answer
+  private EventChannel discoveryEventChannel;
+  private volatile EventChannel.EventSink discoveryEventSink;
+  // Pushes status monitor changes (paper, cover, online) of every connected printer
+  private EventChannel statusEventChannel;
+  private volatile EventChannel.EventSink statusEventSink;
   private Context context;
   private Activity activity;
 
-  // Connection state
-  private Printer mPrinter;
+  // Connected printers keyed by target (written on connectExec, read from the main thread and job
+  // workers). Each has its own job worker, so jobs for different printers run in parallel.
+  private final Map<String, EpsonPrinterHandle> printers = new java.util.concurrent.ConcurrentHashMap<>();
+  // Printer used by calls that name no target: the one connected last
+  private volatile String defaultTarget;
+  private static final int DEFAULT_JOB_QUEUE_CAPACITY = 16;
+  // How long a job may wait for onPtrReceive before it is failed (overridable per job via settings.timeout)
+  private static final int DEFAULT_COMPLETION_TIMEOUT_MS = 30000;
+  // A drawer kick is a few bytes; a printer that has not answered by then is not going to
+  private static final int DRAWER_TIMEOUT_MS = 5000;
+
+  // Receipt templates compiled by registerTemplate, keyed by caller-chosen id
+  private final Map<String, List<ReceiptCommand>> templates = new java.util.concurrent.ConcurrentHashMap<>();
+  // Print-ready bitmaps for "image" commands (same logo on every receipt)
+  private final EpsonBitmapCache imageCache = new EpsonBitmapCache(EpsonBitmapCache.DEFAULT_MAX_BYTES);
+  // Rolling per-job timings/bytes/errors (getPrintMetrics)
+  private final EpsonPrintMetrics metrics = new EpsonPrintMetrics(EpsonPrintMetrics.DEFAULT_WINDOW);
+  // Which logo each printer holds under each NV graphics key code (persisted)
+  private EpsonNvLogoRegistry nvLogos;
+  // Printers seen by discovery / connected to, persisted so startup can skip a full search
+  private EpsonDiscoveryCache discoveryCache;
+  // Attached USB printers, kept live by attach/detach broadcasts
+  private EpsonUsbDevices usbDevices;
+  // Targets grouped into physical printers (MAC/IP/serial), ranked by measured speed (persisted)
+  private EpsonPrinterIdentities identities;
+  // Drawer kick combination that last opened each printer's drawer, and per-printer overrides
+  private EpsonDrawerProfiles drawerProfiles;
 
   // Discovery/state machine metadata (parity with iOS)
   private final Object stateLock = new Object();
-  private String discoveryState = "idle"; // idle | discoveringLan | discoveringBluetooth | discoveringUsb | cleaningUp | suspendedAfterUsbDisconnect
   private int discoverySessionId = 0;
   private boolean usbWasConnectedThisSession = false;
   private boolean pendingWorkQueued = false;
-  private long suspendedUntilMs = 0L;
-  private Handler mainHandler;
+  // Owns Discovery.start/stop and the discovery state (idle | discoveringLan | discoveringBluetooth |
+  // discoveringUsb | discoveringAll | discoveringPair | cleaningUp | suspendedAfterUsbDisconnect)
+  private EpsonDiscoveryController discovery;
+  // Running subnet probe (probeSubnet), cancelled by abortDiscovery
+  private volatile EpsonSubnetProber activeProbe;
+  // Bluetooth stack settle time between the end of discovery and a connect
+  private static final long CONNECT_SETTLE_MS = 500;
+  // Runs the blocking SDK connect/disconnect (and keep-alive reconnects) off the main thread, one
+  // at a time in call order
+  private ScheduledExecutorService connectExec;
+  // Connect calls not answered yet (cancelConnect); guarded by stateLock
+  private final List<ConnectAttempt> pendingConnects = new ArrayList<>();
 
   @Override
   public void onAttachedToEngine(@NonNull FlutterPluginBinding flutterPluginBinding) {
     channel = new MethodChannel(flutterPluginBinding.getBinaryMessenger(), "epson_printer");
     channel.setMethodCallHandler(this);
+    jobEventChannel = new EventChannel(flutterPluginBinding.getBinaryMessenger(), "epson_printer/jobs");
+    jobEventChannel.setStreamHandler(new EventChannel.StreamHandler() {
+      @Override public void onListen(Object arguments, EventChannel.EventSink events) { jobEventSink = events; }
+      @Override public void onCancel(Object arguments) { jobEventSink = null; }
+    });
+    discoveryEventChannel = new EventChannel(flutterPluginBinding.getBinaryMessenger(), "epson_printer/discovery");
+    discoveryEventChannel.setStreamHandler(new EventChannel.StreamHandler() {
+      @Override public void onListen(Object arguments, EventChannel.EventSink events) { discoveryEventSink = events; }
+      @Override public void onCancel(Object arguments) { discoveryEventSink = null; }
+    });
+    statusEventChannel = new EventChannel(flutterPluginBinding.getBinaryMessenger(), "epson_printer/status");
+    statusEventChannel.setStreamHandler(new EventChannel.StreamHandler() {
+      @Override public void onListen(Object arguments, EventChannel.EventSink events) { statusEventSink = events; }
+      @Override public void onCancel(Object arguments) { statusEventSink = null; }
+    });
     context = flutterPluginBinding.getApplicationContext();
-    mainHandler = new Handler(Looper.getMainLooper());
+    nvLogos = new EpsonNvLogoRegistry(context);
+    discoveryCache = new EpsonDiscoveryCache(context);
+    usbDevices = new EpsonUsbDevices(context);
+    usbDevices.start();
+    identities = new EpsonPrinterIdentities(context);
+    drawerProfiles = new EpsonDrawerProfiles(context);
+    discovery = new EpsonDiscoveryController(context);
+    connectExec = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread t = new Thread(r, "epson-connect");
+      t.setDaemon(true);
+      return t;
+    });
   }
 
   @Override
-  public void onMethodCall(@NonNull MethodCall call, @NonNull Result result) {
+  public void onMethodCall(@NonNull MethodCall call, @NonNull Result reply) {
+    // A job worker may still try to answer after a reply went out (crash after success); only the
+    // first reply reaches Dart
+    final Result result = new SingleReply(reply);
     switch (call.method) {
       case "discoverPrinters":
-        if (isSuspended()) { result.success(java.util.Collections.emptyList()); } else { discoverLanPrinters(result); }
+        if (isSuspended()) { result.success(java.util.Collections.emptyList()); } else { discoverCached(call, "TCP", result, this::discoverLanPrinters); }
         break;
       case "discoverBluetoothPrinters":
-        if (isSuspended()) { result.success(java.util.Collections.emptyList()); } else { discoverBluetoothPrinters(result); }
+        if (isSuspended()) { result.success(java.util.Collections.emptyList()); } else { discoverCached(call, "BT", result, this::discoverBluetoothPrinters); }
         break;
       case "discoverUsbPrinters":
-        if (isSuspended()) { result.success(java.util.Collections.emptyList()); } else { discoverUsbPrinters(result); }
+        if (isSuspended()) { result.success(java.util.Collections.emptyList()); } else { discoverCached(call, "USB", result, r -> discoverUsbFast(call, r)); }
         break;
       case "discoverAllPrinters":
         if (isSuspended()) {
           result.success(java.util.Collections.emptyList());
+        } else if (Boolean.TRUE.equals(call.argument("singleSession"))) {
+          discoverCached(call, null, result, r -> discoverAllPortsOnce(call, r));
         } else {
-          discoverAllPrinters(result);
+          discoverCached(call, null, result, this::discoverAllPrinters);
         }
         break;
+      case "probeSubnet":
+        probeSubnet(call, result);
+        break;
+      case "getDiscoveryCache": {
+        Map<String, Object> dc = new HashMap<>();
+        dc.put("ttlMs", discoveryCache.ttlMs());
+        dc.put("lastConnected", discoveryCache.lastConnectedTarget());
+        dc.put("printers", discoveryCache.list());
+        result.success(dc);
+        break;
+      }
+      case "configureDiscoveryCache": {
+        Object ttl = call.argument("ttlMs");
+        if (ttl instanceof Number) discoveryCache.setTtlMs(((Number) ttl).longValue());
+        if (Boolean.TRUE.equals(call.argument("clear"))) discoveryCache.clear();
+        result.success(discoveryCache.ttlMs());
+        break;
+      }
+      case "getPrinterIdentities":
+        result.success(identities.printers());
+        break;
+      case "clearPrinterIdentities":
+        identities.clear();
+        result.success(null);
+        break;
+      case "getDrawerProfiles":
+        result.success(drawerProfiles.list());
+        break;
+      case "setDrawerOverride":
+        setDrawerOverride(call, result);
+        break;
+      case "clearDrawerProfiles":
+        drawerProfiles.clear(targetArgument(call));
+        result.success(null);
+        break;
       case "pairBluetoothDevice":
         pairBluetoothDevice(result);
         break;
@@ -91,28 +202,97 @@ public class EpsonPrinterAndroidPlugin implements FlutterPlugin, MethodCallHandl
         connectPrinter(call, result);
         break;
       case "disconnect":
-        disconnectPrinter(result);
+        disconnectPrinter(call, result);
+        break;
+      case "getConnectedPrinters": {
+        List<Map<String, Object>> list = new ArrayList<>();
+        for (EpsonPrinterHandle h : printers.values()) {
+          Map<String, Object> m = h.describe();
+          m.put("isDefault", h.target.equals(defaultTarget));
+          list.add(m);
+        }
+        result.success(list);
+        break;
+      }
+      case "getConnectionMetrics": {
+        EpsonPrinterHandle h = handleFor(call);
+        Map<String, Object> cm;
+        if (h != null) {
+          cm = h.keeper.stats();
+          cm.put("target", h.target);
+          cm.put("queue", h.queue.snapshot());
+        } else {
+          cm = new HashMap<>();
+          cm.put("state", "disconnected");
+        }
+        result.success(cm);
+        break;
+      }
+      case "cancelConnect":
+        result.success(cancelConnects("Cancelled by cancelConnect"));
         break;
       case "printReceipt":
         printReceipt(call, result);
         break;
-      case "getStatus":
-        // Minimal status until full mapping is implemented
-        java.util.Map<String, Object> status = new java.util.HashMap<>();
-        status.put("isOnline", mPrinter != null);
-        status.put("status", mPrinter != null ? "connected" : "disconnected");
-        result.success(status);
+      case "printBatch":
+        printBatch(call, result);
+        break;
+      case "registerTemplate":
+        registerTemplate(call, result);
+        break;
+      case "printTemplate":
+        printTemplate(call, result);
+        break;
+      case "benchmarkEncoder":
+        benchmarkEncoder(call, result);
+        break;
+      case "benchmarkImagePacking":
+        benchmarkImagePacking(call, result);
+        break;
+      case "uploadNvLogo":
+        uploadNvLogo(call, result);
+        break;
+      case "deleteNvLogo":
+        deleteNvLogo(call, result);
+        break;
+      case "forgetNvLogos":
+        forgetNvLogos(call, result);
+        break;
+      case "getNvLogos": {
+        EpsonPrinterHandle h = handleFor(call);
+        result.success(nvLogos.list(h != null ? h.target : null));
         break;
+      }
+      case "getImageCacheStats":
+        result.success(imageCache.stats());
+        break;
+      case "configureImageCache": {
+        Integer maxBytes = call.argument("maxBytes");
+        if (maxBytes != null) imageCache.resize(maxBytes);
+        if (Boolean.TRUE.equals(call.argument("clear"))) imageCache.clear();
+        result.success(imageCache.stats());
+        break;
+      }
+      case "unregisterTemplate":
+        result.success(templates.remove(String.valueOf(call.argument("id"))) != null);
+        break;
+      case "getStatus": {
+        // Answered from the status monitor's cached snapshot; never talks to the printer
+        EpsonPrinterHandle h = handleFor(call);
+        result.success(h != null ? statusOf(h) : disconnectedStatus());
+        break;
+      }
       case "openCashDrawer":
-        openCashDrawer(result);
+        openCashDrawer(call, result);
         break;
       case "isConnected":
-        result.success(mPrinter != null);
+        result.success(handleFor(call) != null);
         break;
       case "getDiscoveryState": {
         java.util.Map<String, Object> st = new java.util.HashMap<>();
+        st.putAll(discovery.stats());
         synchronized (stateLock) {
-          st.put("state", discoveryState);
+          st.put("state", discovery.state());
           st.put("sessionId", discoverySessionId);
           st.put("usbWasConnectedThisSession", usbWasConnectedThisSession);
           st.put("pendingWorkQueued", pendingWorkQueued);
@@ -125,7 +305,29 @@ public class EpsonPrinterAndroidPlugin implements FlutterPlugin, MethodCallHandl
         break;
       }
       case "detectPaperWidth": {
-        detectPaperWidth(result);
+        detectPaperWidth(call, result);
+        break;
+      }
+      case "getPrintableWidth": {
+        EpsonPrinterHandle h = handleFor(call);
+        java.util.Map<String, Object> pw = new java.util.HashMap<>();
+        pw.put("dots", h != null ? h.printableDots : null);
+        pw.put("source", h != null ? h.printableSource : "default");
+        result.success(pw);
+        break;
+      }
+      case "getPrintMetrics": {
+        Map<String, Object> snapshot = metrics.snapshot();
+        if (Boolean.TRUE.equals(call.argument("reset"))) metrics.reset();
+        result.success(snapshot);
+        break;
+      }
+      case "getJobQueueStatus": {
+        EpsonPrinterHandle h = handleFor(call);
+        java.util.Map<String, Object> st = h != null ? h.queue.snapshot() : new java.util.HashMap<>();
+        st.put("connected", h != null);
+        st.put("inFlightJobId", h != null ? h.tracker.inFlightJobId() : null);
+        result.success(st);
         break;
       }
       default:
@@ -134,68 +336,56 @@ public class EpsonPrinterAndroidPlugin implements FlutterPlugin, MethodCallHandl
   }
 
   // --- State helpers ---
-  private void setState(String s) {
-    synchronized (stateLock) {
-      discoveryState = s;
-    }
-  }
-
   private boolean isSuspended() {
-    synchronized (stateLock) {
-      long now = System.currentTimeMillis();
-      if ("cleaningUp".equals(discoveryState)) return true;
-      if ("suspendedAfterUsbDisconnect".equals(discoveryState) && now < suspendedUntilMs) return true;
-      if (now < suspendedUntilMs) return true;
-    }
-    return false;
+    return discovery.isSuspended();
   }
 
-  private void suspendShort(long millis) {
-    synchronized (stateLock) {
-      discoveryState = "suspendedAfterUsbDisconnect";
-      suspendedUntilMs = System.currentTimeMillis() + Math.max(0, millis);
-    }
-    mainHandler.postDelayed(() -> {
+  private void abortDiscovery(@NonNull Result result) {
+    EpsonSubnetProber probe = activeProbe;
+    if (probe != null) probe.cancel();
+    discovery.cleanup(() -> {
       synchronized (stateLock) {
-        if (System.currentTimeMillis() >= suspendedUntilMs && "suspendedAfterUsbDisconnect".equals(discoveryState)) {
-          discoveryState = "idle";
-        }
+        discoverySessionId++;
       }
-    }, Math.max(0, millis) + 50);
+      discovery.suspend(250);
+      result.success(null);
+    });
   }
 
-  private void cleanupDiscoveryAsync(@NonNull Runnable onDone) {
-    setState("cleaningUp");
-    new Thread(() -> {
-      for (int i = 0; i < 20; i++) {
-        try {
-          Discovery.stop();
-          break;
-        } catch (Epos2Exception e) {
-          if (e.getErrorStatus() != Epos2Exception.ERR_PROCESSING) {
-            break;
-          }
-          try { Thread.sleep(100); } catch (InterruptedException ignored) {}
-        } catch (Throwable t) {
-          break;
-        }
+  // --- Discovery cache ---
+  private interface Discoverer { void run(@NonNull Result result); }
+
+  // Every discovery result is written to the cache. With useCache, fresh cached entries answer at
+  // once and the discovery still runs behind them (unless one is already running) to refresh them.
+  private void discoverCached(@NonNull MethodCall call, String transport, @NonNull Result result, @NonNull Discoverer discoverer) {
+    if (Boolean.TRUE.equals(call.argument("useCache"))) {
+      List<String> cached = discoveryCache.fresh(transport);
+      if (!cached.isEmpty()) {
+        result.success(cached);
+        if (discovery.isIdle()) discoverer.run(recordingResult(null));
+        return;
       }
-      try { Thread.sleep(100); } catch (InterruptedException ignored) {}
-      mainHandler.post(() -> {
-        setState("idle");
-        onDone.run();
-      });
-    }).start();
+    }
+    discoverer.run(recordingResult(result));
   }
 
-  private void abortDiscovery(@NonNull Result result) {
-    cleanupDiscoveryAsync(() -> {
-      synchronized (stateLock) {
-        discoverySessionId++;
+  private Result recordingResult(final Result delegate) {
+    return new Result() {
+      @Override public void success(Object o) {
+        if (o instanceof List) {
+          List<String> entries = new ArrayList<>();
+          for (Object e : (List<?>) o) if (e instanceof String) entries.add((String) e);
+          discoveryCache.seen(entries);
+        }
+        if (delegate != null) delegate.success(o);
       }
-      suspendShort(250);
-      result.success(null);
-    });
+      @Override public void error(String code, String msg, Object details) {
+        if (delegate != null) delegate.error(code, msg, details);
+      }
+      @Override public void notImplemented() {
+        if (delegate != null) delegate.notImplemented();
+      }
+    };
   }
 
   // --- Orchestrated unified discovery ---
@@ -213,7 +403,6 @@ public class EpsonPrinterAndroidPlugin implements FlutterPlugin, MethodCallHandl
     final java.util.Set<String> dedup = new java.util.HashSet<>();
     final java.util.List<String> agg = new java.util.ArrayList<>();
 
-    setState("discoveringLan");
     runLanDiscovery(5000, lan -> {
       for (String s : lan) {
         String key = stripName(s);
@@ -222,46 +411,235 @@ public class EpsonPrinterAndroidPlugin implements FlutterPlugin, MethodCallHandl
 
       // If USB is attached, prioritize USB path next
       if (isEpsonUsbAttached()) {
-        setState("discoveringUsb");
-        runUsbDiscovery(4000, usb -> {
+        runUsbFast(4000, usb -> {
           for (String s : usb) {
             String key = stripName(s);
             if (!dedup.contains(key)) { dedup.add(key); agg.add(s); }
           }
-          setState("idle");
           result.success(new java.util.ArrayList<>(agg));
         });
         return;
       }
 
-      setState("discoveringBluetooth");
       runBtDiscovery(4000, bt -> {
         for (String s : bt) {
           String key = stripName(s);
           if (!dedup.contains(key)) { dedup.add(key); agg.add(s); }
         }
-        setState("discoveringUsb");
-        runUsbDiscovery(4000, usb -> {
+        runUsbFast(4000, usb -> {
           for (String s : usb) {
             String key = stripName(s);
             if (!dedup.contains(key)) { dedup.add(key); agg.add(s); }
           }
-          setState("idle");
           result.success(new java.util.ArrayList<>(agg));
         });
       });
     });
   }
 
-  // Internal helpers that mirror existing public methods but return via callback
-  private void runLanDiscovery(int timeoutMs, @NonNull ListCallback cb) {
-    // Stop any existing discovery
-    for (int i = 0; i < 10; i++) {
-      try { Discovery.stop(); break; }
-      catch (Epos2Exception e) { if (e.getErrorStatus() != Epos2Exception.ERR_PROCESSING) break; try { Thread.sleep(50);} catch (InterruptedException ignored) {} }
-      catch (Throwable t) { break; }
+  // One PORTTYPE_ALL session instead of LAN, then Bluetooth, then USB. Every printer is pushed to
+  // epson_printer/discovery as it answers, and the session ends as soon as expectedTarget is seen.
+  private void discoverAllPortsOnce(@NonNull MethodCall call, @NonNull Result result) {
+    final int timeoutMs = Math.max(500, getInt(call.argument("timeout"), 8000));
+    final String expected = (String) call.argument("expectedTarget");
+    final int session;
+    synchronized (stateLock) { session = ++discoverySessionId; }
+
+    final long startedAt = SystemClock.elapsedRealtime();
+    final Set<String> dedup = new HashSet<>();
+    final List<String> agg = new ArrayList<>();
+    final boolean[] finished = { false };
+    final String[] reason = { "timeout" };
+
+    final DiscoveryListener listener = new DiscoveryListener() {
+      @Override public void onDiscovery(final DeviceInfo deviceInfo) {
+        String entry = entryFor(deviceInfo);
+        if (entry == null) return;
+        boolean hit = expected != null && matchesTarget(deviceInfo, entry, expected);
+        synchronized (agg) {
+          if (finished[0] || !dedup.add(stripName(entry))) return;
+          agg.add(entry);
+          if (hit) reason[0] = "expectedFound";
+        }
+        discoveryCache.seen(entry, deviceInfo.getMacAddress());
+        noteIdentity(entry, deviceInfo);
+        emitDiscovery(foundEvent(session, entry, "live", startedAt));
+        if (hit) discovery.finishEarly();
+      }
+    };
+
+    // Paired Bluetooth printers are known before any radio traffic; report them first
+    for (String entry : getBondedBtPrinters()) {
+      synchronized (agg) {
+        if (!dedup.add(stripName(entry))) continue;
+        agg.add(entry);
+      }
+      emitDiscovery(foundEvent(session, entry, "bonded", startedAt));
+    }
+
+    FilterOption filter = new FilterOption();
+    filter.setDeviceType(Discovery.TYPE_PRINTER);
+    filter.setPortType(Discovery.PORTTYPE_ALL);
+    filter.setEpsonFilter(Discovery.FILTER_NAME);
+    discovery.run("discoveringAll", filter, listener, timeoutMs, started -> {
+      if (!started) {
+        // Some SDK builds refuse PORTTYPE_ALL; fall back to one transport at a time
+        android.util.Log.d("EpsonPrinter", "PORTTYPE_ALL discovery unavailable, using sequential");
+        synchronized (agg) { finished[0] = true; }
+        discoverAllPrinters(result);
+        return;
+      }
+      final List<String> snapshot;
+      synchronized (agg) {
+        finished[0] = true;
+        snapshot = new ArrayList<>(agg);
+      }
+      Map<String, Object> done = new HashMap<>();
+      done.put("event", "done");
+      done.put("sessionId", session);
+      done.put("reason", reason[0]);
+      done.put("count", snapshot.size());
+      done.put("elapsedMs", SystemClock.elapsedRealtime() - startedAt);
+      emitDiscovery(done);
+      result.success(snapshot);
+    });
+  }
+
+  // Broadcast-free LAN discovery: parallel non-blocking connects across a CIDR range. Hits stream to
+  // epson_printer/discovery (source "probe") and go into the discovery cache like SDK results.
+  private void probeSubnet(@NonNull MethodCall call, @NonNull Result result) {
+    final String cidr = call.argument("cidr");
+    if (cidr == null || cidr.isEmpty()) {
+      result.error("INVALID_ARGS", "cidr is required, e.g. 10.20.0.0/22", null);
+      return;
+    }
+    int[] ports = null;
+    Object portList = call.argument("ports");
+    if (portList instanceof List && !((List<?>) portList).isEmpty()) {
+      List<?> l = (List<?>) portList;
+      ports = new int[l.size()];
+      for (int i = 0; i < ports.length; i++) ports[i] = getInt(l.get(i), EpsonSubnetProber.RAW_PORT);
+    }
+    final EpsonSubnetProber probe = new EpsonSubnetProber(ports,
+        getInt(call.argument("timeout"), 1500),
+        getInt(call.argument("identifyTimeout"), 800),
+        getInt(call.argument("maxConcurrency"), 128),
+        !Boolean.FALSE.equals(call.argument("requireIdentify")));
+    try {
+      EpsonSubnetProber.hosts(cidr);
+    } catch (RuntimeException e) {
+      result.error("INVALID_ARGS", "Bad cidr " + cidr + ": " + e.getMessage(), null);
+      return;
+    }
+    final int session;
+    synchronized (stateLock) {
+      if (activeProbe != null) {
+        result.error("PROBE_BUSY", "A subnet probe is already running", null);
+        return;
+      }
+      activeProbe = probe;
+      session = ++discoverySessionId;
+    }
+    final long startedAt = SystemClock.elapsedRealtime();
+    new Thread(() -> {
+      try {
+        List<String> hits = probe.probe(cidr, (entry, serial) -> {
+          identities.seen(entry, null, null, serial);
+          emitDiscovery(foundEvent(session, entry, "probe", startedAt));
+        });
+        discoveryCache.seen(hits);
+        Map<String, Object> out = probe.stats();
+        out.put("printers", hits);
+        runOnMain(() -> result.success(out));
+      } catch (Exception e) {
+        runOnMain(() -> result.error("PROBE_FAILED", e.getMessage(), probe.stats()));
+      } finally {
+        activeProbe = null;
+      }
+    }, "epson-subnet-probe").start();
+  }
+
+  private Map<String, Object> foundEvent(int session, String entry, String source, long startedAt) {
+    Map<String, Object> m = new HashMap<>();
+    m.put("event", "found");
+    m.put("sessionId", session);
+    m.put("entry", entry);
+    m.put("target", stripName(entry));
+    m.put("portType", entry.substring(0, entry.indexOf(':')));
+    m.put("source", source);
+    m.put("elapsedMs", SystemClock.elapsedRealtime() - startedAt);
+    return m;
+  }
+
+  private void emitDiscovery(final Map<String, Object> event) {
+    if (discoveryEventSink == null) return;
+    runOnMain(() -> {
+      EventChannel.EventSink sink = discoveryEventSink;
+      if (sink != null) sink.success(event);
+    });
+  }
+
+  // "PORT:address:name" for any transport, the same shape the per-transport discoveries return
+  private String entryFor(DeviceInfo d) {
+    String target = d.getTarget();
+    String name = d.getDeviceName();
+    if (target == null || target.isEmpty()) {
+      if (d.getIpAddress() != null && !d.getIpAddress().isEmpty()) target = "TCP:" + d.getIpAddress();
+      else if (d.getBdAddress() != null && !d.getBdAddress().isEmpty()) target = "BT:" + d.getBdAddress();
+      else return null;
+    }
+    if (!target.startsWith("TCP") && !target.startsWith("BT:") && !target.startsWith("USB:") && !target.startsWith("BLE:")) {
+      target = "TCP:" + target;
+    }
+    String fallback = target.startsWith("USB:") ? "USB Printer" : "Printer";
+    return target + ":" + (name != null ? name : fallback);
+  }
+
+  // expectedTarget may be the SDK target (TCP:<mac>), the IP/BD form or a full discovery entry
+  private boolean matchesTarget(DeviceInfo d, String entry, String expected) {
+    if (expected.equalsIgnoreCase(entry) || expected.equalsIgnoreCase(stripName(entry))) return true;
+    if (expected.equalsIgnoreCase(d.getTarget())) return true;
+    if (d.getIpAddress() != null && expected.equalsIgnoreCase("TCP:" + d.getIpAddress())) return true;
+    return d.getBdAddress() != null && expected.equalsIgnoreCase("BT:" + d.getBdAddress());
+  }
+
+  // Every identifier the SDK reports for a hit goes to the identity registry
+  private void noteIdentity(String entry, DeviceInfo d) {
+    String mac = d.getMacAddress();
+    if (mac == null || mac.isEmpty()) mac = d.getBdAddress();
+    String target = stripName(entry);
+    identities.seen(entry, mac, d.getIpAddress(), target.startsWith("USB:") ? usbDevices.serialOf(target) : null);
+  }
+
+  private List<String> noteUsb(List<String> entries) {
+    if (entries != null) {
+      for (String entry : entries) identities.seen(entry, null, null, usbDevices.serialOf(stripName(entry)));
+    }
+    return entries;
+  }
+
+  // Attached Epson USB printers come straight from the live device list; the SDK's USB discovery
+  // (4 s) only runs when a printer-class device cannot be resolved or usbMode is "sdk"
+  private void discoverUsbFast(@NonNull MethodCall call, @NonNull Result result) {
+    List<String> entries = "sdk".equals(call.argument("usbMode")) ? null : noteUsb(usbDevices.entries());
+    if (entries != null) {
+      result.success(entries);
+      return;
+    }
+    discoverUsbPrinters(result);
+  }
+
+  private void runUsbFast(int timeoutMs, @NonNull ListCallback cb) {
+    List<String> entries = noteUsb(usbDevices.entries());
+    if (entries != null) {
+      cb.onResult(entries);
+      return;
     }
+    runUsbDiscovery(timeoutMs, cb);
+  }
 
+  // Internal helpers that mirror existing public methods but return via callback
+  private void runLanDiscovery(int timeoutMs, @NonNull ListCallback cb) {
     final java.util.List<String> found = new java.util.ArrayList<>();
     final FilterOption filter = new FilterOption();
     filter.setDeviceType(Discovery.TYPE_PRINTER);
@@ -286,37 +664,19 @@ public class EpsonPrinterAndroidPlugin implements FlutterPlugin, MethodCallHandl
           }
           String entry = prefixTarget + ":" + (name != null ? name : "Printer");
           if (!found.contains(entry)) found.add(entry);
+          noteIdentity(entry, deviceInfo);
         }
       }
     };
 
-    boolean started = false;
-    try { Discovery.start(context, filter, listener); started = true; }
-    catch (Exception e) { /* ignore */ }
-
-    final boolean startedFinal = started;
-    mainHandler.postDelayed(() -> {
-      if (startedFinal) {
-        while (true) {
-          try { Discovery.stop(); break; }
-          catch (Epos2Exception e) { if (e.getErrorStatus() != Epos2Exception.ERR_PROCESSING) break; }
-          catch (Throwable t) { break; }
-        }
-      }
+    discovery.run("discoveringLan", filter, listener, Math.max(500, timeoutMs), started -> {
       synchronized (found) { cb.onResult(new java.util.ArrayList<>(found)); }
-    }, Math.max(500, timeoutMs));
+    });
   }
 
   private void runBtDiscovery(int timeoutMs, @NonNull ListCallback cb) {
-    // Stop any existing discovery
-    for (int i = 0; i < 10; i++) {
-      try { Discovery.stop(); break; }
-      catch (Epos2Exception e) { if (e.getErrorStatus() != Epos2Exception.ERR_PROCESSING) break; try { Thread.sleep(50);} catch (InterruptedException ignored) {} }
-      catch (Throwable t) { break; }
-    }
-
     final java.util.List<String> found = new java.util.ArrayList<>();
-    // Seed with bonded
+    // Seed with bonded (still returned if discovery cannot start: permissions, BT off)
     for (String entry : getBondedBtPrinters()) { if (!found.contains(entry)) found.add(entry); }
 
     final FilterOption filter = new FilterOption();
@@ -341,35 +701,17 @@ public class EpsonPrinterAndroidPlugin implements FlutterPlugin, MethodCallHandl
           if (prefixTarget == null) return;
           String entry = prefixTarget + ":" + (name != null ? name : "Printer");
           if (!found.contains(entry)) found.add(entry);
+          noteIdentity(entry, deviceInfo);
         }
       }
     };
 
-    boolean started = false;
-    try { Discovery.start(context, filter, listener); started = true; }
-    catch (Exception e) { /* ignore */ }
-
-    final boolean startedFinal = started;
-    mainHandler.postDelayed(() -> {
-      if (startedFinal) {
-        while (true) {
-          try { Discovery.stop(); break; }
-          catch (Epos2Exception e) { if (e.getErrorStatus() != Epos2Exception.ERR_PROCESSING) break; }
-          catch (Throwable t) { break; }
-        }
-      }
+    discovery.run("discoveringBluetooth", filter, listener, Math.max(500, timeoutMs), started -> {
       synchronized (found) { cb.onResult(new java.util.ArrayList<>(found)); }
-    }, Math.max(500, timeoutMs));
+    });
   }
 
   private void runUsbDiscovery(int timeoutMs, @NonNull ListCallback cb) {
-    // Stop any existing discovery
-    for (int i = 0; i < 10; i++) {
-      try { Discovery.stop(); break; }
-      catch (Epos2Exception e) { if (e.getErrorStatus() != Epos2Exception.ERR_PROCESSING) break; try { Thread.sleep(50);} catch (InterruptedException ignored) {} }
-      catch (Throwable t) { break; }
-    }
-
     final java.util.List<String> found = new java.util.ArrayList<>();
 
     final FilterOption filter = new FilterOption();
@@ -386,254 +728,188 @@ public class EpsonPrinterAndroidPlugin implements FlutterPlugin, MethodCallHandl
           if (!target.startsWith("USB:")) target = "USB:" + target;
           String entry = target + ":" + (name != null ? name : "USB Printer");
           if (!found.contains(entry)) found.add(entry);
+          noteIdentity(entry, deviceInfo);
         }
       }
     };
 
-    boolean started = false;
-    try { Discovery.start(context, filter, listener); started = true; }
-    catch (Exception e) { /* ignore */ }
-
-    final boolean startedFinal = started;
-    mainHandler.postDelayed(() -> {
-      if (startedFinal) {
-        while (true) {
-          try { Discovery.stop(); break; }
-          catch (Epos2Exception e) { if (e.getErrorStatus() != Epos2Exception.ERR_PROCESSING) break; }
-          catch (Throwable t) { break; }
-        }
-      }
-      // Post USB extra cleanup to avoid internal discovery overlap
-      mainHandler.postDelayed(() -> {
-        for (int i = 0; i < 10; i++) {
-          try { Discovery.stop(); break; }
-          catch (Epos2Exception e) { if (e.getErrorStatus() != Epos2Exception.ERR_PROCESSING) break; }
-          catch (Throwable t) { break; }
-        }
-      }, 500);
-
+    discovery.run("discoveringUsb", filter, listener, Math.max(500, timeoutMs), started -> {
+      // A second stop shortly after USB discovery clears the SDK's internal BLE/BT discovery state
+      // (prevents thread priority inversion on the next discovery; matches iOS fix)
+      if (started) discovery.stopLater(500);
       synchronized (found) { cb.onResult(new java.util.ArrayList<>(found)); }
-    }, Math.max(500, timeoutMs));
+    });
   }
 
   private void discoverLanPrinters(@NonNull Result result) {
-    // CRITICAL: Force stop any existing discovery before starting new one
-    // This handles USB disconnect and other hardware state changes
-    for (int i = 0; i < 10; i++) {
-      try {
-        Discovery.stop();
-        break;
-      } catch (Epos2Exception e) {
-        if (e.getErrorStatus() != Epos2Exception.ERR_PROCESSING) {
-          break;
+    runLanDiscovery(5000, result::success);
+  }
+
+  // Bluetooth discovery (Classic only) + include bonded devices to handle Settings-paired printers
+  private void discoverBluetoothPrinters(@NonNull Result result) {
+    runBtDiscovery(4000, result::success);
+  }
+
+  // Return bonded devices formatted as BT:MAC:Name (filter to likely Epson names)
+  private List<String> getBondedBtPrinters() {
+    List<String> result = new ArrayList<>();
+    try {
+      BluetoothAdapter adapter = BluetoothAdapter.getDefaultAdapter();
+      if (adapter == null) return result;
+      Set<BluetoothDevice> bonded = adapter.getBondedDevices();
+      if (bonded == null) return result;
+      for (BluetoothDevice d : bonded) {
+        String name = d.getName();
+        String mac = d.getAddress();
+        if (mac == null || mac.isEmpty()) continue;
+        // Heuristic: Epson names often contain "TM" or "EPSON"
+        if (name == null || name.isEmpty() ||
+            !(name.toUpperCase().contains("TM") || name.toUpperCase().contains("EPSON"))) {
+          // Still include; user may rename device
         }
-        try { Thread.sleep(50); } catch (InterruptedException ignored) {}
+        String entry = "BT:" + mac + ":" + (name != null ? name : "Printer");
+        if (!result.contains(entry)) result.add(entry);
       }
+    } catch (Throwable t) {
+      // ignore and return what we have
     }
-    
-    final List<String> found = new ArrayList<>();
-    final FilterOption filter = new FilterOption();
-    filter.setDeviceType(Discovery.TYPE_PRINTER);
-    filter.setPortType(Discovery.PORTTYPE_TCP);
-    filter.setEpsonFilter(Discovery.FILTER_NAME);
+    return result;
+  }
 
-    final DiscoveryListener listener = new DiscoveryListener() {
-      @Override
-      public void onDiscovery(final DeviceInfo deviceInfo) {
-        synchronized (found) {
-          String target = deviceInfo.getTarget();
-          String ip = deviceInfo.getIpAddress();
-          String name = deviceInfo.getDeviceName();
-          String prefixTarget;
-          if (target != null && target.startsWith("TCP:")) {
-            prefixTarget = target;
-          } else if (ip != null && !ip.isEmpty()) {
-            prefixTarget = "TCP:" + ip;
-          } else if (target != null && !target.isEmpty()) {
-            prefixTarget = target.startsWith("TCP:") ? target : ("TCP:" + target);
-          } else {
-            return;
-          }
-          String entry = prefixTarget + ":" + (name != null ? name : "Printer");
-          if (!found.contains(entry)) {
-            found.add(entry);
-          }
-        }
-      }
-    };
+  // One connect call. Answered exactly once: by the connect itself, or at once by cancelConnect /
+  // disconnect while the SDK connect may still be running (its printer is then disposed afterwards).
+  private final class ConnectAttempt {
+    final Result result;
+    final long startedAt = SystemClock.elapsedRealtime();
+    private final Map<String, Object> phases = new HashMap<>();
+    private long phaseStart = startedAt;
+    private boolean answered;
+    volatile boolean cancelled;
+    // Set under stateLock once the connection is in printers; from then on it can no longer be cancelled
+    boolean committed;
+
+    ConnectAttempt(Result result) {
+      this.result = result;
+    }
 
-    try {
-      Discovery.start(context, filter, listener);
-    } catch (Exception e) {
-      result.success(Collections.emptyList());
-      return;
+    // Time since the previous phase ended, recorded under key
+    synchronized void phase(String key) {
+      long now = SystemClock.elapsedRealtime();
+      phases.put(key, now - phaseStart);
+      phaseStart = now;
     }
 
-    // Stop after a short window and return results
-    new android.os.Handler(android.os.Looper.getMainLooper()).postDelayed(() -> {
-      while (true) {
-        try {
-          Discovery.stop();
-          break;
-        } catch (Epos2Exception e) {
-          if (e.getErrorStatus() != Epos2Exception.ERR_PROCESSING) {
-            break;
-          }
-        }
+    synchronized Map<String, Object> timings() {
+      Map<String, Object> m = new HashMap<>(phases);
+      m.put("totalMs", SystemClock.elapsedRealtime() - startedAt);
+      return m;
+    }
+
+    private boolean claim() {
+      synchronized (this) {
+        if (answered) return false;
+        answered = true;
       }
-      synchronized (found) {
-        result.success(new ArrayList<>(found));
+      synchronized (stateLock) { pendingConnects.remove(this); }
+      return true;
+    }
+
+    void succeed(Map<String, Object> out) {
+      if (claim()) runOnMain(() -> result.success(out));
+    }
+
+    void fail(String code, String message, Object details) {
+      if (claim()) runOnMain(() -> result.error(code, message, details));
+    }
+
+    boolean cancel(String reason) {
+      synchronized (stateLock) {
+        if (committed) return false; // registered already; succeed() answers
+        cancelled = true;
       }
-    }, 5000);
+      if (!claim()) return false;
+      final Map<String, Object> t = timings();
+      runOnMain(() -> result.error("CONNECT_CANCELLED", reason, t));
+      return true;
+    }
   }
 
-  // Bluetooth discovery (Classic only) + include bonded devices to handle Settings-paired printers
-  private void discoverBluetoothPrinters(@NonNull Result result) {
-    // CRITICAL: Force stop any existing discovery before starting new one
-    // This handles USB disconnect and other hardware state changes
-    for (int i = 0; i < 10; i++) {
-      try {
-        Discovery.stop();
-        break;
-      } catch (Epos2Exception e) {
-        if (e.getErrorStatus() != Epos2Exception.ERR_PROCESSING) {
-          break;
-        }
-        try { Thread.sleep(50); } catch (InterruptedException ignored) {}
-      }
+  // Forwards the first reply and drops the rest, which Flutter would otherwise reject with an exception
+  private static final class SingleReply implements Result {
+    private final Result delegate;
+    private final java.util.concurrent.atomic.AtomicBoolean replied = new java.util.concurrent.atomic.AtomicBoolean();
+
+    SingleReply(Result delegate) {
+      this.delegate = delegate;
     }
-    
-    final List<String> found = new ArrayList<>();
 
-    // 1) Seed with bonded devices
-    for (String entry : getBondedBtPrinters()) {
-      if (!found.contains(entry)) found.add(entry);
+    @Override public void success(Object value) {
+      if (replied.compareAndSet(false, true)) delegate.success(value);
     }
 
-    // 2) Active discovery via Epson SDK (may find additional devices)
-    final FilterOption filter = new FilterOption();
-    filter.setDeviceType(Discovery.TYPE_PRINTER);
-    filter.setPortType(Discovery.PORTTYPE_BLUETOOTH);
-    filter.setEpsonFilter(Discovery.FILTER_NAME);
+    @Override public void error(String code, String message, Object details) {
+      if (replied.compareAndSet(false, true)) delegate.error(code, message, details);
+    }
 
-    final DiscoveryListener listener = new DiscoveryListener() {
-      @Override
-      public void onDiscovery(final DeviceInfo deviceInfo) {
-        synchronized (found) {
-          String target = deviceInfo.getTarget();
-          String name = deviceInfo.getDeviceName();
-          String btAddr = deviceInfo.getBdAddress();
-          String prefixTarget = null;
-
-          if (target != null && target.startsWith("BT:")) {
-            prefixTarget = target;
-          } else if (btAddr != null && !btAddr.isEmpty()) {
-            prefixTarget = "BT:" + btAddr;
-          } else if (target != null && !target.isEmpty()) {
-            prefixTarget = target.startsWith("BT:") ? target : ("BT:" + target);
-          }
-
-          if (prefixTarget == null) return;
-
-          String entry = prefixTarget + ":" + (name != null ? name : "Printer");
-          if (!found.contains(entry)) {
-            found.add(entry);
-          }
-        }
-      }
-    };
-
-    try {
-      Discovery.start(context, filter, listener);
-    } catch (Exception e) {
-      // If discovery fails (permissions, BT off), still return bonded list
-      result.success(new ArrayList<>(found));
-      return;
+    @Override public void notImplemented() {
+      if (replied.compareAndSet(false, true)) delegate.notImplemented();
     }
-
-    new android.os.Handler(android.os.Looper.getMainLooper()).postDelayed(() -> {
-      while (true) {
-        try {
-          Discovery.stop();
-          break;
-        } catch (Epos2Exception e) {
-          if (e.getErrorStatus() != Epos2Exception.ERR_PROCESSING) {
-            break;
-          }
-        }
-      }
-      synchronized (found) {
-        result.success(new ArrayList<>(found));
-      }
-    }, 4000);
   }
 
-  // Return bonded devices formatted as BT:MAC:Name (filter to likely Epson names)
-  private List<String> getBondedBtPrinters() {
-    List<String> result = new ArrayList<>();
-    try {
-      BluetoothAdapter adapter = BluetoothAdapter.getDefaultAdapter();
-      if (adapter == null) return result;
-      Set<BluetoothDevice> bonded = adapter.getBondedDevices();
-      if (bonded == null) return result;
-      for (BluetoothDevice d : bonded) {
-        String name = d.getName();
-        String mac = d.getAddress();
-        if (mac == null || mac.isEmpty()) continue;
-        // Heuristic: Epson names often contain "TM" or "EPSON"
-        if (name == null || name.isEmpty() ||
-            !(name.toUpperCase().contains("TM") || name.toUpperCase().contains("EPSON"))) {
-          // Still include; user may rename device
-        }
-        String entry = "BT:" + mac + ":" + (name != null ? name : "Printer");
-        if (!result.contains(entry)) result.add(entry);
-      }
-    } catch (Throwable t) {
-      // ignore and return what we have
-    }
-    return result;
+  private int cancelConnects(String reason) {
+    List<ConnectAttempt> attempts;
+    synchronized (stateLock) { attempts = new ArrayList<>(pendingConnects); }
+    int n = 0;
+    for (ConnectAttempt a : attempts) if (a.cancel(reason)) n++;
+    return n;
   }
 
+  // Nothing here blocks the main thread: discovery is stopped on the discovery thread, the settle
+  // delay is a timer and the SDK connect runs on connectExec. The result carries the phase times.
   private void connectPrinter(@NonNull MethodCall call, @NonNull Result result) {
-    // CRITICAL: Ensure discovery is stopped before ANY connection attempt
-    // Do this synchronously with retries to guarantee BT stack is clear
-    for (int i = 0; i < 30; i++) {
-      try {
-        Discovery.stop();
-        break; // Success
-      } catch (Epos2Exception e) {
-        if (e.getErrorStatus() != Epos2Exception.ERR_PROCESSING) {
-          break; // Already stopped or other error
-        }
-        // Still processing, wait and retry
-        try {
-          Thread.sleep(100);
-        } catch (InterruptedException ie) {
-          break;
-        }
-      } catch (Exception e) {
-        break; // Unexpected error, continue anyway
-      }
-    }
-    
-    // Additional settling delay for BT stack
-    try {
-      Thread.sleep(500);
-    } catch (InterruptedException e) {
-      // Continue
-    }
-    
+    final ConnectAttempt attempt = new ConnectAttempt(result);
+    synchronized (stateLock) { pendingConnects.add(attempt); }
+    // CRITICAL: Ensure discovery is stopped before ANY connection attempt, and give the BT stack
+    // CONNECT_SETTLE_MS after discovery actually ended (no wait if it ended long ago)
+    discovery.stop(() -> {
+      attempt.phase("discoveryStopMs");
+      discovery.afterSettle(CONNECT_SETTLE_MS, () -> {
+        attempt.phase("settleMs");
+        connectExec.execute(() -> {
+          // Time spent behind an earlier connect/disconnect
+          attempt.phase("queueMs");
+          connectNow(call, attempt);
+        });
+      });
+    });
+  }
+
+  // Connect thread only
+  private void connectNow(@NonNull MethodCall call, @NonNull ConnectAttempt attempt) {
+    if (attempt.cancelled) return;
+    Printer printer = null;
     try {
       @SuppressWarnings("unchecked")
       Map<String, Object> args = (Map<String, Object>) call.arguments;
       if (args == null) {
-        result.error("INVALID_ARGS", "Missing connection settings", null);
+        attempt.fail("INVALID_ARGS", "Missing connection settings", null);
         return;
       }
 
       // Determine target
       String target = (String) args.get("targetString");
-      if (target == null || target.isEmpty()) {
+      boolean fromCache = false;
+      if (Boolean.TRUE.equals(args.get("useCachedTarget"))) {
+        String cached = discoveryCache.lastConnectedTarget();
+        if (cached != null) {
+          target = cached;
+          fromCache = true;
+        } else if (args.get("identifier") == null || String.valueOf(args.get("identifier")).isEmpty()) {
+          attempt.fail("NO_CACHED_TARGET", "No fresh cached printer; run discovery first", null);
+          return;
+        }
+      }
+      if (!fromCache && (target == null || target.isEmpty())) {
         String identifier = (String) args.get("identifier");
         Number portTypeNum = (Number) args.get("portType");
         int portType = portTypeNum != null ? portTypeNum.intValue() : 1; // default tcp
@@ -650,15 +926,24 @@ public class EpsonPrinterAndroidPlugin implements FlutterPlugin, MethodCallHandl
             : (prefix + identifier);
       }
 
+      // Another transport of the same printer that has measured faster and is reachable now
+      if (Boolean.TRUE.equals(args.get("preferFastestTransport"))) {
+        String best = identities.best(target, t -> discoveryCache.isFresh(t) && (!t.startsWith("USB:") || isEpsonUsbAttached()));
+        if (!best.equals(target)) {
+          android.util.Log.d("EpsonPrinter", "Fastest transport for " + target + " is " + best);
+          target = best;
+        }
+      }
+
       // Support TCP, Bluetooth (Classic), and USB
       if (!(target.startsWith("TCP:") || target.startsWith("BT:") || target.startsWith("USB:"))) {
-        result.error("UNSUPPORTED", "Only TCP/BT/USB connection is supported on Android right now", null);
+        attempt.fail("UNSUPPORTED", "Only TCP/BT/USB connection is supported on Android right now", null);
         return;
       }
 
       // If attempting BT while an Epson USB device is attached, return a clear error
       if (target.startsWith("BT:") && isEpsonUsbAttached()) {
-        result.error("USB_ATTACHED", "USB connection detected. Unplug USB to use Bluetooth.", null);
+        attempt.fail("USB_ATTACHED", "USB connection detected. Unplug USB to use Bluetooth.", null);
         return;
       }
 
@@ -672,8 +957,9 @@ public class EpsonPrinterAndroidPlugin implements FlutterPlugin, MethodCallHandl
       }
       if (timeout <= 0) timeout = 15000;
 
-      // Disconnect any existing connection
-      safeDisposePrinter();
+      // Release an existing connection to the same printer; other printers stay connected
+      closePrinter(target);
+      if (attempt.cancelled) return;
 
       // Map series/lang (fallback to TM_M30III + ANK if not provided)
       int seriesIdx = getInt(args.get("printerSeries"), 29);
@@ -681,107 +967,139 @@ public class EpsonPrinterAndroidPlugin implements FlutterPlugin, MethodCallHandl
       int seriesConst = mapSeries(seriesIdx);
       int langConst = mapLang(langIdx);
 
-      mPrinter = new Printer(seriesConst, langConst, context);
+      printer = new Printer(seriesConst, langConst, context);
+      EpsonPrintTracker tracker = new EpsonPrintTracker();
+      printer.setReceiveEventListener(tracker);
 
       // Connect with explicit timeout
-      mPrinter.connect(target, timeout);
+      attempt.phase("prepareMs");
+      long connectStart = SystemClock.elapsedRealtime();
+      printer.connect(target, timeout);
+      long connectMs = SystemClock.elapsedRealtime() - connectStart;
+      attempt.phase("sdkConnectMs");
+      if (attempt.cancelled) {
+        // Cancelled while the SDK was connecting; the caller already has its answer
+        disposeQuietly(printer);
+        return;
+      }
+      discoveryCache.connected(target, connectMs);
+      identities.recordConnect(target, connectMs);
+      EpsonPrinterHandle handle = new EpsonPrinterHandle(target, printer, tracker,
+          getInt(args.get("jobQueueCapacity"), DEFAULT_JOB_QUEUE_CAPACITY), seriesConst, new EpsonConnectionKeeper(connectExec),
+          new EpsonStatusMonitor(printer, target, this::publishStatus));
+      int configuredDots = getInt(args.get("printableWidth"), 0);
+      if (configuredDots > 0) {
+        handle.printableDots = configuredDots;
+        handle.printableSource = "settings";
+      } else {
+        resolvePrintableWidth(handle);
+      }
+      if (!Boolean.FALSE.equals(args.get("autoReconnect"))) {
+        handle.keeper.attach(printer, keepAliveLink(handle, timeout),
+            getInt(args.get("reconnectTimeout"), (int) EpsonConnectionKeeper.DEFAULT_MAX_DOWNTIME_MS));
+      } else {
+        handle.keeper.unmanaged();
+      }
+      // Registering and cancelConnect exclude each other: either the cancel was first and the new
+      // handle is closed here, or the connection is committed and the cancel comes too late
+      boolean registered;
+      synchronized (stateLock) {
+        registered = !attempt.cancelled;
+        if (registered) {
+          attempt.committed = true;
+          printers.put(target, handle);
+          defaultTarget = target;
+        }
+      }
+      if (!registered) {
+        handle.close("Connect cancelled");
+        return;
+      }
+      // Opt-in: polling and fail-fast change behaviour callers may rely on
+      if (Boolean.TRUE.equals(args.get("monitorStatus"))) {
+        handle.monitor.start(getInt(args.get("statusInterval"), EpsonStatusMonitor.DEFAULT_INTERVAL_MS));
+      }
 
       // Mark session USB if applicable
       if (target != null && target.startsWith("USB:")) {
         synchronized (stateLock) { usbWasConnectedThisSession = true; }
       }
 
-      result.success(null);
+      Map<String, Object> out = attempt.timings();
+      out.put("target", target);
+      attempt.succeed(out);
     } catch (Epos2Exception e) {
-      safeDisposePrinter();
+      disposeQuietly(printer);
       String errorMsg = "Connection failed. ";
       if (e.getErrorStatus() == Epos2Exception.ERR_CONNECT) {
         errorMsg += "Make sure your printer isn't connected to any other device via Bluetooth and try again.";
       } else {
         errorMsg += "Epson SDK error: " + e.getMessage();
       }
-      result.error("CONNECT_FAILED", errorMsg, e.getErrorStatus());
+      attempt.fail("CONNECT_FAILED", errorMsg, e.getErrorStatus());
     } catch (Exception ex) {
-      safeDisposePrinter();
-      result.error("CONNECT_FAILED", "Connection failed: " + ex.getMessage(), null);
+      disposeQuietly(printer);
+      attempt.fail("CONNECT_FAILED", "Connection failed: " + ex.getMessage(), null);
     }
   }
 
-  private boolean isEpsonUsbAttached() {
-    try {
-      UsbManager usbManager = (UsbManager) context.getSystemService(Context.USB_SERVICE);
-      if (usbManager == null) return false;
-      Map<String, UsbDevice> devices = usbManager.getDeviceList();
-      if (devices == null || devices.isEmpty()) return false;
-      for (UsbDevice dev : devices.values()) {
-        // Epson Vendor ID
-        if (dev.getVendorId() == 0x04B8) return true;
-        // Or any interface that presents as Printer class
-        int ifaceCount = dev.getInterfaceCount();
-        for (int i = 0; i < ifaceCount; i++) {
-          UsbInterface iface = dev.getInterface(i);
-          if (iface != null && iface.getInterfaceClass() == android.hardware.usb.UsbConstants.USB_CLASS_PRINTER) {
-            return true;
-          }
-        }
+  // Reconnects the same Printer in place; the tracker, job queue and NV state stay as they are
+  private EpsonConnectionKeeper.Link keepAliveLink(final EpsonPrinterHandle handle, final int timeout) {
+    final Printer printer = handle.printer;
+    final String target = handle.target;
+    return new EpsonConnectionKeeper.Link() {
+      @Override public void reconnect() throws Exception {
+        // Same rule as connect: never while discovery runs; the next backoff step tries again
+        if (!discovery.isIdle()) throw new IllegalStateException("Discovery is running");
+        try { printer.stopMonitor(); } catch (Exception ignored) {}
+        try { printer.disconnect(); } catch (Exception ignored) {}
+        long start = SystemClock.elapsedRealtime();
+        printer.connect(target, timeout);
+        long ms = SystemClock.elapsedRealtime() - start;
+        discoveryCache.connected(target, ms);
+        identities.recordConnect(target, ms);
+        handle.monitor.restart();
       }
-    } catch (Throwable ignored) {}
-    return false;
+      @Override public void hold() { handle.queue.hold(); }
+      @Override public void release() { handle.queue.release(); }
+      @Override public void giveUp(String reason) {
+        if (printers.get(target) == handle) closePrinter(target);
+      }
+    };
   }
 
-  private void disconnectPrinter(@NonNull Result result) {
-    try {
-      if (mPrinter != null) {
-        try { mPrinter.disconnect(); } catch (Exception ignored) {}
-        try { mPrinter.clearCommandBuffer(); } catch (Exception ignored) {}
-        try { mPrinter.setReceiveEventListener(null); } catch (Exception ignored) {}
-      }
-      mPrinter = null;
-      
-      // CRITICAL: After disconnecting (especially from USB), synchronously clean up discovery state
-      // Wait for disconnect to fully complete, then aggressively stop discovery
-      try {
-        Thread.sleep(200); // Let disconnect fully complete
-      } catch (InterruptedException ignored) {}
-      
-      android.util.Log.d("EpsonPrinter", "Post-disconnect: starting aggressive discovery cleanup...");
-      for (int i = 0; i < 15; i++) {
-        try {
-          Discovery.stop();
-          android.util.Log.d("EpsonPrinter", "Post-disconnect discovery stop succeeded on attempt " + (i + 1));
-          break;
-        } catch (Epos2Exception e) {
-          if (e.getErrorStatus() != Epos2Exception.ERR_PROCESSING) {
-            android.util.Log.d("EpsonPrinter", "Post-disconnect discovery stop: non-processing error, done");
-            break;
-          }
-          android.util.Log.d("EpsonPrinter", "Post-disconnect discovery still processing, retry " + (i + 1));
-          try { Thread.sleep(100); } catch (InterruptedException ignored) {}
-        }
+  private boolean isEpsonUsbAttached() {
+    return usbDevices != null && usbDevices.isAttached();
+  }
+
+  // With a target only that printer is released; without one every printer is, and a connect still
+  // in progress is cancelled. The SDK disconnects run on connectExec after any running connect.
+  private void disconnectPrinter(@NonNull MethodCall call, @NonNull Result result) {
+    final String target = targetArgument(call);
+    if (target == null) cancelConnects("Cancelled by disconnect");
+    connectExec.execute(() -> {
+      if (target != null) {
+        closePrinter(target);
+      } else {
+        for (String t : new ArrayList<>(printers.keySet())) closePrinter(t);
       }
-      
-      // Additional settling time after USB disconnect specifically
-      try {
-        Thread.sleep(300);
-      } catch (InterruptedException ignored) {}
-      
-      // Enter short suspension window to prevent immediate discovery restarts during USB stack settle
-      suspendShort(800);
 
-      android.util.Log.d("EpsonPrinter", "Post-disconnect cleanup complete");
-      result.success(null);
-    } catch (Exception e) {
-      mPrinter = null;
-      result.success(null);
-    }
+      // CRITICAL: After disconnecting (especially from USB), stop any discovery the SDK may have left
+      // running, then hold off new discoveries while the USB stack settles. The next connect settles
+      // from this point rather than from the last discovery.
+      discovery.markReleased();
+      discovery.stop(() -> {
+        discovery.suspend(800);
+        android.util.Log.d("EpsonPrinter", "Post-disconnect cleanup complete");
+        result.success(null);
+      });
+    });
   }
 
   // Build commands and send print job
   private void printReceipt(@NonNull MethodCall call, @NonNull Result result) {
-    if (mPrinter == null) {
-      result.error("NOT_CONNECTED", "Printer is not connected", null);
-      return;
-    }
+    final EpsonPrinterHandle h = connectedHandle(call, result);
+    if (h == null) return;
 
     @SuppressWarnings("unchecked")
     Map<String, Object> args = (Map<String, Object>) call.arguments;
@@ -797,264 +1115,562 @@ public class EpsonPrinterAndroidPlugin implements FlutterPlugin, MethodCallHandl
       return;
     }
 
-    // Run on a background thread to avoid blocking the platform channel
-    new Thread(() -> {
+    // Malformed commands (wrong value types) are the caller's error; answer before anything is queued
+    final List<ReceiptCommand> compiled;
+    try {
+      compiled = ReceiptCommand.compile(commands);
+    } catch (RuntimeException e) {
+      result.error("INVALID_ARGS", "Invalid print commands: " + e.getMessage(), null);
+      return;
+    }
+
+    // Run on the printer's job worker to avoid blocking the platform channel
+    final long timeoutMs = completionTimeout(args.get("settings"));
+    submitJob(h, "printReceipt", result, job ->
+        sendReceipt(h, job, compiled, newContext(h, null, args.get("settings")), timeoutMs, result));
+  }
+
+  // Compiles a command list once so later prints only send the variables that change
+  private void registerTemplate(@NonNull MethodCall call, @NonNull Result result) {
+    String id = call.argument("id");
+    List<Object> commands = call.argument("commands");
+    if (id == null || id.isEmpty() || commands == null) {
+      result.error("INVALID_ARGS", "Missing template id or commands", null);
+      return;
+    }
+    List<ReceiptCommand> compiled;
+    try {
+      compiled = Collections.unmodifiableList(ReceiptCommand.compile(commands));
+    } catch (Exception e) {
+      result.error("INVALID_ARGS", "Template " + id + " could not be compiled: " + e.getMessage(), null);
+      return;
+    }
+    templates.put(id, compiled);
+    Map<String, Object> info = new HashMap<>();
+    info.put("id", id);
+    info.put("commandCount", compiled.size());
+    info.put("variables", new ArrayList<>(ReceiptCommand.variablesOf(compiled)));
+    result.success(info);
+  }
+
+  private void printTemplate(@NonNull MethodCall call, @NonNull Result result) {
+    final EpsonPrinterHandle h = connectedHandle(call, result);
+    if (h == null) return;
+    String id = call.argument("id");
+    List<ReceiptCommand> compiled = id != null ? templates.get(id) : null;
+    if (compiled == null) {
+      result.error("UNKNOWN_TEMPLATE", "No template registered with id " + id, null);
+      return;
+    }
+    Map<String, Object> variables = call.argument("variables");
+    final long timeoutMs = completionTimeout(call.argument("settings"));
+    final ReceiptCommand.Context ctx = newContext(h, variables, call.argument("settings"));
+    submitJob(h, "printTemplate", result, job ->
+        sendReceipt(h, job, compiled, ctx, timeoutMs, result));
+  }
+
+  /**
+   * Runs on the job worker. Images are prepared first, while the previous job may still be printing;
+   * the buffer is only rebuilt once that job's onPtrReceive arrived. The Dart result completes from
+   * onPtrReceive, not when sendData returns.
+   */
+  private void sendReceipt(EpsonPrinterHandle h, EpsonJobQueue.Job job, List<ReceiptCommand> commands,
+                           ReceiptCommand.Context ctx, long completionTimeoutMs, @NonNull Result result) {
+    final Printer printer = h.printer;
+    final EpsonPrintTracker tracker = h.tracker;
+    final String jobId = tracker.nextJobId();
+    // Outcome for the job record; cleared once transmit() owns the job (it publishes on the callback)
+    String error = "PRINT_FAILED";
+    try {
+      long start = SystemClock.elapsedRealtime();
+      ctx.printableWidth = h.printableDots;
+      if (ctx.optimize) commands = ReceiptOptimizer.optimize(commands, ctx);
+      try {
+        for (ReceiptCommand cmd : commands) {
+          cmd.prepare(ctx);
+        }
+      } catch (RuntimeException ex) {
+        error = "INVALID_ARGS";
+        runOnMain(() -> result.error("INVALID_ARGS", ex.getMessage(), null));
+        return;
+      }
+      long prepareMs = SystemClock.elapsedRealtime() - start;
+
+      // Pipelining: wait for the previous job only now that this one is ready to go
+      long waitStart = SystemClock.elapsedRealtime();
+      tracker.awaitIdle(completionTimeoutMs);
+      long waitForPreviousMs = SystemClock.elapsedRealtime() - waitStart;
+      if (failIfBlocked(h, job, result)) {
+        error = null; // published with the blocking reason
+        return;
+      }
+
+      try {
+        long buildStart = SystemClock.elapsedRealtime();
+        printer.clearCommandBuffer();
+        ReceiptCommand.applyAll(commands, printer, ctx);
+        final Map<String, Object> summary = ctx.summary();
+        summary.put("jobId", jobId);
+        summary.put("queueWaitMs", job.queueWaitMs());
+        summary.put("prepareMs", prepareMs);
+        summary.put("waitForPreviousMs", waitForPreviousMs);
+        summary.put("buildMs", prepareMs + (SystemClock.elapsedRealtime() - buildStart));
+        transmit(h, jobId, job, summary, (code, s) -> {
+          if (code == Epos2CallbackCode.CODE_SUCCESS) ctx.commitNvUploads();
+        }, result);
+        error = null;
+      } catch (Epos2Exception e) {
+        error = mapEposError(e.getErrorStatus());
+        runOnMain(() -> result.error("PRINT_FAILED", "Epson SDK error: " + e.getMessage(), e.getErrorStatus()));
+      } catch (IllegalArgumentException ex) {
+        error = "INVALID_ARGS";
+        try { printer.clearCommandBuffer(); } catch (Exception ignored) {}
+        runOnMain(() -> result.error("INVALID_ARGS", ex.getMessage(), null));
+      } catch (Exception ex) {
+        runOnMain(() -> result.error("PRINT_FAILED", ex.getMessage(), null));
+      }
+    } finally {
+      if (error != null) publishJob(h, job.kind, jobTimings(job), error);
+    }
+  }
+
+  // Called under the summary lock when the printer's callback arrives, before the result is delivered
+  private interface CompletionHook { void onCompleted(int code, Map<String, Object> summary); }
+
+  // Sends the built buffer; the Dart result completes from onPtrReceive with the timing summary
+  private void transmit(EpsonPrinterHandle h, String jobId, EpsonJobQueue.Job job,
+                        final Map<String, Object> summary, CompletionHook hook, @NonNull Result result) throws Epos2Exception {
+    final Printer printer = h.printer;
+    final EpsonPrintTracker tracker = h.tracker;
+    final long[] transferMs = new long[] { -1 };
+    final String target = h.target;
+    tracker.begin(jobId, (code, status, completionMs) -> {
+      synchronized (summary) {
+        long transfer = transferMs[0];
+        if (code == Epos2CallbackCode.CODE_SUCCESS) {
+          identities.recordTransfer(target, getInt(summary.get("bytes"), 0), completionMs);
+        }
+        summary.put("code", code);
+        summary.put("transferMs", transfer);
+        summary.put("printMs", transfer >= 0 ? Math.max(0, completionMs - transfer) : completionMs);
+        summary.put("totalMs", SystemClock.elapsedRealtime() - job.enqueuedAtMs);
+        if (hook != null) hook.onCompleted(code, summary);
+        publishJob(h, job.kind, summary, code == Epos2CallbackCode.CODE_SUCCESS ? null : mapCallbackCode(code));
+      }
+      if (code == Epos2CallbackCode.CODE_SUCCESS) {
+        runOnMain(() -> result.success(summary));
+      } else {
+        runOnMain(() -> result.error("PRINT_FAILED", "Printer reported " + mapCallbackCode(code), summary));
+      }
+    });
+
+    // Send data
+    long sendStart = SystemClock.elapsedRealtime();
+    try {
+      printer.sendData(Printer.PARAM_DEFAULT);
+    } catch (Epos2Exception e) {
+      tracker.cancelBegin(jobId);
+      throw e;
+    }
+    synchronized (summary) { transferMs[0] = SystemClock.elapsedRealtime() - sendStart; }
+  }
+
+  // Many receipts, one buffer, one sendData (customer + merchant copies, shift reprints)
+  private void printBatch(@NonNull MethodCall call, @NonNull Result result) {
+    final EpsonPrinterHandle h = connectedHandle(call, result);
+    if (h == null) return;
+    List<Object> receipts = call.argument("receipts");
+    if (receipts == null || receipts.isEmpty()) {
+      result.error("INVALID_ARGS", "Missing receipts", null);
+      return;
+    }
+    final boolean cutBetween = !Boolean.FALSE.equals(call.argument("cutBetween"));
+    final long timeoutMs = completionTimeout(call.argument("settings"));
+    final ReceiptCommand.Context ctx = newContext(h, null, call.argument("settings"));
+    submitJob(h, "printBatch", result, job ->
+        sendBatch(h, job, receipts, cutBetween, ctx, timeoutMs, result));
+  }
+
+  private void sendBatch(EpsonPrinterHandle h, EpsonJobQueue.Job job, List<Object> receipts, boolean cutBetween,
+                         ReceiptCommand.Context ctx, long completionTimeoutMs, @NonNull Result result) {
+    final Printer printer = h.printer;
+    final EpsonPrintTracker tracker = h.tracker;
+    final String jobId = tracker.nextJobId();
+    final int n = receipts.size();
+    final List<Map<String, Object>> outcomes = new ArrayList<>(n);
+    final List<List<ReceiptCommand>> compiled = new ArrayList<>(n);
+    // Outcome for the job record; cleared once transmit() owns the job (it publishes on the callback)
+    String error = "PRINT_FAILED";
+    try {
+      long start = SystemClock.elapsedRealtime();
+      ctx.printableWidth = h.printableDots;
+
+      // Compile and prepare each receipt on its own so one bad receipt does not sink the batch
+      for (int i = 0; i < n; i++) {
+        Map<String, Object> outcome = new HashMap<>();
+        outcome.put("index", i);
+        outcomes.add(outcome);
+        List<ReceiptCommand> cmds = null;
+        try {
+          Object item = receipts.get(i);
+          Object raw = item instanceof Map ? ((Map<?, ?>) item).get("commands") : item;
+          @SuppressWarnings("unchecked")
+          List<Object> list = (List<Object>) raw;
+          if (list == null) throw new IllegalArgumentException("Missing commands");
+          cmds = ReceiptCommand.compile(list);
+          if (ctx.optimize) cmds = ReceiptOptimizer.optimize(cmds, ctx);
+          for (ReceiptCommand cmd : cmds) cmd.prepare(ctx);
+        } catch (Exception e) {
+          outcome.put("status", "skipped");
+          outcome.put("error", "Could not build receipt: " + e.getMessage());
+          cmds = null;
+        }
+        compiled.add(cmds);
+      }
+      long prepareMs = SystemClock.elapsedRealtime() - start;
+
+      long waitStart = SystemClock.elapsedRealtime();
+      tracker.awaitIdle(completionTimeoutMs);
+      long waitForPreviousMs = SystemClock.elapsedRealtime() - waitStart;
+      if (failIfBlocked(h, job, result)) {
+        error = null; // published with the blocking reason
+        return;
+      }
+
       try {
-        synchronized (EpsonPrinterAndroidPlugin.this) {
-          mPrinter.clearCommandBuffer();
-
-          for (Object item : commands) {
-            if (!(item instanceof Map)) continue;
-            @SuppressWarnings("unchecked")
-            Map<String, Object> cmd = (Map<String, Object>) item;
-            String type = String.valueOf(cmd.get("type"));
-            @SuppressWarnings("unchecked")
-            Map<String, Object> params = (Map<String, Object>) cmd.get("parameters");
-            if (params == null) params = new HashMap<>();
-
-            switch (type) {
-              case "text":
-              case "addText": {
-                String data = (String) params.get("data");
-                String align = (String) params.get("align");
-                
-                // Set alignment if specified
-                if (align != null) {
-                  if (align.equalsIgnoreCase("center")) {
-                    try { mPrinter.addTextAlign(Printer.ALIGN_CENTER); } catch (Exception ignored) {}
-                  } else if (align.equalsIgnoreCase("right")) {
-                    try { mPrinter.addTextAlign(Printer.ALIGN_RIGHT); } catch (Exception ignored) {}
-                  } else {
-                    try { mPrinter.addTextAlign(Printer.ALIGN_LEFT); } catch (Exception ignored) {}
-                  }
-                }
-                
-                if (data != null && !data.isEmpty()) {
-                  mPrinter.addText(data);
-                }
-                break;
-              }
-              case "textStyle": {
-                // Parse parameters with defaults
-                boolean reverse = "true".equals(String.valueOf(params.get("reverse")));
-                boolean underline = "true".equals(String.valueOf(params.get("underline")));
-                boolean bold = "true".equals(String.valueOf(params.get("bold")));
-                
-                // Parse color (default to first color)
-                int color = Printer.COLOR_1;
-                String colorStr = (String) params.get("color");
-                if ("none".equals(colorStr)) {
-                  color = Printer.COLOR_NONE;
-                } else if ("2".equals(colorStr)) {
-                  color = Printer.COLOR_2;
-                } else if ("3".equals(colorStr)) {
-                  color = Printer.COLOR_3;
-                } else if ("4".equals(colorStr)) {
-                  color = Printer.COLOR_4;
-                }
-                
-                try {
-                  mPrinter.addTextStyle(
-                    reverse ? Printer.TRUE : Printer.FALSE,
-                    underline ? Printer.TRUE : Printer.FALSE,
-                    bold ? Printer.TRUE : Printer.FALSE,
-                    color
-                  );
-                } catch (Exception ignored) {}
-                break;
-              }
-              case "image": {
-                // Parameters: imagePath plus optional width & flags
-                String imagePath = (String) params.get("imagePath");
-                boolean debug = false; // debug markers suppressed unless explicitly enabled in params
-                try { Object dbg = params.get("debug"); if (dbg != null) debug = Boolean.parseBoolean(String.valueOf(dbg)); } catch (Exception ignored) {}
-                boolean advancedProcessing = false;
-                try { Object ap = params.get("advancedProcessing"); if (ap != null) advancedProcessing = Boolean.parseBoolean(String.valueOf(ap)); } catch (Exception ignored) {}
-                String align = null; try { Object al = params.get("align"); if (al != null) align = String.valueOf(al); } catch (Exception ignored) {}
-                if (imagePath != null && !imagePath.isEmpty()) {
-                  System.out.println("DEBUG: Attempting to decode image from path: " + imagePath);
-                  Bitmap bmp = BitmapFactory.decodeFile(imagePath);
-                  if (bmp != null) {
-                    System.out.println("DEBUG: Image decoded successfully - width: " + bmp.getWidth() + ", height: " + bmp.getHeight());
-                    int origW = bmp.getWidth();
-                    int origH = bmp.getHeight();
-                    int targetW = getInt(params.get("targetWidth"), origW);
-                    int printerWidth = getInt(params.get("printerWidth"), 0);
-                    if (targetW > 0 && targetW < origW) {
-                      try {
-                        float ratio = (float) targetW / (float) origW;
-                        bmp = Bitmap.createScaledBitmap(bmp, targetW, Math.max(1,(int)(origH*ratio)), true);
-                      } catch (Throwable ignored) {}
-                    }
-                    int width = bmp.getWidth();
-                    int height = bmp.getHeight();
-                    boolean centerRequest = align != null && align.equalsIgnoreCase("center");
-                    if (debug) { try { mPrinter.addText("[IMG_START w="+width+" h="+height+"]\n"); } catch (Exception ignored) {} }
-                    if (centerRequest) { try { mPrinter.addTextAlign(Printer.ALIGN_CENTER); } catch (Exception ignored) {} }
-                    int color = Printer.PARAM_DEFAULT;
-                    int mode = Printer.MODE_MONO;
-                    int halftone = Printer.HALFTONE_DITHER;
-                    double brightness = 1.0;
-                    int compress = Printer.COMPRESS_AUTO;
-                    // Advanced processing: optional threshold + histogram (lightweight)
-                    if (advancedProcessing) {
-                      int bwThreshold = -1; try { Object th = params.get("bwThreshold"); if (th != null) bwThreshold = Integer.parseInt(String.valueOf(th)); } catch (Exception ignored) {}
-                      if (bwThreshold >= 0 && bwThreshold <= 255) {
-                        try {
-                          Bitmap mutable = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
-                          int[] pixels = new int[width*height]; bmp.getPixels(pixels,0,width,0,0,width,height);
-                          int blacks=0; for(int i=0;i<pixels.length;i++){int c=pixels[i];int r=(c>>16)&0xFF,g=(c>>8)&0xFF,b=c&0xFF;int lum=(r*30+g*59+b*11)/100;boolean isB=lum<bwThreshold; if(isB) blacks++; pixels[i]= isB?0xFF000000:0xFFFFFFFF;}
-                          double ratio = (double)blacks/(double)pixels.length; boolean collapsed = ratio>0.98||ratio<0.02; if(!collapsed){mutable.setPixels(pixels,0,width,0,0,width,height); bmp=mutable; if(debug){try{mPrinter.addText("[IMG_THRESH "+String.format("%.2f",ratio)+"]\n");}catch(Exception ignored){}}}
-                        } catch (Throwable ignored) {}
-                      }
-                    }
-                    try {
-                      mPrinter.addImage(bmp, 0, 0, width, height, color, mode, halftone, brightness, compress);
-                    } catch (Epos2Exception eImg) {
-                      if (advancedProcessing) {
-                        // Fallback: scale to 384 then retry once
-                        try {
-                          int fallbackW = Math.min(384,width);
-                          if (fallbackW < width) {
-                            float r = (float)fallbackW/width; Bitmap scaled = Bitmap.createScaledBitmap(bmp, fallbackW, Math.max(1,(int)(height*r)), true);
-                            mPrinter.addImage(scaled,0,0,scaled.getWidth(), scaled.getHeight(), color, mode, halftone, brightness, compress);
-                          }
-                        } catch (Exception ignored) {}
-                      }
-                    }
-                    if (centerRequest) { try { mPrinter.addTextAlign(Printer.ALIGN_LEFT); } catch (Exception ignored) {} }
-                    if (debug) { try { mPrinter.addText("[IMG_END w="+width+" h="+height+"]\n"); } catch (Exception ignored) {} }
-                  } else {
-                    System.out.println("ERROR: Failed to decode image from path: " + imagePath);
-                    // Check if file exists
-                    java.io.File imageFile = new java.io.File(imagePath);
-                    System.out.println("DEBUG: File exists: " + imageFile.exists() + ", canRead: " + imageFile.canRead() + ", size: " + imageFile.length());
-                    if (debug) {
-                      try { mPrinter.addText("[IMG_DECODE_FAILED]\n"); } catch (Exception ignored) {}
-                    }
-                  }
-                }
-                break;
-              }
-              case "feed": {
-                int line = getInt(params.get("line"), getInt(params.get("lines"), 1));
-                if (line < 1) line = 1;
-                mPrinter.addFeedLine(line);
-                break;
-              }
-              case "cut": {
-                String cutType = (String) params.get("cutType");
-                if ("no_feed".equalsIgnoreCase(cutType)) {
-                  mPrinter.addCut(Printer.CUT_NO_FEED);
-                } else if ("reserve".equalsIgnoreCase(cutType)) {
-                  mPrinter.addCut(Printer.CUT_RESERVE);
-                } else if ("full_cut_feed".equalsIgnoreCase(cutType)) {
-                  mPrinter.addCut(Printer.FULL_CUT_FEED);
-                } else if ("full_cut_no_feed".equalsIgnoreCase(cutType)) {
-                  mPrinter.addCut(Printer.FULL_CUT_NO_FEED);
-                } else {
-                  mPrinter.addCut(Printer.CUT_FEED);
-                }
-                break;
-              }
-              case "feedPosition": {
-                String position = (String) params.get("position");
-                if ("peeling".equalsIgnoreCase(position)) {
-                  mPrinter.addFeedPosition(Printer.FEED_PEELING);
-                } else if ("current_tof".equalsIgnoreCase(position)) {
-                  mPrinter.addFeedPosition(Printer.FEED_CURRENT_TOF);
-                } else {
-                  mPrinter.addFeedPosition(Printer.FEED_CUTTING);
-                }
-                break;
-              }
-              case "barcode": {
-                String data = (String) params.get("data");
-                String typeStr = (String) params.get("type");
-                String hriStr = (String) params.get("hri");
-                String fontStr = (String) params.get("font");
-                Object widthObj = params.get("width");
-                Object heightObj = params.get("height");
-                
-                if (data == null || data.isEmpty()) {
-                  break; // Skip if no data
-                }
-                
-                // Map barcode type
-                int barcodeType = Printer.BARCODE_CODE128_AUTO; // Default
-                if ("CODE128_AUTO".equals(typeStr)) {
-                  barcodeType = Printer.BARCODE_CODE128_AUTO;
-                } else if ("CODE128".equals(typeStr)) {
-                  barcodeType = Printer.BARCODE_CODE128;
-                } else if ("UPC_A".equals(typeStr)) {
-                  barcodeType = Printer.BARCODE_UPC_A;
-                } else if ("UPC_E".equals(typeStr)) {
-                  barcodeType = Printer.BARCODE_UPC_E;
-                } else if ("EAN13".equals(typeStr)) {
-                  barcodeType = Printer.BARCODE_EAN13;
-                } else if ("EAN8".equals(typeStr)) {
-                  barcodeType = Printer.BARCODE_EAN8;
-                } else if ("CODE39".equals(typeStr)) {
-                  barcodeType = Printer.BARCODE_CODE39;
-                }
-                
-                // Map HRI position
-                int hri = Printer.HRI_NONE; // Default
-                if ("below".equals(hriStr)) {
-                  hri = Printer.HRI_BELOW;
-                } else if ("above".equals(hriStr)) {
-                  hri = Printer.HRI_ABOVE;
-                } else if ("both".equals(hriStr)) {
-                  hri = Printer.HRI_BOTH;
-                }
-                
-                // Map font
-                int font = Printer.FONT_A; // Default
-                if ("B".equals(fontStr)) {
-                  font = Printer.FONT_B;
-                } else if ("C".equals(fontStr)) {
-                  font = Printer.FONT_C;
-                } else if ("D".equals(fontStr)) {
-                  font = Printer.FONT_D;
-                } else if ("E".equals(fontStr)) {
-                  font = Printer.FONT_E;
-                }
-                
-                // Parse width and height
-                int width = 2; // Default
-                if (widthObj instanceof Number) {
-                  width = ((Number) widthObj).intValue();
-                  if (width < 2 || width > 6) width = 2;
-                }
-                
-                int height = 60; // Default
-                if (heightObj instanceof Number) {
-                  height = ((Number) heightObj).intValue();
-                  if (height < 1 || height > 255) height = 60;
-                }
-                
-                try {
-                  mPrinter.addBarcode(data, barcodeType, hri, font, width, height);
-                } catch (Exception ignored) {}
-                break;
-              }
-              // Additional commands (qrCode/image/pulse/beep/layout) can be added later
-              default:
-                // Ignore unknown commands for now
-                break;
+        long buildStart = SystemClock.elapsedRealtime();
+        // The SDK buffer cannot be rolled back, so a receipt that fails mid-build is excluded and the buffer rebuilt
+        int included;
+        while (true) {
+          printer.clearCommandBuffer();
+          ctx.resetBuild();
+          included = 0;
+          int failedAt = -1;
+          String failure = null;
+          for (int i = 0; i < n && failedAt < 0; i++) {
+            List<ReceiptCommand> cmds = compiled.get(i);
+            if (cmds == null) continue;
+            try {
+              ReceiptCommand.applyAll(cmds, printer, ctx);
+              boolean endsWithCut = !cmds.isEmpty() && cmds.get(cmds.size() - 1) instanceof ReceiptCommand.Cut;
+              if (cutBetween && !endsWithCut) printer.addCut(Printer.CUT_FEED);
+              included++;
+            } catch (Exception e) {
+              failedAt = i;
+              failure = e.getMessage();
             }
           }
-
-          // Send data
-          mPrinter.sendData(Printer.PARAM_DEFAULT);
+          if (failedAt < 0) break;
+          compiled.set(failedAt, null);
+          outcomes.get(failedAt).put("status", "skipped");
+          outcomes.get(failedAt).put("error", "Could not build receipt: " + failure);
+        }
+        for (int i = 0; i < n; i++) {
+          if (compiled.get(i) != null) outcomes.get(i).put("status", "sent");
         }
-        runOnMain(() -> result.success(null));
+        if (included == 0) {
+          printer.clearCommandBuffer();
+          error = "INVALID_ARGS";
+          runOnMain(() -> result.error("INVALID_ARGS", "No receipt in the batch could be built", outcomes));
+          return;
+        }
+
+        final Map<String, Object> summary = ctx.summary();
+        summary.put("jobId", jobId);
+        summary.put("receipts", outcomes);
+        summary.put("receiptCount", included);
+        summary.put("queueWaitMs", job.queueWaitMs());
+        summary.put("prepareMs", prepareMs);
+        summary.put("waitForPreviousMs", waitForPreviousMs);
+        summary.put("buildMs", prepareMs + (SystemClock.elapsedRealtime() - buildStart));
+        transmit(h, jobId, job, summary, (code, s) -> {
+          // One callback covers the whole buffer: on failure we cannot tell which receipts made it onto paper
+          String status = code == Epos2CallbackCode.CODE_SUCCESS ? "printed" : "unconfirmed";
+          if (code == Epos2CallbackCode.CODE_SUCCESS) ctx.commitNvUploads();
+          for (Map<String, Object> o : outcomes) {
+            if (!"sent".equals(o.get("status"))) continue;
+            o.put("status", status);
+            if (code != Epos2CallbackCode.CODE_SUCCESS) o.put("error", mapCallbackCode(code));
+          }
+        }, result);
+        error = null;
       } catch (Epos2Exception e) {
+        error = mapEposError(e.getErrorStatus());
         runOnMain(() -> result.error("PRINT_FAILED", "Epson SDK error: " + e.getMessage(), e.getErrorStatus()));
       } catch (Exception ex) {
         runOnMain(() -> result.error("PRINT_FAILED", ex.getMessage(), null));
       }
-    }).start();
+    } finally {
+      if (error != null) publishJob(h, job.kind, jobTimings(job), error);
+    }
+  }
+
+  // Stores an image in the printer's NV graphics memory; skipped when the registry says the printer
+  // already holds exactly this raster under the key, unless force is set
+  private void uploadNvLogo(@NonNull MethodCall call, @NonNull Result result) {
+    final EpsonPrinterHandle h = connectedHandle(call, result);
+    if (h == null) return;
+    @SuppressWarnings("unchecked")
+    Map<String, Object> params = (Map<String, Object>) call.arguments;
+    String imagePath = call.argument("imagePath");
+    if (params == null || imagePath == null || imagePath.isEmpty()) {
+      result.error("INVALID_ARGS", "Missing key or imagePath", null);
+      return;
+    }
+    final ReceiptCommand.NvLogo upload = ReceiptCommand.NvLogo.parse(params, false);
+    final ReceiptCommand.Context ctx = newContext(h, null, call.argument("settings"));
+    final long timeoutMs = completionTimeout(call.argument("settings"));
+    submitJob(h, "uploadNvLogo", result, job -> {
+      try {
+        upload.prepare(ctx);
+      } catch (RuntimeException ex) {
+        publishJob(h, job.kind, jobTimings(job), "INVALID_ARGS");
+        runOnMain(() -> result.error("INVALID_ARGS", ex.getMessage(), null));
+        return;
+      }
+      if (ctx.nvUploads.isEmpty()) {
+        final Map<String, Object> unchanged = new HashMap<>();
+        unchanged.put("key", upload.key);
+        unchanged.put("uploaded", false);
+        unchanged.put("hash", ctx.nvLogos != null ? ctx.nvLogos.hashOf(ctx.printerTarget, upload.key) : null);
+        runOnMain(() -> result.success(unchanged));
+        return;
+      }
+      sendReceipt(h, job, Collections.singletonList(upload), ctx, timeoutMs, result);
+    });
+  }
+
+  // Drops what the registry believes the printer holds (one key, or all of them) without touching
+  // the printer, so the next nvLogo command with an imagePath uploads again
+  private void forgetNvLogos(@NonNull MethodCall call, @NonNull Result result) {
+    final String key = call.argument("key");
+    if (key != null && !EpsonNvLogoRegistry.isValidKey(key)) {
+      result.error("INVALID_ARGS", "Invalid NV logo key: " + key, null);
+      return;
+    }
+    EpsonPrinterHandle h = handleFor(call);
+    String target = h != null ? h.target : targetArgument(call);
+    if (target == null) {
+      result.error("NOT_CONNECTED", "No printer target given and no printer connected", null);
+      return;
+    }
+    int forgotten;
+    if (key != null) {
+      forgotten = nvLogos.hashOf(target, key) != null ? 1 : 0;
+      nvLogos.forget(target, key);
+    } else {
+      forgotten = nvLogos.forgetAll(target);
+    }
+    result.success(forgotten);
+  }
+
+  private void deleteNvLogo(@NonNull MethodCall call, @NonNull Result result) {
+    final String key = call.argument("key");
+    if (!EpsonNvLogoRegistry.isValidKey(key)) {
+      result.error("INVALID_ARGS", "Invalid NV logo key: " + key, null);
+      return;
+    }
+    final EpsonPrinterHandle h = connectedHandle(call, result);
+    if (h == null) return;
+    final Printer printer = h.printer;
+    final EpsonPrintTracker tracker = h.tracker;
+    final String target = h.target;
+    submitJob(h, "deleteNvLogo", result, job -> {
+      String jobId = tracker.nextJobId();
+      // Outcome for the job record; cleared once transmit() owns the job
+      String error = "PRINT_FAILED";
+      try {
+        tracker.awaitIdle(DEFAULT_COMPLETION_TIMEOUT_MS);
+        printer.clearCommandBuffer();
+        printer.addCommand(new EscPosEncoder(16).nvGraphicsDelete(key).toByteArray());
+        Map<String, Object> summary = new HashMap<>();
+        summary.put("jobId", jobId);
+        summary.put("key", key);
+        transmit(h, jobId, job, summary, (code, s) -> {
+          if (code == Epos2CallbackCode.CODE_SUCCESS) nvLogos.forget(target, key);
+        }, result);
+        error = null;
+      } catch (Epos2Exception e) {
+        error = mapEposError(e.getErrorStatus());
+        runOnMain(() -> result.error("PRINT_FAILED", "Epson SDK error: " + e.getMessage(), e.getErrorStatus()));
+      } finally {
+        if (error != null) publishJob(h, job.kind, jobTimings(job), error);
+      }
+    });
+  }
+
+  // settings.encoder: "sdk" (default) builds with one SDK call per command, "escpos" encodes the
+  // receipt into a single addCommand and falls back to the SDK for anything it cannot encode.
+  // settings.optimize: false sends every alignment/style change as given.
+  // settings.imageBandHeight: rows per band for tall images (0 = whole image in one raster)
+  // settings.nvLogoForce: re-upload every NV logo with an imagePath, whatever the registry says
+  private ReceiptCommand.Context newContext(EpsonPrinterHandle h, Map<String, Object> variables, Object settings) {
+    ReceiptCommand.Context ctx = new ReceiptCommand.Context(variables, imageCache);
+    ctx.nvLogos = nvLogos;
+    ctx.printerTarget = h.target;
+    if (settings instanceof Map) {
+      Map<?, ?> s = (Map<?, ?>) settings;
+      ctx.escPos = "escpos".equals(s.get("encoder"));
+      ctx.optimize = !Boolean.FALSE.equals(s.get("optimize"));
+      ctx.imageBandHeight = getInt(s.get("imageBandHeight"), 0);
+      ctx.nvForce = Boolean.TRUE.equals(s.get("nvLogoForce"));
+    }
+    return ctx;
+  }
+
+  /**
+   * Builds the same commands repeatedly through the SDK and through the ESC/POS encoder, on a
+   * scratch Printer that is never connected, so the two paths can be compared on the device.
+   */
+  private void benchmarkEncoder(@NonNull MethodCall call, @NonNull Result result) {
+    final List<Object> commands = call.argument("commands");
+    if (commands == null) {
+      result.error("INVALID_ARGS", "Missing commands", null);
+      return;
+    }
+    final int iterations = Math.max(1, getInt(call.argument("iterations"), 50));
+    final int series = mapSeries(getInt(call.argument("printerSeries"), -1));
+    final int lang = mapLang(getInt(call.argument("modelLang"), 0));
+    new Thread(() -> {
+      Printer scratch = null;
+      try {
+        final List<ReceiptCommand> compiled = ReceiptCommand.compile(commands);
+        // Decode once up front; both paths then build from the same prepared images
+        ReceiptCommand.Context ctx = new ReceiptCommand.Context(null, imageCache);
+        ctx.printableWidth = EpsonImageDecoder.printableDots(series, 0);
+        for (ReceiptCommand cmd : compiled) cmd.prepare(ctx);
+        scratch = new Printer(series, lang, context);
+
+        long sdkNs = 0;
+        for (int i = 0; i < iterations; i++) {
+          scratch.clearCommandBuffer();
+          long t0 = System.nanoTime();
+          for (ReceiptCommand cmd : compiled) cmd.apply(scratch, ctx);
+          sdkNs += System.nanoTime() - t0;
+        }
+
+        long encodeNs = 0;
+        long escPosBuildNs = 0;
+        int escPosBytes = -1;
+        String unsupported = null;
+        EscPosEncoder out = new EscPosEncoder();
+        try {
+          for (int i = 0; i < iterations; i++) {
+            scratch.clearCommandBuffer();
+            out.reset();
+            long t0 = System.nanoTime();
+            for (ReceiptCommand cmd : compiled) cmd.encode(out, ctx);
+            long t1 = System.nanoTime();
+            scratch.addCommand(out.toByteArray());
+            encodeNs += t1 - t0;
+            escPosBuildNs += System.nanoTime() - t0;
+          }
+          escPosBytes = out.size();
+        } catch (EscPosEncoder.Unsupported u) {
+          unsupported = u.getMessage();
+        }
+        scratch.clearCommandBuffer();
+
+        final Map<String, Object> report = new HashMap<>();
+        report.put("iterations", iterations);
+        report.put("commandCount", compiled.size());
+        report.put("sdkBuildUs", sdkNs / 1000 / iterations);
+        report.put("escposSupported", unsupported == null);
+        if (unsupported == null) {
+          report.put("escposEncodeUs", encodeNs / 1000 / iterations);
+          report.put("escposBuildUs", escPosBuildNs / 1000 / iterations);
+          report.put("escposBytes", escPosBytes);
+        } else {
+          report.put("escposUnsupported", unsupported);
+        }
+        runOnMain(() -> result.success(report));
+      } catch (Epos2Exception e) {
+        runOnMain(() -> result.error("BENCHMARK_FAILED", "Epson SDK error: " + e.getMessage(), e.getErrorStatus()));
+      } catch (Exception e) {
+        runOnMain(() -> result.error("BENCHMARK_FAILED", e.getMessage(), null));
+      } finally {
+        if (scratch != null) {
+          try { scratch.clearCommandBuffer(); } catch (Exception ignored) {}
+        }
+      }
+    }, "EpsonEncoderBenchmark").start();
+  }
+
+  /**
+   * Times thresholding one decoded image with the former single-threaded loop, the packer on one
+   * thread, and the packer on the fork-join pool. Needs no printer.
+   */
+  private void benchmarkImagePacking(@NonNull MethodCall call, @NonNull Result result) {
+    final String imagePath = call.argument("imagePath");
+    if (imagePath == null || imagePath.isEmpty()) {
+      result.error("INVALID_ARGS", "Missing imagePath", null);
+      return;
+    }
+    final int threshold = Math.max(0, Math.min(255, getInt(call.argument("threshold"), 128)));
+    final int iterations = Math.max(1, getInt(call.argument("iterations"), 10));
+    final int targetWidth = getInt(call.argument("targetWidth"), -1);
+    final int printerWidth = getInt(call.argument("printerWidth"), 0);
+    new Thread(() -> {
+      EpsonImageDecoder.Decoded decoded = EpsonImageDecoder.decode(imagePath, targetWidth, printerWidth);
+      if (decoded == null) {
+        runOnMain(() -> result.error("INVALID_ARGS", "Could not decode " + imagePath, null));
+        return;
+      }
+      Bitmap bmp = decoded.bitmap;
+      try {
+        // One untimed round of each so JIT and pool start-up do not count
+        EpsonRasterPacker.legacyThreshold(bmp, threshold);
+        EpsonRasterPacker.Packed reused = EpsonRasterPacker.pack(bmp, threshold, null, true);
+
+        int legacyBlacks = 0;
+        long legacyNs = 0;
+        for (int i = 0; i < iterations; i++) {
+          long t0 = System.nanoTime();
+          legacyBlacks = EpsonRasterPacker.legacyThreshold(bmp, threshold);
+          legacyNs += System.nanoTime() - t0;
+        }
+        long sequentialNs = 0;
+        for (int i = 0; i < iterations; i++) {
+          long t0 = System.nanoTime();
+          reused = EpsonRasterPacker.pack(bmp, threshold, reused, false);
+          sequentialNs += System.nanoTime() - t0;
+        }
+        long parallelNs = 0;
+        for (int i = 0; i < iterations; i++) {
+          long t0 = System.nanoTime();
+          reused = EpsonRasterPacker.pack(bmp, threshold, reused, true);
+          parallelNs += System.nanoTime() - t0;
+        }
+
+        final Map<String, Object> report = new HashMap<>();
+        report.put("width", bmp.getWidth());
+        report.put("height", bmp.getHeight());
+        report.put("iterations", iterations);
+        report.put("parallelism", EpsonRasterPacker.PARALLELISM);
+        report.put("legacyUs", legacyNs / 1000 / iterations);
+        report.put("sequentialPackUs", sequentialNs / 1000 / iterations);
+        report.put("parallelPackUs", parallelNs / 1000 / iterations);
+        report.put("speedup", parallelNs > 0 ? (double) legacyNs / parallelNs : 0.0);
+        report.put("packedBytes", reused.byteCount());
+        // Differs from legacyBlackPixels only for transparent pixels, which the packer prints as paper
+        report.put("blackPixels", reused.blackPixels);
+        report.put("legacyBlackPixels", legacyBlacks);
+        runOnMain(() -> result.success(report));
+      } catch (Throwable t) {
+        runOnMain(() -> result.error("BENCHMARK_FAILED", String.valueOf(t.getMessage()), null));
+      } finally {
+        bmp.recycle();
+      }
+    }, "EpsonPackingBenchmark").start();
+  }
+
+  private long completionTimeout(Object settings) {
+    if (settings instanceof Map) {
+      Object t = ((Map<?, ?>) settings).get("timeout");
+      int ms = getInt(t, 0);
+      if (ms > 0) return ms;
+    }
+    return DEFAULT_COMPLETION_TIMEOUT_MS;
   }
 
   // Pairing helper: prefer active Epson discovery result; fallback to bonded
@@ -1086,29 +1702,8 @@ public class EpsonPrinterAndroidPlugin implements FlutterPlugin, MethodCallHandl
       }
     };
 
-    boolean started = false;
-    try {
-      Discovery.start(context, filter, listener);
-      started = true;
-    } catch (Exception e) {
-      // ignore, will fallback
-    }
-
-    final boolean startedFinal = started;
-    new android.os.Handler(android.os.Looper.getMainLooper()).postDelayed(() -> {
-      if (startedFinal) {
-        while (true) {
-          try {
-            Discovery.stop();
-            break;
-          } catch (Epos2Exception e) {
-            if (e.getErrorStatus() != Epos2Exception.ERR_PROCESSING) {
-              break;
-            }
-          }
-        }
-      }
-
+    // If discovery cannot start, fall back to the bonded list below
+    discovery.run("discoveringPair", filter, listener, 3500, started -> {
       String cleaned = null;
       synchronized (found) {
         if (!found.isEmpty()) {
@@ -1132,161 +1727,233 @@ public class EpsonPrinterAndroidPlugin implements FlutterPlugin, MethodCallHandl
       payload.put("target", cleaned);
       payload.put("resultCode", cleaned != null ? 0 : -1);
       result.success(payload);
-    }, 3500);
+    });
   }
 
   // Discover USB printers using Epson Discovery
   private void discoverUsbPrinters(@NonNull Result result) {
-    // CRITICAL: Force stop any existing discovery before starting new one
-    // This handles USB disconnect and other hardware state changes
-    for (int i = 0; i < 10; i++) {
-      try {
-        Discovery.stop();
-        break;
-      } catch (Epos2Exception e) {
-        if (e.getErrorStatus() != Epos2Exception.ERR_PROCESSING) {
-          break;
-        }
-        try { Thread.sleep(50); } catch (InterruptedException ignored) {}
-      }
-    }
-    
-    final List<String> found = new ArrayList<>();
-
-    final FilterOption filter = new FilterOption();
-    filter.setDeviceType(Discovery.TYPE_PRINTER);
-    filter.setPortType(Discovery.PORTTYPE_USB);
-    filter.setEpsonFilter(Discovery.FILTER_NAME);
-
-    final DiscoveryListener listener = new DiscoveryListener() {
-      @Override
-      public void onDiscovery(final DeviceInfo deviceInfo) {
-        synchronized (found) {
-          String target = deviceInfo.getTarget();
-          String name = deviceInfo.getDeviceName();
-          if (target == null || target.isEmpty()) return;
-          if (!target.startsWith("USB:")) target = "USB:" + target;
-          String entry = target + ":" + (name != null ? name : "USB Printer");
-          if (!found.contains(entry)) found.add(entry);
-        }
-      }
-    };
-
-    try {
-      Discovery.start(context, filter, listener);
-    } catch (Exception e) {
-      result.success(Collections.emptyList());
-      return;
-    }
-
-    new android.os.Handler(android.os.Looper.getMainLooper()).postDelayed(() -> {
-      while (true) {
-        try {
-          Discovery.stop();
-          break;
-        } catch (Epos2Exception e) {
-          if (e.getErrorStatus() != Epos2Exception.ERR_PROCESSING) {
-            break;
-          }
-        }
-      }
-      
-      // CRITICAL: For USB discovery, add delayed cleanup stop to ensure BLE/BT is fully terminated
-      // This prevents thread priority inversion on subsequent discoveries (matches iOS fix)
-      new android.os.Handler(android.os.Looper.getMainLooper()).postDelayed(() -> {
-        android.util.Log.d("EpsonPrinter", "USB discovery: forcing additional stop to clean up internal discovery state...");
-        while (true) {
-          try {
-            Discovery.stop();
-            android.util.Log.d("EpsonPrinter", "USB discovery cleanup stop completed");
-            break;
-          } catch (Epos2Exception e) {
-            if (e.getErrorStatus() != Epos2Exception.ERR_PROCESSING) {
-              break;
-            }
-          }
-        }
-      }, 500);
-      
-      synchronized (found) {
-        result.success(new ArrayList<>(found));
-      }
-    }, 4000);
+    runUsbDiscovery(4000, result::success);
   }
 
-  private void openCashDrawer(@NonNull Result result) {
-    if (mPrinter == null) {
-      result.error("NOT_CONNECTED", "Printer is not connected", null);
-      return;
-    }
+  private void openCashDrawer(@NonNull MethodCall call, @NonNull Result result) {
+    final EpsonPrinterHandle h = connectedHandle(call, result);
+    if (h == null) return;
 
-    new Thread(() -> {
+    final Printer printer = h.printer;
+    final EpsonPrintTracker tracker = h.tracker;
+    final String target = h.target;
+    submitJob(h, "openCashDrawer", result, job -> {
+      // Last kick the SDK itself refused (addPulse/sendData); only then is the next combination tried
       Epos2Exception lastEpson = null;
-      Exception lastEx = null;
+      // Override alone if one is set; else the combination that worked last time first, then the
+      // rest (2-pin/5-pin at 100/200ms via addPulse, then raw ESC p for SDK builds that reject it)
+      EpsonDrawerProfiles.Pulse override = drawerProfiles.override(target);
+      EpsonDrawerProfiles.Pulse learned = override == null ? drawerProfiles.learned(target) : null;
+      int attempts = 0;
       try {
-        synchronized (EpsonPrinterAndroidPlugin.this) {
-          // Try defined combinations: 2-pin/5-pin with 100ms then 200ms using SDK constants
-          int[] drawers = new int[] { Printer.DRAWER_2PIN, Printer.DRAWER_5PIN };
-          int[] pulses = new int[] { Printer.PULSE_100, Printer.PULSE_200 };
-          boolean success = false;
-
-          // First try Epson SDK addPulse
-          for (int d : drawers) {
-            for (int p : pulses) {
-              try {
-                mPrinter.clearCommandBuffer();
-                mPrinter.addPulse(d, p);
-                mPrinter.sendData(Printer.PARAM_DEFAULT);
-                success = true;
-                break;
-              } catch (Epos2Exception ee) {
-                lastEpson = ee;
-              } catch (Exception ex) {
-                lastEx = ex;
-              }
-            }
-            if (success) break;
-          }
-
-          // Fallback: raw ESC/POS command (ESC p m t1 t2) if addPulse failed (some SDK builds validate and reject)
-          if (!success) {
-            // m: 0(pin2),1(pin5); t1/t2 are 2ms units
-            int[] mVals = new int[] { 0, 1 };
-            int[][] timings = new int[][] { {50, 50}, {100, 100} }; // 100ms/200ms
-            for (int m : mVals) {
-              for (int[] tt : timings) {
-                try {
-                  byte[] cmd = new byte[] { 0x1B, 0x70, (byte)m, (byte)tt[0], (byte)tt[1] };
-                  mPrinter.clearCommandBuffer();
-                  mPrinter.addCommand(cmd);
-                  mPrinter.sendData(Printer.PARAM_DEFAULT);
-                  success = true;
-                  break;
-                } catch (Epos2Exception ee) {
-                  lastEpson = ee;
-                } catch (Exception ex) {
-                  lastEx = ex;
-                }
-              }
-              if (success) break;
+        EpsonDrawerProfiles.Pulse opened = null;
+        int code = Epos2CallbackCode.CODE_SUCCESS;
+        for (EpsonDrawerProfiles.Pulse pulse : EpsonDrawerProfiles.plan(override, learned)) {
+          attempts++;
+          tracker.awaitIdle(DEFAULT_COMPLETION_TIMEOUT_MS);
+          printer.clearCommandBuffer();
+          try {
+            if (pulse.raw) {
+              printer.addCommand(pulse.escPos());
+            } else {
+              printer.addPulse(pulse.sdkDrawer(), pulse.sdkPulse());
             }
+            code = sendAndAwait(printer, tracker, DRAWER_TIMEOUT_MS);
+          } catch (Epos2Exception ee) {
+            // A lost link is no reason to try another kick; a timed-out send may have fired this one
+            int status = ee.getErrorStatus();
+            if (status == Epos2Exception.ERR_CONNECT || status == Epos2Exception.ERR_DISCONNECT
+                || status == Epos2Exception.ERR_TIMEOUT) throw ee;
+            lastEpson = ee;
+            continue;
           }
+          // Any answer ends the walk: a state error (cover open, paper out, offline) fails every kick,
+          // and after a timeout the drawer may already have opened
+          if (code == Epos2CallbackCode.CODE_SUCCESS) opened = pulse;
+          break;
+        }
 
-          if (!success) {
-            if (lastEpson != null) throw lastEpson;
-            if (lastEx != null) throw lastEx;
-            throw new RuntimeException("Unknown drawer failure");
+        if (opened == null) {
+          if (code != Epos2CallbackCode.CODE_SUCCESS) {
+            // Says nothing about the kick, so the learned combination is kept
+            final String reported = mapCallbackCode(code);
+            final Map<String, Object> failed = jobTimings(job);
+            failed.put("attempts", attempts);
+            failed.put("code", code);
+            publishJob(h, job.kind, failed, reported);
+            runOnMain(() -> result.error("DRAWER_FAILED", "Printer reported " + reported, failed));
+            return;
           }
+          // The SDK refused every kick, the learned one included; walk the full list next time
+          if (learned != null) drawerProfiles.forgetLearned(target);
+          if (lastEpson != null) throw lastEpson;
+          throw new RuntimeException("Unknown drawer failure");
         }
-        runOnMain(() -> result.success(null));
+        if (override == null) drawerProfiles.learn(target, opened);
+        final Map<String, Object> out = jobTimings(job);
+        out.putAll(opened.toMap());
+        out.put("attempts", attempts);
+        out.put("source", override != null ? "override" : opened.equals(learned) ? "learned" : "default");
+        publishJob(h, job.kind, out, null);
+        runOnMain(() -> result.success(out));
       } catch (Epos2Exception e) {
         int code = e.getErrorStatus();
         String friendly = mapEposError(code);
+        Map<String, Object> failed = jobTimings(job);
+        failed.put("attempts", attempts);
+        publishJob(h, job.kind, failed, friendly);
         runOnMain(() -> result.error("DRAWER_FAILED", "Epson SDK error (" + friendly + "): " + e.getMessage(), code));
       } catch (Exception ex) {
+        Map<String, Object> failed = jobTimings(job);
+        failed.put("attempts", attempts);
+        publishJob(h, job.kind, failed, "DRAWER_FAILED");
         runOnMain(() -> result.error("DRAWER_FAILED", ex.getMessage(), null));
       }
-    }).start();
+    });
+  }
+
+  // Pins a printer's drawer kick; without pin/pulseMs the override is removed and learning resumes
+  private void setDrawerOverride(@NonNull MethodCall call, @NonNull Result result) {
+    String target = targetArgument(call);
+    if (target == null) target = defaultTarget;
+    if (target == null) {
+      result.error("INVALID_ARGS", "No target given and no printer connected", null);
+      return;
+    }
+    Object pin = call.argument("pin");
+    Object pulseMs = call.argument("pulseMs");
+    EpsonDrawerProfiles.Pulse pulse = null;
+    if (pin != null || pulseMs != null) {
+      try {
+        pulse = EpsonDrawerProfiles.Pulse.of(Boolean.TRUE.equals(call.argument("rawEscPos")),
+            getInt(pin, 2), getInt(pulseMs, 100));
+      } catch (IllegalArgumentException ex) {
+        result.error("INVALID_ARGS", ex.getMessage(), null);
+        return;
+      }
+    }
+    drawerProfiles.setOverride(target, pulse);
+    result.success(drawerProfiles.list().get(target));
+  }
+
+  // Sends the buffer and blocks until its onPtrReceive, so the next job never clears a buffer still in
+  // transit; returns the callback code (CODE_TRACKER_TIMEOUT when none arrived in time)
+  private int sendAndAwait(Printer printer, EpsonPrintTracker tracker, long timeoutMs) throws Epos2Exception {
+    String jobId = tracker.nextJobId();
+    final int[] code = new int[] { EpsonPrintTracker.CODE_TRACKER_ABORTED };
+    final java.util.concurrent.CountDownLatch done = new java.util.concurrent.CountDownLatch(1);
+    tracker.begin(jobId, (c, status, printMs) -> {
+      code[0] = c;
+      done.countDown();
+    });
+    try {
+      printer.sendData(Printer.PARAM_DEFAULT);
+    } catch (Epos2Exception e) {
+      tracker.cancelBegin(jobId);
+      throw e;
+    }
+    // On timeout awaitIdle completes the send itself, so the latch always opens
+    tracker.awaitIdle(timeoutMs);
+    try {
+      done.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    return code[0];
+  }
+
+  // Fails a print job at once when the status monitor knows the printer cannot print (cover open,
+  // paper out, offline) instead of sending it and waiting out the completion timeout
+  private boolean failIfBlocked(EpsonPrinterHandle h, EpsonJobQueue.Job job, @NonNull Result result) {
+    final String reason = h.monitor.recheckBlockedBy();
+    if (reason == null) return false;
+    publishJob(h, job.kind, jobTimings(job), reason);
+    final Map<String, Object> details = new HashMap<>();
+    details.put("code", reason);
+    details.put("status", h.monitor.snapshot());
+    runOnMain(() -> result.error("PRINTER_NOT_READY", EpsonStatusMonitor.describe(reason), details));
+    return true;
+  }
+
+  private Map<String, Object> statusOf(EpsonPrinterHandle h) {
+    Map<String, Object> status = h.monitor.snapshot();
+    String link = h.keeper.state();
+    status.put("target", h.target);
+    if ("reconnecting".equals(link)) {
+      status.put("isOnline", false);
+      status.put("status", "reconnecting");
+    } else {
+      status.put("status", status.get("blockedBy") != null ? "offline" : "connected");
+    }
+    return status;
+  }
+
+  private static Map<String, Object> disconnectedStatus() {
+    Map<String, Object> status = new HashMap<>();
+    status.put("isOnline", false);
+    status.put("status", "disconnected");
+    status.put("monitored", false);
+    return status;
+  }
+
+  // Status monitor callback (SDK thread): pushes the change with the printer's full status
+  private void publishStatus(String target, String event, Map<String, Object> status) {
+    if (statusEventSink == null) return;
+    EpsonPrinterHandle h = printers.get(target);
+    final Map<String, Object> out = h != null ? statusOf(h) : disconnectedStatus();
+    out.put("target", target);
+    out.put("event", event);
+    runOnMain(() -> {
+      EventChannel.EventSink sink = statusEventSink;
+      if (sink != null) sink.success(out);
+    });
+  }
+
+  // Feeds a finished job into the rolling metrics and pushes its record to any jobEvents listener
+  private void publishJob(EpsonPrinterHandle h, String kind, Map<String, Object> summary, String error) {
+    final Map<String, Object> event = metrics.record(kind, summary, error);
+    event.put("target", h.target);
+    // The link dropped under the job: hold the queue and reconnect in the background
+    if ("ERR_DISCONNECT".equals(error)) h.keeper.linkLost(error);
+    if (jobEventSink == null) return;
+    runOnMain(() -> {
+      EventChannel.EventSink sink = jobEventSink;
+      if (sink != null) sink.success(event);
+    });
+  }
+
+  // Queue wait and total time for jobs that never reach transmit (build failures, drawer kicks)
+  private Map<String, Object> jobTimings(EpsonJobQueue.Job job) {
+    Map<String, Object> m = new HashMap<>();
+    m.put("queueWaitMs", job.queueWaitMs());
+    m.put("totalMs", SystemClock.elapsedRealtime() - job.enqueuedAtMs);
+    return m;
+  }
+
+  private String mapCallbackCode(int code) {
+    switch (code) {
+      case Epos2CallbackCode.CODE_SUCCESS: return "SUCCESS";
+      case Epos2CallbackCode.CODE_ERR_TIMEOUT: return "ERR_TIMEOUT";
+      case Epos2CallbackCode.CODE_ERR_NOT_FOUND: return "ERR_NOT_FOUND";
+      case Epos2CallbackCode.CODE_ERR_AUTORECOVER: return "ERR_AUTORECOVER";
+      case Epos2CallbackCode.CODE_ERR_COVER_OPEN: return "ERR_COVER_OPEN";
+      case Epos2CallbackCode.CODE_ERR_CUTTER: return "ERR_CUTTER";
+      case Epos2CallbackCode.CODE_ERR_MECHANICAL: return "ERR_MECHANICAL";
+      case Epos2CallbackCode.CODE_ERR_EMPTY: return "ERR_EMPTY";
+      case Epos2CallbackCode.CODE_ERR_UNRECOVERABLE: return "ERR_UNRECOVERABLE";
+      case Epos2CallbackCode.CODE_ERR_SYSTEM: return "ERR_SYSTEM";
+      case Epos2CallbackCode.CODE_ERR_PORT: return "ERR_PORT";
+      case Epos2CallbackCode.CODE_ERR_DISCONNECT: return "ERR_DISCONNECT";
+      case Epos2CallbackCode.CODE_ERR_FAILURE: return "ERR_FAILURE";
+      case EpsonPrintTracker.CODE_TRACKER_TIMEOUT: return "NO_RESPONSE";
+      case EpsonPrintTracker.CODE_TRACKER_ABORTED: return "DISCONNECTED";
+      default: return "CODE_" + code;
+    }
   }
 
   private String mapEposError(int code) {
@@ -1306,15 +1973,63 @@ public class EpsonPrinterAndroidPlugin implements FlutterPlugin, MethodCallHandl
     }
   }
 
-  private void safeDisposePrinter() {
-    if (mPrinter != null) {
-      try { mPrinter.disconnect(); } catch (Exception ignored) {}
-      try { mPrinter.clearCommandBuffer(); } catch (Exception ignored) {}
-      try { mPrinter.setReceiveEventListener(null); } catch (Exception ignored) {}
-      mPrinter = null;
+  // Hands a job to the connected printer's worker; replies QUEUE_FULL instead of blocking when saturated
+  private interface JobBody { void run(EpsonJobQueue.Job job); }
+
+  private void submitJob(EpsonPrinterHandle h, String kind, @NonNull Result result, @NonNull JobBody body) {
+    EpsonJobQueue queue = h.queue;
+    boolean accepted = queue.offer(new EpsonJobQueue.Job(kind) {
+      @Override void run() { body.run(this); }
+      @Override void cancel(String reason) {
+        runOnMain(() -> result.error("NOT_CONNECTED", reason, null));
+      }
+      @Override void crashed(Throwable t) {
+        String code = "openCashDrawer".equals(kind) ? "DRAWER_FAILED" : "PRINT_FAILED";
+        runOnMain(() -> result.error(code, kind + " failed: " + t, null));
+      }
+    });
+    if (!accepted) {
+      result.error("QUEUE_FULL", "Print queue is full (" + queue.capacity() + " jobs pending)", queue.snapshot());
     }
   }
 
+  // "target" argument of a call, or null when it names none
+  private static String targetArgument(MethodCall call) {
+    Object t = call.arguments instanceof Map ? ((Map<?, ?>) call.arguments).get("target") : null;
+    return t instanceof String && !((String) t).isEmpty() ? (String) t : null;
+  }
+
+  // The printer a call addresses: its target argument, else the one connected last
+  private EpsonPrinterHandle handleFor(MethodCall call) {
+    String target = targetArgument(call);
+    if (target == null) target = defaultTarget;
+    return target != null ? printers.get(target) : null;
+  }
+
+  private EpsonPrinterHandle connectedHandle(MethodCall call, @NonNull Result result) {
+    EpsonPrinterHandle h = handleFor(call);
+    if (h == null) {
+      String target = targetArgument(call);
+      result.error("NOT_CONNECTED", target != null ? "Printer " + target + " is not connected" : "Printer is not connected", null);
+    }
+    return h;
+  }
+
+  // Connect thread. Jobs still queued for the printer fail with NOT_CONNECTED.
+  private void closePrinter(String target) {
+    EpsonPrinterHandle h = printers.remove(target);
+    if (h == null) return;
+    if (target.equals(defaultTarget)) {
+      Iterator<String> rest = printers.keySet().iterator();
+      defaultTarget = rest.hasNext() ? rest.next() : null;
+    }
+    h.close("Printer disconnected before the job ran");
+  }
+
+  private static void disposeQuietly(Printer printer) {
+    EpsonPrinterHandle.disposeQuietly(printer);
+  }
+
   private int getInt(Object obj, int def) {
     if (obj instanceof Number) return ((Number) obj).intValue();
     try { return Integer.parseInt(String.valueOf(obj)); } catch (Exception ignored) {}
@@ -1354,49 +2069,84 @@ public class EpsonPrinterAndroidPlugin implements FlutterPlugin, MethodCallHandl
     }
   }
 
-  private void detectPaperWidth(@NonNull Result result) {
-    if (mPrinter == null) {
+  private void detectPaperWidth(@NonNull MethodCall call, @NonNull Result result) {
+    final EpsonPrinterHandle h = handleFor(call);
+    if (h == null) {
       result.error("NOT_CONNECTED", "Printer not connected", null);
       return;
     }
 
-    // Create a listener for getPrinterSetting callback
-    PrinterSettingListener settingListener = new PrinterSettingListener() {
-      @Override
-      public void onGetPrinterSetting(int code, int type, int value) {
-        Handler mainHandler = new Handler(Looper.getMainLooper());
-        mainHandler.post(() -> {
+    // Queued like any other job: the query must not overlap a send, and the worker waits for the
+    // callback so the next job does not start under it
+    submitJob(h, "detectPaperWidth", result, job -> {
+      h.tracker.awaitIdle(DEFAULT_COMPLETION_TIMEOUT_MS);
+      final java.util.concurrent.CountDownLatch done = new java.util.concurrent.CountDownLatch(1);
+      PrinterSettingListener settingListener = new PrinterSettingListener() {
+        @Override
+        public void onGetPrinterSetting(int code, int type, int value) {
           // Log the actual values for debugging
           android.util.Log.d("EpsonPrinter", "getPrinterSetting result - code: " + code + ", type: " + type + ", value: " + value);
-          
+
           // Use 0 as success code (common pattern in SDK)
           if (code == 0) {
+            h.rememberPaperWidth(value);
             String paperWidth = mapPaperWidthValue(value);
             android.util.Log.d("EpsonPrinter", "Mapped paper width: " + paperWidth + " (from value: " + value + ")");
-            result.success(paperWidth);
+            runOnMain(() -> result.success(paperWidth));
           } else {
             // Return error with actual codes for debugging
-            result.error("DETECTION_FAILED", "getPrinterSetting failed - code: " + code + ", type: " + type + ", value: " + value, null);
+            runOnMain(() -> result.error("DETECTION_FAILED", "getPrinterSetting failed - code: " + code + ", type: " + type + ", value: " + value, null));
           }
-        });
+          done.countDown();
+        }
+
+        @Override
+        public void onSetPrinterSetting(int code) {
+          // Not used for getPrinterSetting
+        }
+      };
+
+      try {
+        // Setting type 0 is the paper width on the TM models tested so far
+        h.printer.getPrinterSetting(Printer.PARAM_DEFAULT, 0, settingListener);
+        if (!done.await(DEFAULT_COMPLETION_TIMEOUT_MS, java.util.concurrent.TimeUnit.MILLISECONDS)) {
+          runOnMain(() -> result.error("DETECTION_FAILED", "getPrinterSetting did not answer", null));
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        runOnMain(() -> result.error("DETECTION_FAILED", "Interrupted waiting for getPrinterSetting", null));
+      } catch (Exception e) {
+        runOnMain(() -> result.error("DETECTION_FAILED", "getPrinterSetting exception: " + e.getMessage(), null));
       }
+    });
+  }
 
-      @Override
-      public void onSetPrinterSetting(int code) {
-        // Not used for getPrinterSetting
+  /**
+   * Runs as the connection's first job so every image job behind it sees the resolved width. Keeps
+   * the series default if the printer does not answer.
+   */
+  private void resolvePrintableWidth(final EpsonPrinterHandle h) {
+    final Printer printer = h.printer;
+    h.queue.offer(new EpsonJobQueue.Job("resolvePrintableWidth") {
+      @Override void run() {
+        final java.util.concurrent.CountDownLatch done = new java.util.concurrent.CountDownLatch(1);
+        try {
+          printer.getPrinterSetting(Printer.PARAM_DEFAULT, 0, new PrinterSettingListener() {
+            @Override public void onGetPrinterSetting(int code, int type, int value) {
+              if (code == 0) h.rememberPaperWidth(value);
+              done.countDown();
+            }
+
+            @Override public void onSetPrinterSetting(int code) {}
+          });
+          done.await(5, java.util.concurrent.TimeUnit.SECONDS);
+        } catch (Exception e) {
+          android.util.Log.d("EpsonPrinter", "Paper width query failed, using " + h.printableDots + " dots: " + e.getMessage());
+        }
       }
-    };
 
-    try {
-      // Based on the API doc pattern and existing code, try likely constant values
-      // From the docs: "Printer.Setting.PaperWidth" but actual SDK likely uses different naming
-      // Let's try a few common patterns for the paper width setting type constant
-      
-      // Pattern 1: Try simple numbering (0, 1, 2...)
-      mPrinter.getPrinterSetting(Printer.PARAM_DEFAULT, 0, settingListener);
-    } catch (Exception e) {
-      result.error("DETECTION_FAILED", "getPrinterSetting exception: " + e.getMessage(), null);
-    }
+      @Override void cancel(String reason) {}
+    });
   }
 
   private String mapPaperWidthValue(int value) {
@@ -1423,6 +2173,37 @@ public class EpsonPrinterAndroidPlugin implements FlutterPlugin, MethodCallHandl
   public void onDetachedFromEngine(@NonNull FlutterPluginBinding binding) {
     channel.setMethodCallHandler(null);
     channel = null;
+    if (jobEventChannel != null) {
+      jobEventChannel.setStreamHandler(null);
+      jobEventChannel = null;
+    }
+    jobEventSink = null;
+    if (discoveryEventChannel != null) {
+      discoveryEventChannel.setStreamHandler(null);
+      discoveryEventChannel = null;
+    }
+    discoveryEventSink = null;
+    if (statusEventChannel != null) {
+      statusEventChannel.setStreamHandler(null);
+      statusEventChannel = null;
+    }
+    statusEventSink = null;
+    if (usbDevices != null) usbDevices.stop();
+    if (discovery != null) discovery.shutdown();
+    // Release every printer; close() waits for a running job, so it runs on the connect thread
+    final List<EpsonPrinterHandle> open = new ArrayList<>(printers.values());
+    printers.clear();
+    defaultTarget = null;
+    if (connectExec != null) {
+      // Let a running connect/disconnect finish; queued ones are dropped with their callers
+      cancelConnects("Plugin detached");
+      connectExec.execute(() -> {
+        for (EpsonPrinterHandle h : open) h.close("Plugin detached");
+      });
+      connectExec.shutdown();
+    } else {
+      for (EpsonPrinterHandle h : open) h.close("Plugin detached");
+    }
   }
 
   // ActivityAware implementations
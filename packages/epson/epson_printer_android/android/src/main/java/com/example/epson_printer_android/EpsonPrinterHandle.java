@@ -0,0 +1,89 @@
+package com.example.epson_printer_android;
+
+import android.os.SystemClock;
+
+import com.epson.epos2.printer.Printer;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * One connected printer: the SDK object with its receive tracker, job queue, keep-alive and status
+ * monitor, plus what was learned about it (printable width).
+ *
+ * The plugin keeps one handle per target, so a kitchen and a counter printer can be connected at
+ * the same time; each handle's queue has its own worker, so their jobs run in parallel.
+ */
+final class EpsonPrinterHandle {
+
+  // How long close() lets a running job wind down before disconnecting anyway
+  private static final long CLOSE_WAIT_MS = 5000;
+
+  final String target;
+  final Printer printer;
+  final EpsonPrintTracker tracker;
+  final EpsonJobQueue queue;
+  final EpsonConnectionKeeper keeper;
+  final EpsonStatusMonitor monitor;
+  final int series;
+  // Printable width, resolved once per connection; images are decoded to it
+  volatile int printableDots;
+  volatile String printableSource = "default"; // default | printer | settings
+
+  EpsonPrinterHandle(String target, Printer printer, EpsonPrintTracker tracker, int queueCapacity, int series,
+                     EpsonConnectionKeeper keeper, EpsonStatusMonitor monitor) {
+    this.target = target;
+    this.printer = printer;
+    this.tracker = tracker;
+    this.queue = new EpsonJobQueue(target, queueCapacity);
+    this.series = series;
+    this.keeper = keeper;
+    this.monitor = monitor;
+    this.printableDots = EpsonImageDecoder.printableDots(series, 0);
+  }
+
+  /** Applies a getPrinterSetting paper width answer (2 = 58 mm, 6 = 80 mm) unless settings fixed the width. */
+  void rememberPaperWidth(int settingValue) {
+    if ("settings".equals(printableSource)) return;
+    int paperMm = settingValue == 2 ? 58 : settingValue == 6 ? 80 : 0;
+    if (paperMm == 0) return;
+    printableDots = EpsonImageDecoder.printableDots(series, paperMm);
+    printableSource = "printer";
+    android.util.Log.d("EpsonPrinter", "Printable width of " + target + ": " + printableDots + " dots (" + paperMm + "mm paper)");
+  }
+
+  Map<String, Object> describe() {
+    Map<String, Object> m = new HashMap<>();
+    m.put("target", target);
+    m.put("link", keeper.state());
+    m.put("printableWidth", printableDots);
+    m.put("queueDepth", queue.depth());
+    m.put("inFlightJobId", tracker.inFlightJobId());
+    m.put("blockedBy", monitor.blockedBy());
+    return m;
+  }
+
+  /**
+   * Stops the keep-alive, fails jobs still queued with {@code reason}, waits for the running job to
+   * return and only then stops the monitor and releases the connection, so the worker is never in
+   * sendData on a disconnected printer. Blocks for up to {@link #CLOSE_WAIT_MS}; not for the main thread.
+   */
+  void close(String reason) {
+    keeper.detach(printer);
+    queue.shutdown(reason);
+    // Aborting wakes a worker waiting on a callback; repeated in case it sends once more before returning
+    long deadline = SystemClock.elapsedRealtime() + CLOSE_WAIT_MS;
+    do {
+      tracker.abort();
+    } while (!queue.awaitIdle(50) && SystemClock.elapsedRealtime() < deadline);
+    monitor.stop();
+    disposeQuietly(printer);
+  }
+
+  static void disposeQuietly(Printer printer) {
+    if (printer == null) return;
+    try { printer.disconnect(); } catch (Exception ignored) {}
+    try { printer.clearCommandBuffer(); } catch (Exception ignored) {}
+    try { printer.setReceiveEventListener(null); } catch (Exception ignored) {}
+  }
+}
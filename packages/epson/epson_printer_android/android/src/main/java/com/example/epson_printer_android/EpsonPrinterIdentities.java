@@ -0,0 +1,219 @@
+package com.example.epson_printer_android;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Groups discovery targets that belong to the same physical printer and ranks its transports.
+ *
+ * Every target carries the identifiers its transport exposes: MAC and IP for TCP, the BD address
+ * for Bluetooth, the serial number for USB (and for LAN printers identified by the subnet probe).
+ * Targets sharing any identifier are one printer. Each target also keeps a moving average of
+ * connect latency and of send throughput (bytes per second of transfer time) from real jobs, and
+ * {@link #best} picks the fastest available transport of a printer from those.
+ *
+ * Persisted so rankings survive restarts; values are tab-separated like the discovery cache.
+ */
+final class EpsonPrinterIdentities {
+
+  /** Whether a target can be connected to right now (e.g. fresh in the discovery cache). */
+  interface Availability { boolean isAvailable(String target); }
+
+  private static final String PREFS = "epson_printer_identities";
+  // Weight of a new sample in the moving averages
+  private static final double ALPHA = 0.3;
+
+  private static final class Transport {
+    final String target;
+    String name = "";
+    String mac = "";
+    String ip = "";
+    String serial = "";
+    double connectMs = -1;
+    double bytesPerSec = -1;
+    int jobs;
+
+    Transport(String target) {
+      this.target = target;
+    }
+
+    List<String> keys() {
+      List<String> k = new ArrayList<>(3);
+      if (!mac.isEmpty()) k.add("mac:" + mac);
+      if (!ip.isEmpty()) k.add("ip:" + ip);
+      if (!serial.isEmpty()) k.add("sn:" + serial);
+      return k;
+    }
+
+    String format() {
+      return name.replace('\t', ' ') + '\t' + mac + '\t' + ip + '\t' + serial.replace('\t', ' ') + '\t'
+          + Math.round(connectMs) + '\t' + Math.round(bytesPerSec) + '\t' + jobs;
+    }
+
+    static Transport parse(String target, String v) {
+      Transport t = new Transport(target);
+      String[] f = v.split("\t", -1);
+      if (f.length < 7) return t;
+      t.name = f[0];
+      t.mac = f[1];
+      t.ip = f[2];
+      t.serial = f[3];
+      try { t.connectMs = Long.parseLong(f[4]); } catch (NumberFormatException ignored) {}
+      try { t.bytesPerSec = Long.parseLong(f[5]); } catch (NumberFormatException ignored) {}
+      t.jobs = ReceiptCommand.getInt(f[6], 0);
+      return t;
+    }
+  }
+
+  // Measured throughput first, then connect latency, then USB > TCP > BT
+  private static final Comparator<Transport> FASTEST = (a, b) -> {
+    if ((a.bytesPerSec > 0) != (b.bytesPerSec > 0)) return a.bytesPerSec > 0 ? -1 : 1;
+    if (a.bytesPerSec > 0 && a.bytesPerSec != b.bytesPerSec) return a.bytesPerSec > b.bytesPerSec ? -1 : 1;
+    if ((a.connectMs >= 0) != (b.connectMs >= 0)) return a.connectMs >= 0 ? -1 : 1;
+    if (a.connectMs >= 0 && a.connectMs != b.connectMs) return a.connectMs < b.connectMs ? -1 : 1;
+    return Integer.compare(transportRank(a.target), transportRank(b.target));
+  };
+
+  private final SharedPreferences prefs;
+  private final Map<String, Transport> byTarget = new LinkedHashMap<>();
+
+  EpsonPrinterIdentities(Context context) {
+    prefs = context.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+    for (Map.Entry<String, ?> e : prefs.getAll().entrySet()) {
+      if (e.getValue() instanceof String) byTarget.put(e.getKey(), Transport.parse(e.getKey(), (String) e.getValue()));
+    }
+  }
+
+  private static int transportRank(String target) {
+    if (target.startsWith("USB:")) return 0;
+    if (target.startsWith("TCP")) return 1;
+    return 2;
+  }
+
+  private static String clean(String s) {
+    return s == null ? "" : s.trim().toUpperCase();
+  }
+
+  private Transport get(String target) {
+    Transport t = byTarget.get(target);
+    if (t == null) {
+      t = new Transport(target);
+      byTarget.put(target, t);
+    }
+    return t;
+  }
+
+  private void save(Transport t) {
+    prefs.edit().putString(t.target, t.format()).apply();
+  }
+
+  /**
+   * Records a discovery hit. {@code entry} is "PORT:address:name"; {@code mac}, {@code ip} and
+   * {@code serial} may be null.
+   */
+  synchronized void seen(String entry, String mac, String ip, String serial) {
+    String target = EpsonDiscoveryCache.targetOf(entry);
+    if (target.equals(entry)) return;
+    Transport t = get(target);
+    t.name = entry.substring(target.length() + 1);
+    // The address part of the target is an identifier too (TCP:<ip>, TCP:<mac>, BT:<bd address>)
+    String addr = target.substring(target.indexOf(':') + 1);
+    if (clean(mac).isEmpty() && addr.matches("(?i)([0-9a-f]{2}[:-]){5}[0-9a-f]{2}")) mac = addr.replace('-', ':');
+    if (clean(ip).isEmpty() && addr.matches("\\d+\\.\\d+\\.\\d+\\.\\d+")) ip = addr;
+    if (!clean(mac).isEmpty()) t.mac = clean(mac);
+    if (!clean(ip).isEmpty()) t.ip = clean(ip);
+    if (!clean(serial).isEmpty()) t.serial = clean(serial);
+    save(t);
+  }
+
+  synchronized void recordConnect(String target, long ms) {
+    Transport t = get(target);
+    t.connectMs = t.connectMs < 0 ? ms : (1 - ALPHA) * t.connectMs + ALPHA * ms;
+    save(t);
+  }
+
+  /** A finished job: {@code bytes} delivered in {@code transferMs} (sendData until the printer answered). */
+  synchronized void recordTransfer(String target, long bytes, long transferMs) {
+    if (target == null || bytes <= 0 || transferMs <= 0) return;
+    Transport t = get(target);
+    double bps = bytes * 1000.0 / transferMs;
+    t.bytesPerSec = t.bytesPerSec < 0 ? bps : (1 - ALPHA) * t.bytesPerSec + ALPHA * bps;
+    t.jobs++;
+    save(t);
+  }
+
+  // Union of targets sharing an identifier with target (breadth-first over identifier keys)
+  private List<Transport> groupOf(Transport start) {
+    List<Transport> group = new ArrayList<>();
+    group.add(start);
+    List<String> keys = new ArrayList<>(start.keys());
+    for (int i = 0; i < keys.size(); i++) {
+      for (Transport t : byTarget.values()) {
+        if (group.contains(t) || !t.keys().contains(keys.get(i))) continue;
+        group.add(t);
+        for (String k : t.keys()) if (!keys.contains(k)) keys.add(k);
+      }
+    }
+    return group;
+  }
+
+  /**
+   * The fastest available transport of the printer {@code target} belongs to, or {@code target}
+   * itself when nothing better is known.
+   */
+  synchronized String best(String target, Availability available) {
+    Transport t = byTarget.get(target);
+    if (t == null) return target;
+    List<Transport> group = groupOf(t);
+    Collections.sort(group, FASTEST);
+    for (Transport c : group) {
+      if (c.target.equals(target) || available.isAvailable(c.target)) return c.target;
+    }
+    return target;
+  }
+
+  /** One record per physical printer with its transports, fastest first. */
+  synchronized List<Map<String, Object>> printers() {
+    List<Map<String, Object>> out = new ArrayList<>();
+    List<Transport> done = new ArrayList<>();
+    for (Transport t : byTarget.values()) {
+      if (done.contains(t)) continue;
+      List<Transport> group = groupOf(t);
+      done.addAll(group);
+      Collections.sort(group, FASTEST);
+      Map<String, Object> rec = new HashMap<>();
+      List<Map<String, Object>> transports = new ArrayList<>();
+      List<String> ids = new ArrayList<>();
+      for (Transport g : group) {
+        Map<String, Object> m = new HashMap<>();
+        m.put("target", g.target);
+        m.put("transport", EpsonDiscoveryCache.transportOf(g.target));
+        m.put("name", g.name);
+        m.put("connectMs", g.connectMs >= 0 ? Math.round(g.connectMs) : null);
+        m.put("bytesPerSec", g.bytesPerSec > 0 ? Math.round(g.bytesPerSec) : null);
+        m.put("jobs", g.jobs);
+        transports.add(m);
+        for (String k : g.keys()) if (!ids.contains(k)) ids.add(k);
+      }
+      rec.put("name", group.get(0).name);
+      rec.put("identifiers", ids);
+      rec.put("transports", transports);
+      rec.put("best", group.get(0).target);
+      out.add(rec);
+    }
+    return out;
+  }
+
+  synchronized void clear() {
+    byTarget.clear();
+    prefs.edit().clear().apply();
+  }
+}
@@ -0,0 +1,175 @@
+package com.example.epson_printer_android;
+
+import android.graphics.Bitmap;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Turns a bitmap into packed 1-bit-per-pixel rows (MSB first, 1 = black), the layout GS v 0 and
+ * GS 8 L expect, thresholding or ordered-dithering on the way.
+ *
+ * Rows are independent, so large images are split into row ranges on a small shared fork-join
+ * pool; each range reads its own rows and writes its own slice of the output, so no locking is
+ * needed. Callers pass the previous {@link Packed} back in to reuse its buffer.
+ */
+final class EpsonRasterPacker {
+
+  /** Packs with the 4x4 Bayer matrix instead of a fixed threshold. */
+  static final int DITHER = -1;
+
+  // 4x4 Bayer matrix scaled to 0..255, used to approximate the SDK's HALFTONE_DITHER
+  private static final int[] BAYER_4X4 = {
+      8, 136, 40, 168,
+    200, 72, 232, 104,
+     56, 184, 24, 152,
+    248, 120, 216, 88,
+  };
+
+  // Below this many pixels forking costs more than it saves
+  private static final int PARALLEL_MIN_PIXELS = 64 * 1024;
+  private static final int MIN_ROWS_PER_TASK = 16;
+
+  // Bounded so image work never takes every core away from the UI thread and the SDK's own threads
+  static final int PARALLELISM = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+  private static final ForkJoinPool POOL = new ForkJoinPool(PARALLELISM);
+
+  /** A packed raster; {@code data} may be longer than {@code rowBytes * height} when reused. */
+  static final class Packed {
+    byte[] data;
+    int width;
+    int height;
+    int rowBytes;
+    int blackPixels;
+
+    int byteCount() {
+      return rowBytes * height;
+    }
+  }
+
+  private EpsonRasterPacker() {}
+
+  /**
+   * Packs {@code bmp} with {@code threshold} (0..255, luminance below it prints black) or
+   * {@link #DITHER}. Transparent pixels print as paper. Reuses {@code reuse} when it is large enough.
+   */
+  static Packed pack(Bitmap bmp, int threshold, Packed reuse) {
+    return pack(bmp, threshold, reuse, true);
+  }
+
+  static Packed pack(Bitmap bmp, int threshold, Packed reuse, boolean parallel) {
+    int w = bmp.getWidth();
+    int h = bmp.getHeight();
+    int rowBytes = (w + 7) / 8;
+    Packed out = reuse != null ? reuse : new Packed();
+    if (out.data == null || out.data.length < rowBytes * h) out.data = new byte[rowBytes * h];
+    out.width = w;
+    out.height = h;
+    out.rowBytes = rowBytes;
+    RowRange all = new RowRange(bmp, threshold, out, 0, h, rowsPerTask(w, h));
+    if (parallel && PARALLELISM > 1 && (long) w * h >= PARALLEL_MIN_PIXELS) {
+      out.blackPixels = POOL.invoke(all);
+    } else {
+      out.blackPixels = all.packDirectly();
+    }
+    return out;
+  }
+
+  /** Writes a packed raster back into {@code bmp} as pure black and white pixels. */
+  static void unpackInto(Packed packed, Bitmap bmp) {
+    int[] row = new int[packed.width];
+    for (int y = 0; y < packed.height; y++) {
+      int base = y * packed.rowBytes;
+      for (int x = 0; x < packed.width; x++) {
+        boolean black = (packed.data[base + (x >> 3)] & (0x80 >> (x & 7))) != 0;
+        row[x] = black ? 0xFF000000 : 0xFFFFFFFF;
+      }
+      bmp.setPixels(row, 0, packed.width, 0, y, packed.width, 1);
+    }
+  }
+
+  private static int rowsPerTask(int w, int h) {
+    int rows = h / (PARALLELISM * 4);
+    return Math.max(MIN_ROWS_PER_TASK, rows);
+  }
+
+  private static final class RowRange extends RecursiveTask<Integer> {
+    private final Bitmap bmp;
+    private final int threshold;
+    private final Packed out;
+    private final int y0;
+    private final int y1;
+    private final int grain;
+
+    RowRange(Bitmap bmp, int threshold, Packed out, int y0, int y1, int grain) {
+      this.bmp = bmp;
+      this.threshold = threshold;
+      this.out = out;
+      this.y0 = y0;
+      this.y1 = y1;
+      this.grain = grain;
+    }
+
+    @Override protected Integer compute() {
+      if (y1 - y0 <= grain) return packDirectly();
+      int mid = (y0 + y1) >>> 1;
+      RowRange top = new RowRange(bmp, threshold, out, y0, mid, grain);
+      RowRange bottom = new RowRange(bmp, threshold, out, mid, y1, grain);
+      top.fork();
+      int blacks = bottom.compute();
+      return blacks + top.join();
+    }
+
+    int packDirectly() {
+      int w = out.width;
+      int[] row = new int[w];
+      byte[] data = out.data;
+      int blacks = 0;
+      for (int y = y0; y < y1; y++) {
+        bmp.getPixels(row, 0, w, 0, y, w, 1);
+        int pos = y * out.rowBytes;
+        int acc = 0;
+        int bits = 0;
+        for (int x = 0; x < w; x++) {
+          int c = row[x];
+          int lum = (((c >> 16) & 0xFF) * 30 + ((c >> 8) & 0xFF) * 59 + (c & 0xFF) * 11) / 100;
+          if (((c >>> 24) & 0xFF) < 128) lum = 255;
+          int limit = threshold >= 0 ? threshold : BAYER_4X4[((y & 3) << 2) | (x & 3)];
+          int bit = lum < limit ? 1 : 0;
+          blacks += bit;
+          acc = (acc << 1) | bit;
+          if (++bits == 8) {
+            data[pos++] = (byte) acc;
+            acc = 0;
+            bits = 0;
+          }
+        }
+        if (bits > 0) data[pos] = (byte) (acc << (8 - bits));
+      }
+      return blacks;
+    }
+  }
+
+  /**
+   * The single-threaded threshold loop the image command used before packing existed (full
+   * {@code int[w*h]} plus an ARGB_8888 copy). Only kept as the baseline for benchmarkImagePacking.
+   */
+  static int legacyThreshold(Bitmap bmp, int threshold) {
+    int width = bmp.getWidth();
+    int height = bmp.getHeight();
+    Bitmap mutable = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+    int[] pixels = new int[width * height];
+    bmp.getPixels(pixels, 0, width, 0, 0, width, height);
+    int blacks = 0;
+    for (int i = 0; i < pixels.length; i++) {
+      int c = pixels[i];
+      int lum = (((c >> 16) & 0xFF) * 30 + ((c >> 8) & 0xFF) * 59 + (c & 0xFF) * 11) / 100;
+      boolean black = lum < threshold;
+      if (black) blacks++;
+      pixels[i] = black ? 0xFF000000 : 0xFFFFFFFF;
+    }
+    mutable.setPixels(pixels, 0, width, 0, 0, width, height);
+    mutable.recycle();
+    return blacks;
+  }
+}
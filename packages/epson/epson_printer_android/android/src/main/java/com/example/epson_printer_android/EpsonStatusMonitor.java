@@ -0,0 +1,249 @@
+package com.example.epson_printer_android;
+
+import android.os.SystemClock;
+
+import com.epson.epos2.printer.Printer;
+import com.epson.epos2.printer.PrinterStatusInfo;
+import com.epson.epos2.printer.StatusChangeListener;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Cached status of one connected printer, kept current by the SDK's status monitor.
+ *
+ * {@code startMonitor} makes the SDK poll the printer every {@code intervalMs} and report changes
+ * through {@code onPtrStatusChange}; each event is applied to the cached snapshot and pushed to the
+ * listener, so reading the status never talks to the printer. The snapshot is seeded (and re-read
+ * after a reconnect) from {@code getStatus}. Print jobs ask {@link #blockedBy} before sending so a
+ * printer with its cover open or out of paper fails them at once instead of after the completion
+ * timeout.
+ */
+final class EpsonStatusMonitor {
+
+  /** Receives every status change; called on an SDK thread. */
+  interface Listener {
+    void onStatus(String target, String event, Map<String, Object> status);
+  }
+
+  static final int DEFAULT_INTERVAL_MS = 1000;
+  // The SDK refuses shorter polling intervals
+  private static final int MIN_INTERVAL_MS = 1000;
+
+  private final Printer printer;
+  private final String target;
+  private final Listener listener;
+
+  private int intervalMs = DEFAULT_INTERVAL_MS;
+  private boolean monitoring;
+  // Only start() arms the monitor, so a reconnect does not turn it on for a printer that never asked
+  private boolean started;
+  private boolean stopped;
+
+  // Snapshot, in the index order of the Dart status enums
+  private boolean connected = true;
+  private boolean online = true;
+  private boolean coverOpen;
+  private int paper;        // 0 ok, 1 near end, 2 empty
+  private int drawer;       // 0 high, 1 low
+  private int error;        // 0 none, 1 mechanical, 2 autocutter, 3 unrecoverable, 4 autorecover
+  private int battery;      // 0..6
+  private long updatedAt;
+  private String lastEvent;
+  private int events;
+
+  EpsonStatusMonitor(Printer printer, String target, Listener listener) {
+    this.printer = printer;
+    this.target = target;
+    this.listener = listener;
+  }
+
+  /** Starts SDK monitoring (connect thread). Monitoring failures only disable the fail-fast check. */
+  void start(int intervalMs) {
+    synchronized (this) {
+      this.intervalMs = Math.max(MIN_INTERVAL_MS, intervalMs > 0 ? intervalMs : DEFAULT_INTERVAL_MS);
+      started = true;
+      stopped = false;
+    }
+    printer.setStatusChangeEventListener(new StatusChangeListener() {
+      @Override public void onPtrStatusChange(Printer p, int eventType) {
+        onEvent(eventType);
+      }
+    });
+    restart();
+  }
+
+  /**
+   * Re-arms monitoring after the keeper reconnected the same Printer, and re-reads the status. A
+   * no-op unless {@link #start} ran and {@link #stop} has not.
+   */
+  void restart() {
+    int interval;
+    synchronized (this) {
+      if (!started || stopped) return;
+      interval = intervalMs;
+    }
+    boolean ok;
+    try {
+      try { printer.stopMonitor(); } catch (Exception ignored) {}
+      printer.setInterval(interval);
+      printer.startMonitor();
+      ok = true;
+    } catch (Exception e) {
+      android.util.Log.d("EpsonPrinter", "Status monitor not started for " + target + ": " + e.getMessage());
+      ok = false;
+    }
+    synchronized (this) {
+      monitoring = ok;
+    }
+    refresh();
+    publish("started");
+  }
+
+  /** Stops SDK monitoring; must run before the printer is disconnected. */
+  void stop() {
+    synchronized (this) {
+      if (!started || stopped) return;
+      stopped = true;
+      monitoring = false;
+    }
+    try { printer.stopMonitor(); } catch (Exception ignored) {}
+    try { printer.setStatusChangeEventListener(null); } catch (Exception ignored) {}
+    publish("stopped");
+  }
+
+  // Seeds the snapshot from the SDK's last known status
+  private void refresh() {
+    PrinterStatusInfo info;
+    try {
+      info = printer.getStatus();
+    } catch (Exception e) {
+      return;
+    }
+    if (info == null) return;
+    synchronized (this) {
+      connected = info.getConnection() != Printer.FALSE;
+      online = info.getOnline() != Printer.FALSE;
+      coverOpen = info.getCoverOpen() == Printer.TRUE;
+      paper = info.getPaper() == Printer.PAPER_EMPTY ? 2 : info.getPaper() == Printer.PAPER_NEAR_END ? 1 : 0;
+      drawer = info.getDrawer() == Printer.DRAWER_LOW ? 1 : 0;
+      error = mapError(info.getErrorStatus());
+      battery = mapBattery(info.getBatteryLevel(), battery);
+      updatedAt = SystemClock.elapsedRealtime();
+    }
+  }
+
+  private void onEvent(int eventType) {
+    String event;
+    synchronized (this) {
+      if (stopped) return;
+      switch (eventType) {
+        case Printer.EVENT_ONLINE: online = true; connected = true; error = 0; event = "online"; break;
+        case Printer.EVENT_OFFLINE: online = false; event = "offline"; break;
+        case Printer.EVENT_POWER_OFF: online = false; connected = false; event = "powerOff"; break;
+        case Printer.EVENT_COVER_CLOSE: coverOpen = false; event = "coverClose"; break;
+        case Printer.EVENT_COVER_OPEN: coverOpen = true; event = "coverOpen"; break;
+        case Printer.EVENT_PAPER_OK: paper = 0; event = "paperOk"; break;
+        case Printer.EVENT_PAPER_NEAR_END: paper = 1; event = "paperNearEnd"; break;
+        case Printer.EVENT_PAPER_EMPTY: paper = 2; event = "paperEmpty"; break;
+        case Printer.EVENT_DRAWER_HIGH: drawer = 0; event = "drawerHigh"; break;
+        case Printer.EVENT_DRAWER_LOW: drawer = 1; event = "drawerLow"; break;
+        case Printer.EVENT_BATTERY_ENOUGH: event = "batteryEnough"; break;
+        case Printer.EVENT_BATTERY_EMPTY: battery = 0; event = "batteryEmpty"; break;
+        default: event = "event" + eventType; break;
+      }
+      updatedAt = SystemClock.elapsedRealtime();
+      lastEvent = event;
+      events++;
+    }
+    publish(event);
+  }
+
+  private void publish(String event) {
+    if (listener == null) return;
+    try {
+      listener.onStatus(target, event, snapshot());
+    } catch (Exception e) {
+      android.util.Log.d("EpsonPrinter", "Status listener failed: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Why a print job sent now would fail, as the matching callback code name (ERR_COVER_OPEN,
+   * ERR_EMPTY, ...), or null if the printer looks ready or is not monitored. A lost link is the
+   * keeper's business and is not reported here.
+   */
+  synchronized String blockedBy() {
+    if (!monitoring || !connected) return null;
+    if (coverOpen) return "ERR_COVER_OPEN";
+    if (paper == 2) return "ERR_EMPTY";
+    switch (error) {
+      case 1: return "ERR_MECHANICAL";
+      case 2: return "ERR_CUTTER";
+      case 3: return "ERR_UNRECOVERABLE";
+      case 4: return "ERR_AUTORECOVER";
+    }
+    return online ? null : "ERR_OFFLINE";
+  }
+
+  /** {@link #blockedBy}, re-reading the SDK status first if the cache says blocked (job worker). */
+  String recheckBlockedBy() {
+    if (blockedBy() == null) return null;
+    refresh();
+    return blockedBy();
+  }
+
+  static String describe(String reason) {
+    if (reason == null) return null;
+    switch (reason) {
+      case "ERR_COVER_OPEN": return "Printer cover is open";
+      case "ERR_EMPTY": return "Printer is out of paper";
+      case "ERR_MECHANICAL": return "Printer mechanical error";
+      case "ERR_CUTTER": return "Auto cutter error";
+      case "ERR_UNRECOVERABLE": return "Unrecoverable printer error";
+      case "ERR_AUTORECOVER": return "Printer is recovering from an error (e.g. head overheat)";
+      default: return "Printer is offline";
+    }
+  }
+
+  /** The cached status in the shape of Dart's EpsonPrinterStatus map, plus monitor fields. */
+  synchronized Map<String, Object> snapshot() {
+    Map<String, Object> m = new HashMap<>();
+    m.put("monitored", monitoring);
+    m.put("isOnline", connected && online);
+    m.put("isCoverOpen", coverOpen);
+    m.put("paperStatus", paper);
+    m.put("drawerStatus", drawer);
+    m.put("errorCode", error);
+    m.put("batteryLevel", battery);
+    String reason = blockedBy();
+    m.put("blockedBy", reason);
+    m.put("errorMessage", describe(reason));
+    m.put("lastEvent", lastEvent);
+    m.put("events", events);
+    m.put("intervalMs", intervalMs);
+    m.put("ageMs", updatedAt > 0 ? SystemClock.elapsedRealtime() - updatedAt : null);
+    return m;
+  }
+
+  private static int mapError(int status) {
+    if (status == Printer.MECHANICAL_ERR) return 1;
+    if (status == Printer.AUTOCUTTER_ERR) return 2;
+    if (status == Printer.UNRECOVER_ERR) return 3;
+    if (status == Printer.AUTORECOVER_ERR) return 4;
+    return 0;
+  }
+
+  private static int mapBattery(int level, int fallback) {
+    switch (level) {
+      case Printer.BATTERY_LEVEL_0: return 0;
+      case Printer.BATTERY_LEVEL_1: return 1;
+      case Printer.BATTERY_LEVEL_2: return 2;
+      case Printer.BATTERY_LEVEL_3: return 3;
+      case Printer.BATTERY_LEVEL_4: return 4;
+      case Printer.BATTERY_LEVEL_5: return 5;
+      case Printer.BATTERY_LEVEL_6: return 6;
+      default: return fallback;
+    }
+  }
+}
@@ -0,0 +1,322 @@
+package com.example.epson_printer_android;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * LAN discovery that does not rely on broadcast: non-blocking connects to every host of a CIDR
+ * range on one selector thread, for store networks where the SDK's discovery broadcast is filtered.
+ *
+ * The first port (9100 by default) is asked for the printer name (GS I 67) and serial number
+ * (GS I 68); a host that answers is a confirmed printer and is reported as "TCP:ip:name", with the
+ * serial passed alongside so the LAN target can be matched to the same printer on USB. Other ports (8008, ePOS) only need to
+ * accept, and count as hits when {@code requireIdentify} is off. Concurrency grows by one per
+ * completed probe up to the configured maximum and halves on local socket errors (descriptor or
+ * buffer exhaustion); the connect timeout follows the measured round trip (srtt + 4 * rttvar, as
+ * TCP does) once a few hosts have answered. Nothing here touches Android APIs, so it can be run
+ * against ServerSockets on 127.0.0.1.
+ */
+final class EpsonSubnetProber {
+
+  /** {@code serial} is null when the printer does not answer GS I 68. */
+  interface Listener { void onPrinter(String entry, String serial); }
+
+  static final int RAW_PORT = 9100;
+  static final int EPOS_PORT = 8008;
+  static final int MIN_PREFIX = 16;
+
+  // GS I 67 / GS I 68: transmit printer name / serial number; each answer is 0x5F, text, NUL
+  private static final byte[] GS_I_NAME_SERIAL = { 0x1D, 0x49, 0x43, 0x1D, 0x49, 0x44 };
+  // How long to wait for the serial once the name is in (models without GS I 68 stay silent)
+  private static final int SERIAL_GRACE_MS = 150;
+  private static final int INITIAL_WINDOW = 32;
+  private static final int MIN_WINDOW = 4;
+  private static final int MIN_CONNECT_TIMEOUT_MS = 250;
+  private static final int RTT_SAMPLES_BEFORE_ADAPTING = 4;
+
+  private final int[] ports;
+  private final int timeoutMs;
+  private final int identifyTimeoutMs;
+  private final int maxConcurrency;
+  private final boolean requireIdentify;
+  private volatile boolean cancelled;
+
+  // Stats (probe thread; read after probe returns)
+  private int probes;
+  private int opened;
+  private int refused;
+  private int timedOut;
+  private int localErrors;
+  private int peakConcurrency;
+  private long elapsedMs;
+  private double srtt = -1;
+  private double rttvar;
+  private int rttSamples;
+
+  EpsonSubnetProber(int[] ports, int timeoutMs, int identifyTimeoutMs, int maxConcurrency, boolean requireIdentify) {
+    this.ports = ports != null && ports.length > 0 ? ports : new int[] { RAW_PORT, EPOS_PORT };
+    this.timeoutMs = Math.max(MIN_CONNECT_TIMEOUT_MS, timeoutMs);
+    this.identifyTimeoutMs = Math.max(100, identifyTimeoutMs);
+    this.maxConcurrency = Math.max(MIN_WINDOW, maxConcurrency);
+    this.requireIdentify = requireIdentify;
+  }
+
+  void cancel() {
+    cancelled = true;
+  }
+
+  private static final class Host {
+    final String ip;
+    int pending;
+    boolean open;
+    String name;
+    String serial;
+
+    Host(String ip, int pending) {
+      this.ip = ip;
+      this.pending = pending;
+    }
+  }
+
+  private static final class Probe {
+    final Host host;
+    final int port;
+    SocketChannel ch;
+    long started;
+    long deadline;
+    ByteBuffer in;
+
+    Probe(Host host, int port) {
+      this.host = host;
+      this.port = port;
+    }
+  }
+
+  /** Host addresses of {@code cidr} ("10.20.0.0/22"; a bare address means /32), without network/broadcast. */
+  static List<String> hosts(String cidr) {
+    String[] parts = cidr.trim().split("/");
+    int prefix = parts.length > 1 ? Integer.parseInt(parts[1].trim()) : 32;
+    if (prefix < MIN_PREFIX || prefix > 32) throw new IllegalArgumentException("prefix must be /" + MIN_PREFIX + "../32");
+    String[] o = parts[0].trim().split("\\.");
+    if (o.length != 4) throw new IllegalArgumentException("not an IPv4 address: " + parts[0]);
+    long base = 0;
+    for (String s : o) {
+      int b = Integer.parseInt(s);
+      if (b < 0 || b > 255) throw new IllegalArgumentException("not an IPv4 address: " + parts[0]);
+      base = (base << 8) | b;
+    }
+    long size = 1L << (32 - prefix);
+    long network = base & ~(size - 1) & 0xFFFFFFFFL;
+    long first = size > 2 ? network + 1 : network;
+    long last = size > 2 ? network + size - 2 : network + size - 1;
+    List<String> out = new ArrayList<>((int) (last - first + 1));
+    for (long a = first; a <= last; a++) {
+      out.add(((a >> 24) & 0xFF) + "." + ((a >> 16) & 0xFF) + "." + ((a >> 8) & 0xFF) + "." + (a & 0xFF));
+    }
+    return out;
+  }
+
+  /** Probes every host of {@code cidr}; hits are passed to {@code listener} as they are confirmed. */
+  List<String> probe(String cidr, Listener listener) throws IOException {
+    long t0 = System.currentTimeMillis();
+    List<String> hits = new ArrayList<>();
+    ArrayDeque<Probe> queue = new ArrayDeque<>();
+    for (String ip : hosts(cidr)) {
+      Host h = new Host(ip, ports.length);
+      for (int port : ports) queue.add(new Probe(h, port));
+    }
+
+    double window = Math.min(INITIAL_WINDOW, maxConcurrency);
+    int inFlight = 0;
+    Selector sel = Selector.open();
+    try {
+      while ((!queue.isEmpty() || inFlight > 0) && !cancelled) {
+        while (inFlight < (int) window && !queue.isEmpty()) {
+          Probe p = queue.poll();
+          try {
+            start(p, sel);
+            inFlight++;
+          } catch (IOException e) {
+            // Out of descriptors/buffers: back off and retry this probe later
+            localErrors++;
+            window = Math.max(MIN_WINDOW, window / 2);
+            queue.addFirst(p);
+            break;
+          }
+        }
+        peakConcurrency = Math.max(peakConcurrency, inFlight);
+
+        long now = System.currentTimeMillis();
+        long next = Long.MAX_VALUE;
+        for (SelectionKey k : sel.keys()) {
+          if (k.isValid()) next = Math.min(next, ((Probe) k.attachment()).deadline);
+        }
+        if (next != Long.MAX_VALUE) sel.select(Math.max(1, next - now));
+
+        for (SelectionKey k : sel.selectedKeys()) {
+          Probe p = (Probe) k.attachment();
+          if (!k.isValid()) continue;
+          if (k.isConnectable() || (k.isWritable() && p.in == null)) {
+            if (connected(p, k)) continue;
+          } else if (!k.isReadable() || read(p)) {
+            continue;
+          }
+          inFlight--;
+          window = Math.min(maxConcurrency, window + 1);
+          done(p, hits, listener);
+        }
+        sel.selectedKeys().clear();
+
+        now = System.currentTimeMillis();
+        for (SelectionKey k : new ArrayList<>(sel.keys())) {
+          Probe p = (Probe) k.attachment();
+          if (!k.isValid() || now < p.deadline) continue;
+          if (p.in == null) timedOut++;
+          inFlight--;
+          done(p, hits, listener);
+        }
+      }
+    } finally {
+      for (SelectionKey k : sel.keys()) closeQuietly(((Probe) k.attachment()).ch);
+      sel.close();
+      elapsedMs = System.currentTimeMillis() - t0;
+    }
+    return hits;
+  }
+
+  Map<String, Object> stats() {
+    Map<String, Object> m = new HashMap<>();
+    m.put("probes", probes);
+    m.put("open", opened);
+    m.put("refused", refused);
+    m.put("timedOut", timedOut);
+    m.put("localErrors", localErrors);
+    m.put("peakConcurrency", peakConcurrency);
+    m.put("connectTimeoutMs", connectTimeoutMs());
+    m.put("srttMs", srtt >= 0 ? Math.round(srtt) : null);
+    m.put("elapsedMs", elapsedMs);
+    m.put("cancelled", cancelled);
+    return m;
+  }
+
+  private int connectTimeoutMs() {
+    if (rttSamples < RTT_SAMPLES_BEFORE_ADAPTING) return timeoutMs;
+    return (int) Math.max(MIN_CONNECT_TIMEOUT_MS, Math.min(timeoutMs, srtt + 4 * rttvar));
+  }
+
+  private void sampleRtt(long rtt) {
+    if (srtt < 0) {
+      srtt = rtt;
+      rttvar = rtt / 2.0;
+    } else {
+      rttvar = 0.75 * rttvar + 0.25 * Math.abs(srtt - rtt);
+      srtt = 0.875 * srtt + 0.125 * rtt;
+    }
+    rttSamples++;
+  }
+
+  private void start(Probe p, Selector sel) throws IOException {
+    SocketChannel ch = SocketChannel.open();
+    try {
+      ch.configureBlocking(false);
+      p.ch = ch;
+      p.started = System.currentTimeMillis();
+      p.deadline = p.started + connectTimeoutMs();
+      probes++;
+      // Loopback may connect at once; the channel is then writable on the first select
+      boolean now = ch.connect(new InetSocketAddress(p.host.ip, p.port));
+      ch.register(sel, now ? SelectionKey.OP_WRITE : SelectionKey.OP_CONNECT, p);
+    } catch (IOException e) {
+      closeQuietly(ch);
+      probes--;
+      throw e;
+    }
+  }
+
+  // Returns true while the probe continues (identify read pending)
+  private boolean connected(Probe p, SelectionKey k) {
+    try {
+      p.ch.finishConnect();
+    } catch (IOException e) {
+      // Refused means the host is up; unreachable/reset carry no timing signal
+      if (e instanceof ConnectException) {
+        refused++;
+        sampleRtt(System.currentTimeMillis() - p.started);
+      }
+      return false;
+    }
+    opened++;
+    sampleRtt(System.currentTimeMillis() - p.started);
+    p.host.open = true;
+    if (p.port != ports[0]) return false;
+    try {
+      p.ch.write(ByteBuffer.wrap(GS_I_NAME_SERIAL));
+    } catch (IOException e) {
+      return false;
+    }
+    p.in = ByteBuffer.allocate(128);
+    p.deadline = System.currentTimeMillis() + identifyTimeoutMs;
+    k.interestOps(SelectionKey.OP_READ);
+    return true;
+  }
+
+  // Returns true while more of the GS I answers is expected
+  private boolean read(Probe p) {
+    int n;
+    try {
+      n = p.ch.read(p.in);
+    } catch (IOException e) {
+      return false;
+    }
+    if (n < 0) return false;
+    byte[] a = p.in.array();
+    int len = p.in.position();
+    int block = 0;
+    int start = 0;
+    for (int i = 0; i < len; i++) {
+      if (i == start) {
+        if (a[i] != 0x5F) return false;
+        continue;
+      }
+      if (a[i] != 0) continue;
+      StringBuilder text = new StringBuilder();
+      for (int j = start + 1; j < i; j++) if (a[j] >= 0x20 && a[j] < 0x7F) text.append((char) a[j]);
+      if (block == 0 && p.host.name == null) {
+        p.host.name = text.length() > 0 ? text.toString() : "Printer";
+        p.deadline = Math.min(p.deadline, System.currentTimeMillis() + SERIAL_GRACE_MS);
+      } else if (block == 1) {
+        if (text.length() > 0) p.host.serial = text.toString();
+        return false;
+      }
+      block++;
+      start = i + 1;
+    }
+    return p.in.hasRemaining();
+  }
+
+  private void done(Probe p, List<String> hits, Listener listener) {
+    closeQuietly(p.ch);
+    Host h = p.host;
+    if (--h.pending > 0) return;
+    boolean hit = h.name != null || (!requireIdentify && h.open);
+    if (!hit) return;
+    String entry = "TCP:" + h.ip + ":" + (h.name != null ? h.name : "Printer");
+    hits.add(entry);
+    if (listener != null) listener.onPrinter(entry, h.serial);
+  }
+
+  private static void closeQuietly(SocketChannel ch) {
+    if (ch == null) return;
+    try { ch.close(); } catch (IOException ignored) {}
+  }
+}
@@ -0,0 +1,141 @@
+package com.example.epson_printer_android;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.hardware.usb.UsbConstants;
+import android.hardware.usb.UsbDevice;
+import android.hardware.usb.UsbInterface;
+import android.hardware.usb.UsbManager;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Live list of attached USB printers, kept current by attach/detach broadcasts so discovery and
+ * connect never enumerate the bus themselves.
+ *
+ * Epson devices (vendor 0x04B8) resolve straight to an ePOS2 target ("USB:" + device node); any
+ * other printer-class device is reported as unresolved and callers fall back to SDK discovery.
+ */
+final class EpsonUsbDevices {
+
+  static final int EPSON_VENDOR_ID = 0x04B8;
+
+  private final Context context;
+  // Device node -> device, in attach order
+  private final Map<String, UsbDevice> devices = new LinkedHashMap<>();
+  private boolean registered;
+
+  private final BroadcastReceiver receiver = new BroadcastReceiver() {
+    @Override public void onReceive(Context c, Intent intent) {
+      UsbDevice dev = intent.getParcelableExtra(UsbManager.EXTRA_DEVICE);
+      if (dev == null || dev.getDeviceName() == null) return;
+      synchronized (devices) {
+        if (UsbManager.ACTION_USB_DEVICE_ATTACHED.equals(intent.getAction())) {
+          if (isPrinter(dev)) devices.put(dev.getDeviceName(), dev);
+        } else if (UsbManager.ACTION_USB_DEVICE_DETACHED.equals(intent.getAction())) {
+          devices.remove(dev.getDeviceName());
+        }
+      }
+      android.util.Log.d("EpsonPrinter", "USB " + intent.getAction() + ": " + dev.getDeviceName());
+    }
+  };
+
+  EpsonUsbDevices(Context context) {
+    this.context = context;
+  }
+
+  /** Registers for attach/detach and seeds the list with one enumeration. */
+  void start() {
+    if (registered) return;
+    IntentFilter filter = new IntentFilter();
+    filter.addAction(UsbManager.ACTION_USB_DEVICE_ATTACHED);
+    filter.addAction(UsbManager.ACTION_USB_DEVICE_DETACHED);
+    try {
+      context.registerReceiver(receiver, filter);
+      registered = true;
+    } catch (Throwable t) {
+      android.util.Log.d("EpsonPrinter", "USB receiver not registered: " + t.getMessage());
+    }
+    refresh();
+  }
+
+  void stop() {
+    if (!registered) return;
+    try { context.unregisterReceiver(receiver); } catch (Throwable ignored) {}
+    registered = false;
+  }
+
+  /** Re-reads the device list from UsbManager (start-up, or when broadcasts are unavailable). */
+  void refresh() {
+    Map<String, UsbDevice> now = new LinkedHashMap<>();
+    try {
+      UsbManager usbManager = (UsbManager) context.getSystemService(Context.USB_SERVICE);
+      Map<String, UsbDevice> list = usbManager != null ? usbManager.getDeviceList() : null;
+      if (list != null) {
+        for (UsbDevice dev : list.values()) {
+          if (isPrinter(dev) && dev.getDeviceName() != null) now.put(dev.getDeviceName(), dev);
+        }
+      }
+    } catch (Throwable ignored) {}
+    synchronized (devices) {
+      devices.clear();
+      devices.putAll(now);
+    }
+  }
+
+  private List<UsbDevice> snapshot() {
+    if (!registered) refresh();
+    synchronized (devices) {
+      return new ArrayList<>(devices.values());
+    }
+  }
+
+  /** True if any Epson or printer-class device is attached. */
+  boolean isAttached() {
+    return !snapshot().isEmpty();
+  }
+
+  /**
+   * Discovery entries ("USB:/dev/bus/usb/001/004:TM-m30III") for attached Epson printers, or null
+   * when a printer-class device is attached that cannot be resolved without SDK discovery.
+   */
+  List<String> entries() {
+    List<String> out = new ArrayList<>();
+    for (UsbDevice dev : snapshot()) {
+      if (dev.getVendorId() != EPSON_VENDOR_ID) return null;
+      String name = null;
+      try { name = dev.getProductName(); } catch (Throwable ignored) {}
+      out.add("USB:" + dev.getDeviceName() + ":" + (name != null && !name.isEmpty() ? name : "USB Printer"));
+    }
+    return out;
+  }
+
+  /** Serial number of the device behind "USB:<node>", or null (no device, or no permission on Android 10+). */
+  String serialOf(String target) {
+    if (target == null || !target.startsWith("USB:")) return null;
+    UsbDevice dev;
+    synchronized (devices) {
+      dev = devices.get(target.substring(4));
+    }
+    if (dev == null) return null;
+    try {
+      return dev.getSerialNumber();
+    } catch (SecurityException e) {
+      return null;
+    }
+  }
+
+  static boolean isPrinter(UsbDevice dev) {
+    if (dev.getVendorId() == EPSON_VENDOR_ID) return true;
+    for (int i = 0; i < dev.getInterfaceCount(); i++) {
+      UsbInterface iface = dev.getInterface(i);
+      if (iface != null && iface.getInterfaceClass() == UsbConstants.USB_CLASS_PRINTER) return true;
+    }
+    return false;
+  }
+}
@@ -0,0 +1,227 @@
+package com.example.epson_printer_android;
+
+import android.graphics.Bitmap;
+
+import java.util.Arrays;
+
+/**
+ * Encodes a receipt into one raw ESC/POS byte array for a single {@code Printer.addCommand} call,
+ * instead of one JNI-backed {@code addXxx} call per command.
+ *
+ * Only what maps 1:1 onto ESC/POS is encoded; anything else throws {@link Unsupported} and the
+ * receipt is built through the SDK as before.
+ */
+final class EscPosEncoder {
+
+  /** Thrown when a command has no faithful ESC/POS encoding; the caller falls back to the SDK path. */
+  static final class Unsupported extends Exception {
+    Unsupported(String what) {
+      super(what);
+    }
+  }
+
+  private static final int ESC = 0x1B;
+  private static final int GS = 0x1D;
+
+  // GS v 0 height per block; well inside every TM model's yH limit
+  static final int RASTER_BLOCK_ROWS = 1024;
+
+  private byte[] buf;
+  private int len;
+  private EpsonRasterPacker.Packed scratch;
+
+  EscPosEncoder() {
+    this(1024);
+  }
+
+  EscPosEncoder(int initialCapacity) {
+    buf = new byte[Math.max(16, initialCapacity)];
+  }
+
+  int size() {
+    return len;
+  }
+
+  byte[] toByteArray() {
+    return Arrays.copyOf(buf, len);
+  }
+
+  void reset() {
+    len = 0;
+  }
+
+  // --- Primitives ---
+
+  private void ensure(int extra) {
+    if (len + extra > buf.length) buf = Arrays.copyOf(buf, Math.max(buf.length * 2, len + extra));
+  }
+
+  /** Appends pre-encoded bytes as they are. */
+  EscPosEncoder raw(byte[] bytes) {
+    ensure(bytes.length);
+    System.arraycopy(bytes, 0, buf, len, bytes.length);
+    len += bytes.length;
+    return this;
+  }
+
+  /** Appends each value's low byte. */
+  EscPosEncoder raw(int... bytes) {
+    ensure(bytes.length);
+    for (int b : bytes) buf[len++] = (byte) b;
+    return this;
+  }
+
+  /** ESC a n: 0 left, 1 center, 2 right. */
+  EscPosEncoder align(int n) {
+    return raw(ESC, 'a', (byte) n);
+  }
+
+  /** Printable ASCII, tab and line feeds only; other characters depend on the printer's code page. */
+  EscPosEncoder text(String s) throws Unsupported {
+    return raw(ascii(s));
+  }
+
+  // The bytes text() sends: '\r' dropped (the printer feeds on '\n'), anything non-ASCII refused.
+  // Length prefixes are computed from these, not from the string.
+  static byte[] ascii(String s) throws Unsupported {
+    byte[] out = new byte[s.length()];
+    int n = 0;
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (c == '\n' || c == '\t' || (c >= 0x20 && c < 0x7F)) {
+        out[n++] = (byte) c;
+      } else if (c != '\r') {
+        throw new Unsupported("non-ASCII text");
+      }
+    }
+    return n == out.length ? out : Arrays.copyOf(out, n);
+  }
+
+  /** GS B (reverse), ESC - (underline), ESC E (emphasis). */
+  EscPosEncoder style(boolean reverse, boolean underline, boolean bold) {
+    return raw(GS, 'B', (byte) (reverse ? 1 : 0),
+               ESC, '-', (byte) (underline ? 1 : 0),
+               ESC, 'E', (byte) (bold ? 1 : 0));
+  }
+
+  /** ESC d n: print and feed n lines. */
+  EscPosEncoder feedLines(int lines) {
+    int left = Math.max(1, lines);
+    while (left > 0) {
+      int n = Math.min(255, left);
+      raw(ESC, 'd', (byte) n);
+      left -= n;
+    }
+    return this;
+  }
+
+  /** GS V m [n]. {@code feed} moves the paper to the cutter first (function B). */
+  EscPosEncoder cut(boolean full, boolean feed) {
+    if (feed) return raw(GS, 'V', (byte) (full ? 65 : 66), (byte) 0);
+    return raw(GS, 'V', (byte) (full ? 0 : 1));
+  }
+
+  /** GS h / GS w / GS H / GS f then GS k m n d1..dn (function B). */
+  EscPosEncoder barcode(int m, String data, int hri, int font, int width, int height) throws Unsupported {
+    byte[] d = ascii(data);
+    if (d.length > 255) throw new Unsupported("barcode data longer than 255 bytes");
+    raw(GS, 'h', (byte) height, GS, 'w', (byte) width, GS, 'H', (byte) hri, GS, 'f', (byte) font);
+    raw(GS, 'k', (byte) m, (byte) d.length);
+    return raw(d);
+  }
+
+  /** GS ( k QR model / module size / error correction / store / print. {@code ecc} 0..3 = L, M, Q, H. */
+  EscPosEncoder qrCode(String data, int model, int ecc, int moduleSize) throws Unsupported {
+    byte[] d = ascii(data);
+    int n = d.length + 3;
+    if (n > 0xFFFF) throw new Unsupported("QR data too long");
+    raw(GS, '(', 'k', 4, 0, 49, 65, model == 1 ? 49 : 50, 0);
+    raw(GS, '(', 'k', 3, 0, 49, 67, moduleSize);
+    raw(GS, '(', 'k', 3, 0, 49, 69, 48 + ecc);
+    raw(GS, '(', 'k', n & 0xFF, (n >> 8) & 0xFF, 49, 80, 48);
+    raw(d);
+    return raw(GS, '(', 'k', 3, 0, 49, 81, 48);
+  }
+
+  /** ESC p m t1 t2: drawer kick on pin 2 ({@code pin} 0) or pin 5 (1); times are in 2 ms units. */
+  EscPosEncoder pulse(int pin, int onMs) {
+    int t = Math.min(255, Math.max(1, onMs / 2));
+    return raw(ESC, 'p', pin, t, t);
+  }
+
+  EscPosEncoder raster(Bitmap bmp, boolean thresholded) {
+    return raster(bmp, thresholded, RASTER_BLOCK_ROWS);
+  }
+
+  /**
+   * GS v 0 raster of {@code bmp}, split into blocks of at most {@code blockRows} rows (the printer
+   * starts on a block as soon as it has received it). Already-thresholded bitmaps are packed as-is;
+   * others get a 4x4 ordered dither.
+   */
+  EscPosEncoder raster(Bitmap bmp, boolean thresholded, int blockRows) {
+    return raster(pack(bmp, thresholded), blockRows);
+  }
+
+  /** GS v 0 raster of an already packed image, in blocks of at most {@code blockRows} rows. */
+  EscPosEncoder raster(EpsonRasterPacker.Packed packed, int blockRows) {
+    return raster(packed, blockRows, 0, packed.height);
+  }
+
+  /** Rows {@code fromRow} (inclusive) to {@code toRow} (exclusive) only, for an image sent in parts. */
+  EscPosEncoder raster(EpsonRasterPacker.Packed packed, int blockRows, int fromRow, int toRow) {
+    int rowBytes = packed.rowBytes;
+    int block = Math.max(1, Math.min(RASTER_BLOCK_ROWS, blockRows));
+    int end = Math.min(toRow, packed.height);
+    for (int y0 = Math.max(0, fromRow); y0 < end; y0 += block) {
+      int rows = Math.min(block, end - y0);
+      raw(GS, 'v', '0', 0, rowBytes & 0xFF, (rowBytes >> 8) & 0xFF, rows & 0xFF, (rows >> 8) & 0xFF);
+      ensure(rowBytes * rows);
+      System.arraycopy(packed.data, y0 * rowBytes, buf, len, rowBytes * rows);
+      len += rowBytes * rows;
+    }
+    return this;
+  }
+
+  // NV graphics limits for GS ( L / GS 8 L function 67 (raster format)
+  static final int NV_MAX_WIDTH = 8192;
+  static final int NV_MAX_HEIGHT = 2304;
+
+  /**
+   * GS 8 L function 67: stores {@code bmp} as single-colour NV graphics under key code {@code key}
+   * (two characters, 0x20..0x7E). The printer writes flash while processing it, so callers should
+   * only send this when the stored image actually changes.
+   */
+  EscPosEncoder nvGraphicsDefine(String key, Bitmap bmp, boolean thresholded) throws Unsupported {
+    return nvGraphicsDefine(key, pack(bmp, thresholded));
+  }
+
+  EscPosEncoder nvGraphicsDefine(String key, EpsonRasterPacker.Packed packed) throws Unsupported {
+    int w = packed.width;
+    int h = packed.height;
+    if (w > NV_MAX_WIDTH || h > NV_MAX_HEIGHT) throw new Unsupported("NV graphics larger than " + NV_MAX_WIDTH + "x" + NV_MAX_HEIGHT);
+    long p = 11L + packed.byteCount();
+    raw(GS, '8', 'L', (int) (p & 0xFF), (int) ((p >> 8) & 0xFF), (int) ((p >> 16) & 0xFF), (int) ((p >> 24) & 0xFF),
+        48, 67, 48, key.charAt(0), key.charAt(1), 1,
+        w & 0xFF, (w >> 8) & 0xFF, h & 0xFF, (h >> 8) & 0xFF, 49);
+    ensure(packed.byteCount());
+    System.arraycopy(packed.data, 0, buf, len, packed.byteCount());
+    len += packed.byteCount();
+    return this;
+  }
+
+  /** GS ( L function 69: prints NV graphics {@code key} at {@code scale} (1 or 2) in both directions. */
+  EscPosEncoder nvGraphicsPrint(String key, int scale) {
+    return raw(GS, '(', 'L', 6, 0, 48, 69, key.charAt(0), key.charAt(1), scale, scale);
+  }
+
+  /** GS ( L function 66: deletes NV graphics {@code key}. */
+  EscPosEncoder nvGraphicsDelete(String key) {
+    return raw(GS, '(', 'L', 4, 0, 48, 66, key.charAt(0), key.charAt(1));
+  }
+
+  // Packs into a buffer this encoder keeps, so repeated images (benchmarks, batches) reuse it
+  private EpsonRasterPacker.Packed pack(Bitmap bmp, boolean thresholded) {
+    scratch = EpsonRasterPacker.pack(bmp, thresholded ? 128 : EpsonRasterPacker.DITHER, scratch);
+    return scratch;
+  }
+}
@@ -0,0 +1,1061 @@
+package com.example.epson_printer_android;
+
+import android.graphics.Bitmap;
+
+import com.epson.epos2.Epos2Exception;
+import com.epson.epos2.printer.Printer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Typed form of one entry of the Dart command list.
+ *
+ * {@link #compile} parses the {@code List<Map>} from the MethodChannel once (type switch, alignment/
+ * barcode/font string mapping); {@link #apply} then only issues SDK calls. Strings may contain
+ * {@code {{name}}} placeholders which are bound from the job variables at apply time, which is what
+ * lets a template be registered once and printed many times.
+ */
+abstract class ReceiptCommand {
+
+  /** Per-job state handed to every command while the buffer is built. */
+  static final class Context {
+    final Map<String, Object> variables;
+    final EpsonBitmapCache imageCache; // may be null
+
+    // Image work done while building, reported back with the job result
+    int imagesDecoded;
+    int imageCacheHits;
+    // Filled by prepare() so apply() only touches the SDK buffer; a null value means decode failed
+    final Map<ReceiptCommand, EpsonBitmapCache.Entry> preparedImages = new java.util.IdentityHashMap<>();
+    long imageDecodeMs;
+    long imagePeakBytes;
+    // Set from the job settings ("encoder": "escpos"); the outcome is recorded in the summary
+    boolean escPos;
+    String encoderUsed = "sdk";
+    String escPosFallback;
+    long escPosBytes;
+    // Optimizer pass (settings.optimize, on by default)
+    boolean optimize = true;
+    int commandsEliminated;
+    int alignsRemoved;
+    int stylesRemoved;
+    int textsMerged;
+    long bytesSaved;
+    // Bytes the build put on the wire: exact for ESC/POS, estimated for SDK calls (see estimateBytes)
+    long wireBytes;
+    boolean wireBytesEstimated;
+    // Printable dots of the connected printer (0 = unknown); images are decoded to fit it
+    int printableWidth;
+    // Banded images (settings.imageBandHeight)
+    int imageBandHeight;
+    int imageBands;
+    // NV logos: registry and target of the connected printer (either may be null)
+    EpsonNvLogoRegistry nvLogos;
+    String printerTarget;
+    // settings.nvLogoForce: upload every NV logo in the job regardless of the registry
+    boolean nvForce;
+    // Uploads prepared for this job, and the ones actually placed in the buffer (recorded on success)
+    final Map<ReceiptCommand, NvLogo.Upload> nvUploads = new java.util.IdentityHashMap<>();
+    final Map<String, NvLogo.Upload> nvSent = new java.util.LinkedHashMap<>();
+
+    Context(Map<String, Object> variables, EpsonBitmapCache imageCache) {
+      this.variables = variables != null ? variables : Collections.emptyMap();
+      this.imageCache = imageCache;
+    }
+
+    Map<String, Object> summary() {
+      Map<String, Object> m = new HashMap<>();
+      m.put("imagesDecoded", imagesDecoded);
+      m.put("imageCacheHits", imageCacheHits);
+      m.put("imageDecodeMs", imageDecodeMs);
+      m.put("imagePeakBytes", imagePeakBytes);
+      m.put("encoder", encoderUsed);
+      if (optimize) {
+        m.put("commandsEliminated", commandsEliminated);
+        m.put("alignsRemoved", alignsRemoved);
+        m.put("stylesRemoved", stylesRemoved);
+        m.put("textsMerged", textsMerged);
+        m.put("bytesSaved", bytesSaved);
+      }
+      if (!nvSent.isEmpty()) m.put("nvLogosUploaded", new ArrayList<>(nvSent.keySet()));
+      if (imageBands > 0) m.put("imageBands", imageBands);
+      m.put("bytes", wireBytes);
+      m.put("bytesEstimated", wireBytesEstimated);
+      if (escPos) {
+        m.put("escposBytes", escPosBytes);
+        if (escPosFallback != null) m.put("escposFallback", escPosFallback);
+      }
+      return m;
+    }
+
+    /** Forgets what the last build put in the buffer when it is cleared and built again. */
+    void resetBuild() {
+      encoderUsed = "sdk";
+      escPosFallback = null;
+      escPosBytes = 0;
+      wireBytes = 0;
+      wireBytesEstimated = false;
+      nvSent.clear();
+    }
+
+    /** Called once the printer confirmed the job: the uploaded logos are now in its NV memory. */
+    void commitNvUploads() {
+      if (nvLogos == null) return;
+      for (NvLogo.Upload u : nvSent.values()) nvLogos.record(printerTarget, u.key, u.hash, u.width, u.height);
+    }
+  }
+
+  /**
+   * Does any work that does not need the printer (decoding images, ...). Runs before the command
+   * buffer is cleared, so it can overlap with the previous job still printing.
+   */
+  void prepare(Context ctx) {}
+
+  abstract void apply(Printer printer, Context ctx) throws Epos2Exception;
+
+  /** Appends the raw ESC/POS form of this command; commands without one keep the SDK path. */
+  void encode(EscPosEncoder out, Context ctx) throws EscPosEncoder.Unsupported {
+    throw new EscPosEncoder.Unsupported(getClass().getSimpleName());
+  }
+
+  /**
+   * Roughly what the SDK puts on the wire for this command (it does not report its buffer size).
+   * Images count uncompressed, so this is an upper bound when the SDK compresses them.
+   */
+  long estimateBytes(Context ctx) {
+    return 8;
+  }
+
+  /**
+   * Adds a whole receipt to the printer's buffer: as one {@code addCommand} when the job asked for
+   * ESC/POS and every command can be encoded, otherwise command by command through the SDK.
+   */
+  static void applyAll(List<ReceiptCommand> commands, Printer printer, Context ctx) throws Epos2Exception {
+    if (ctx.escPos) {
+      EscPosEncoder out = new EscPosEncoder();
+      try {
+        for (ReceiptCommand cmd : commands) cmd.encode(out, ctx);
+        printer.addCommand(out.toByteArray());
+        // A batch can mix encoded receipts with ones that fell back
+        ctx.encoderUsed = ctx.escPosFallback == null ? "escpos" : "mixed";
+        ctx.escPosBytes += out.size();
+        ctx.wireBytes += out.size();
+        return;
+      } catch (EscPosEncoder.Unsupported u) {
+        ctx.escPosFallback = u.getMessage();
+        ctx.encoderUsed = ctx.escPosBytes > 0 ? "mixed" : "sdk";
+      }
+    }
+    for (ReceiptCommand cmd : commands) {
+      cmd.apply(printer, ctx);
+      ctx.wireBytes += cmd.estimateBytes(ctx);
+    }
+    ctx.wireBytesEstimated = true;
+  }
+
+  static int escPosAlign(int sdkAlign) {
+    if (sdkAlign == Printer.ALIGN_CENTER) return 1;
+    if (sdkAlign == Printer.ALIGN_RIGHT) return 2;
+    return 0;
+  }
+
+  /** Collects the names of the placeholders this command reads. */
+  void collectVariables(Set<String> out) {}
+
+  // --- Compilation ---
+
+  static List<ReceiptCommand> compile(List<Object> commands) {
+    List<ReceiptCommand> out = new ArrayList<>(commands.size());
+    for (Object item : commands) {
+      if (!(item instanceof Map)) continue;
+      @SuppressWarnings("unchecked")
+      Map<String, Object> cmd = (Map<String, Object>) item;
+      String type = String.valueOf(cmd.get("type"));
+      @SuppressWarnings("unchecked")
+      Map<String, Object> params = (Map<String, Object>) cmd.get("parameters");
+      if (params == null) params = new HashMap<>();
+
+      ReceiptCommand compiled = compileOne(type, params);
+      if (compiled != null) out.add(compiled);
+    }
+    return out;
+  }
+
+  static Set<String> variablesOf(List<ReceiptCommand> commands) {
+    Set<String> names = new LinkedHashSet<>();
+    for (ReceiptCommand c : commands) c.collectVariables(names);
+    return names;
+  }
+
+  private static ReceiptCommand compileOne(String type, Map<String, Object> params) {
+    switch (type) {
+      case "text":
+      case "addText":
+        return new Text(Bindable.of((String) params.get("data")), parseAlign((String) params.get("align")));
+      case "textStyle":
+        return TextStyle.parse(params);
+      case "image":
+        return Image.parse(params);
+      case "feed": {
+        int line = getInt(params.get("line"), getInt(params.get("lines"), 1));
+        return new Feed(Math.max(1, line));
+      }
+      case "cut":
+        return new Cut(parseCut((String) params.get("cutType")));
+      case "feedPosition":
+        return new FeedPosition(parseFeedPosition((String) params.get("position")));
+      case "barcode":
+        return Barcode.parse(params);
+      case "qrCode":
+        return QrCode.parse(params);
+      case "pulse":
+        return Pulse.parse(params);
+      case "beep":
+        return Beep.parse(params);
+      case "nvLogo":
+        return NvLogo.parse(params, true);
+      // layout only applies to label/black-mark paper and is not supported yet
+      default:
+        // Ignore unknown commands for now
+        return null;
+    }
+  }
+
+  // Returns -1 when no alignment was requested
+  static int parseAlign(String align) {
+    if (align == null) return -1;
+    if (align.equalsIgnoreCase("center")) return Printer.ALIGN_CENTER;
+    if (align.equalsIgnoreCase("right")) return Printer.ALIGN_RIGHT;
+    return Printer.ALIGN_LEFT;
+  }
+
+  private static int parseCut(String cutType) {
+    if ("no_feed".equalsIgnoreCase(cutType)) return Printer.CUT_NO_FEED;
+    if ("reserve".equalsIgnoreCase(cutType)) return Printer.CUT_RESERVE;
+    if ("full_cut_feed".equalsIgnoreCase(cutType)) return Printer.FULL_CUT_FEED;
+    if ("full_cut_no_feed".equalsIgnoreCase(cutType)) return Printer.FULL_CUT_NO_FEED;
+    return Printer.CUT_FEED;
+  }
+
+  private static int parseFeedPosition(String position) {
+    if ("peeling".equalsIgnoreCase(position)) return Printer.FEED_PEELING;
+    if ("current_tof".equalsIgnoreCase(position)) return Printer.FEED_CURRENT_TOF;
+    return Printer.FEED_CUTTING;
+  }
+
+  static int getInt(Object obj, int def) {
+    if (obj instanceof Number) return ((Number) obj).intValue();
+    try { return Integer.parseInt(String.valueOf(obj)); } catch (Exception ignored) {}
+    return def;
+  }
+
+  static boolean getBool(Object obj) {
+    return obj != null && Boolean.parseBoolean(String.valueOf(obj));
+  }
+
+  // --- Variable binding ---
+
+  /** A string with optional {{name}} placeholders, split once into literal and variable parts. */
+  static final class Bindable {
+    private static final Bindable NULL = new Bindable(null, null);
+
+    private final String constant;
+    private final List<String> parts; // even index: literal, odd index: variable name
+
+    private Bindable(String constant, List<String> parts) {
+      this.constant = constant;
+      this.parts = parts;
+    }
+
+    static Bindable of(String raw) {
+      if (raw == null) return NULL;
+      int open = raw.indexOf("{{");
+      if (open < 0) return new Bindable(raw, null);
+      List<String> parts = new ArrayList<>();
+      int pos = 0;
+      while (open >= 0) {
+        int close = raw.indexOf("}}", open + 2);
+        if (close < 0) break;
+        parts.add(raw.substring(pos, open));
+        parts.add(raw.substring(open + 2, close).trim());
+        pos = close + 2;
+        open = raw.indexOf("{{", pos);
+      }
+      parts.add(raw.substring(pos));
+      return new Bindable(null, parts);
+    }
+
+    String bind(Context ctx) {
+      if (parts == null) return constant;
+      StringBuilder sb = new StringBuilder();
+      for (int i = 0; i < parts.size(); i++) {
+        String p = parts.get(i);
+        if ((i & 1) == 0) {
+          sb.append(p);
+        } else {
+          Object v = ctx.variables.get(p);
+          if (v == null && !ctx.variables.containsKey(p)) {
+            throw new IllegalArgumentException("Missing template variable: " + p);
+          }
+          sb.append(v != null ? String.valueOf(v) : "");
+        }
+      }
+      return sb.toString();
+    }
+
+    boolean isEmpty(Context ctx) {
+      String s = bind(ctx);
+      return s == null || s.isEmpty();
+    }
+
+    /** True when the string is empty whatever the variables are. */
+    boolean isAlwaysEmpty() {
+      return parts == null && (constant == null || constant.isEmpty());
+    }
+
+    /** {@code a} followed by {@code b}; binding the result equals binding both and concatenating. */
+    static Bindable concat(Bindable a, Bindable b) {
+      if (a.isAlwaysEmpty()) return b;
+      if (b.isAlwaysEmpty()) return a;
+      if (a.parts == null && b.parts == null) return new Bindable(a.constant + b.constant, null);
+      List<String> parts = new ArrayList<>(a.parts != null ? a.parts : Collections.singletonList(a.constant));
+      List<String> tail = b.parts != null ? b.parts : Collections.singletonList(b.constant);
+      // Both lists start and end with a literal, so the seam joins two literals
+      parts.set(parts.size() - 1, parts.get(parts.size() - 1) + tail.get(0));
+      parts.addAll(tail.subList(1, tail.size()));
+      return new Bindable(null, parts);
+    }
+
+    void collect(Set<String> out) {
+      if (parts == null) return;
+      for (int i = 1; i < parts.size(); i += 2) out.add(parts.get(i));
+    }
+  }
+
+  // --- Command types ---
+
+  static final class Text extends ReceiptCommand {
+    final Bindable data;
+    final int align;
+
+    Text(Bindable data, int align) {
+      this.data = data;
+      this.align = align;
+    }
+
+    @Override void apply(Printer printer, Context ctx) throws Epos2Exception {
+      // Set alignment if specified
+      if (align >= 0) {
+        try { printer.addTextAlign(align); } catch (Exception ignored) {}
+      }
+      String s = data.bind(ctx);
+      if (s != null && !s.isEmpty()) {
+        printer.addText(s);
+      }
+    }
+
+    @Override void encode(EscPosEncoder out, Context ctx) throws EscPosEncoder.Unsupported {
+      if (align >= 0) out.align(escPosAlign(align));
+      String s = data.bind(ctx);
+      if (s != null && !s.isEmpty()) out.text(s);
+    }
+
+    @Override long estimateBytes(Context ctx) {
+      String s = data.bind(ctx);
+      return (align >= 0 ? 3 : 0) + (s != null ? s.length() : 0);
+    }
+
+    @Override void collectVariables(Set<String> out) { data.collect(out); }
+  }
+
+  static final class TextStyle extends ReceiptCommand {
+    final int reverse;
+    final int underline;
+    final int bold;
+    final int color;
+
+    TextStyle(int reverse, int underline, int bold, int color) {
+      this.reverse = reverse;
+      this.underline = underline;
+      this.bold = bold;
+      this.color = color;
+    }
+
+    static TextStyle parse(Map<String, Object> params) {
+      boolean reverse = "true".equals(String.valueOf(params.get("reverse")));
+      boolean underline = "true".equals(String.valueOf(params.get("underline")));
+      boolean bold = "true".equals(String.valueOf(params.get("bold")));
+
+      // Parse color (default to first color)
+      int color = Printer.COLOR_1;
+      String colorStr = (String) params.get("color");
+      if ("none".equals(colorStr)) {
+        color = Printer.COLOR_NONE;
+      } else if ("2".equals(colorStr)) {
+        color = Printer.COLOR_2;
+      } else if ("3".equals(colorStr)) {
+        color = Printer.COLOR_3;
+      } else if ("4".equals(colorStr)) {
+        color = Printer.COLOR_4;
+      }
+      return new TextStyle(
+        reverse ? Printer.TRUE : Printer.FALSE,
+        underline ? Printer.TRUE : Printer.FALSE,
+        bold ? Printer.TRUE : Printer.FALSE,
+        color
+      );
+    }
+
+    @Override void apply(Printer printer, Context ctx) {
+      try {
+        printer.addTextStyle(reverse, underline, bold, color);
+      } catch (Exception ignored) {}
+    }
+
+    @Override void encode(EscPosEncoder out, Context ctx) throws EscPosEncoder.Unsupported {
+      // Second colours (ESC r) only exist on two-colour models
+      if (color != Printer.COLOR_1) throw new EscPosEncoder.Unsupported("text color");
+      out.style(reverse == Printer.TRUE, underline == Printer.TRUE, bold == Printer.TRUE);
+    }
+  }
+
+  static final class Feed extends ReceiptCommand {
+    final int lines;
+
+    Feed(int lines) { this.lines = lines; }
+
+    @Override void apply(Printer printer, Context ctx) throws Epos2Exception {
+      printer.addFeedLine(lines);
+    }
+
+    @Override void encode(EscPosEncoder out, Context ctx) {
+      out.feedLines(lines);
+    }
+  }
+
+  static final class Cut extends ReceiptCommand {
+    final int cutType;
+
+    Cut(int cutType) { this.cutType = cutType; }
+
+    @Override void apply(Printer printer, Context ctx) throws Epos2Exception {
+      printer.addCut(cutType);
+    }
+
+    @Override void encode(EscPosEncoder out, Context ctx) throws EscPosEncoder.Unsupported {
+      if (cutType == Printer.CUT_FEED) out.cut(false, true);
+      else if (cutType == Printer.CUT_NO_FEED) out.cut(false, false);
+      else if (cutType == Printer.FULL_CUT_FEED) out.cut(true, true);
+      else if (cutType == Printer.FULL_CUT_NO_FEED) out.cut(true, false);
+      else throw new EscPosEncoder.Unsupported("reserved cut");
+    }
+  }
+
+  static final class FeedPosition extends ReceiptCommand {
+    final int position;
+
+    FeedPosition(int position) { this.position = position; }
+
+    @Override void apply(Printer printer, Context ctx) throws Epos2Exception {
+      printer.addFeedPosition(position);
+    }
+  }
+
+  /** Native QR symbol: the printer renders it, so only the payload crosses the wire. */
+  static final class QrCode extends ReceiptCommand {
+    final Bindable data;
+    final int type;
+    final int level;
+    final int moduleSize;
+    final int align;
+
+    QrCode(Bindable data, int type, int level, int moduleSize, int align) {
+      this.data = data;
+      this.type = type;
+      this.level = level;
+      this.moduleSize = moduleSize;
+      this.align = align;
+    }
+
+    static QrCode parse(Map<String, Object> params) {
+      String typeStr = (String) params.get("type");
+      String levelStr = (String) params.get("level");
+
+      int type = Printer.SYMBOL_QRCODE_MODEL_2; // Default
+      if ("model1".equalsIgnoreCase(typeStr)) {
+        type = Printer.SYMBOL_QRCODE_MODEL_1;
+      } else if ("micro".equalsIgnoreCase(typeStr)) {
+        type = Printer.SYMBOL_QRCODE_MICRO;
+      }
+
+      int level = Printer.LEVEL_M; // Default
+      if ("L".equalsIgnoreCase(levelStr)) {
+        level = Printer.LEVEL_L;
+      } else if ("Q".equalsIgnoreCase(levelStr)) {
+        level = Printer.LEVEL_Q;
+      } else if ("H".equalsIgnoreCase(levelStr)) {
+        level = Printer.LEVEL_H;
+      }
+
+      // Module (cell) size in dots
+      int size = getInt(params.get("size"), 3);
+      if (size < 1 || size > 16) size = 3;
+      return new QrCode(Bindable.of((String) params.get("data")), type, level, size, parseAlign((String) params.get("align")));
+    }
+
+    @Override void apply(Printer printer, Context ctx) throws Epos2Exception {
+      String s = data.bind(ctx);
+      if (s == null || s.isEmpty()) return;
+      if (align >= 0) printer.addTextAlign(align);
+      printer.addSymbol(s, type, level, moduleSize, moduleSize, 0);
+    }
+
+    @Override void encode(EscPosEncoder out, Context ctx) throws EscPosEncoder.Unsupported {
+      String s = data.bind(ctx);
+      if (s == null || s.isEmpty()) return;
+      if (type == Printer.SYMBOL_QRCODE_MICRO) throw new EscPosEncoder.Unsupported("micro QR");
+      int ecc;
+      if (level == Printer.LEVEL_L) ecc = 0;
+      else if (level == Printer.LEVEL_Q) ecc = 2;
+      else if (level == Printer.LEVEL_H) ecc = 3;
+      else ecc = 1;
+      if (align >= 0) out.align(escPosAlign(align));
+      out.qrCode(s, type == Printer.SYMBOL_QRCODE_MODEL_1 ? 1 : 2, ecc, moduleSize);
+    }
+
+    @Override long estimateBytes(Context ctx) {
+      String s = data.bind(ctx);
+      return 36 + (s != null ? s.length() : 0);
+    }
+
+    @Override void collectVariables(Set<String> out) { data.collect(out); }
+  }
+
+  /** Drawer kick issued as part of the receipt, so the drawer opens when the receipt prints. */
+  static final class Pulse extends ReceiptCommand {
+    final int drawer;
+    final int time;
+
+    Pulse(int drawer, int time) {
+      this.drawer = drawer;
+      this.time = time;
+    }
+
+    static Pulse parse(Map<String, Object> params) {
+      String drawerStr = String.valueOf(params.get("drawer"));
+      int drawer = "5pin".equalsIgnoreCase(drawerStr) || "5".equals(drawerStr) ? Printer.DRAWER_5PIN : Printer.DRAWER_2PIN;
+      int time;
+      switch (getInt(params.get("time"), 100)) {
+        case 200: time = Printer.PULSE_200; break;
+        case 300: time = Printer.PULSE_300; break;
+        case 400: time = Printer.PULSE_400; break;
+        case 500: time = Printer.PULSE_500; break;
+        default: time = Printer.PULSE_100; break;
+      }
+      return new Pulse(drawer, time);
+    }
+
+    @Override void apply(Printer printer, Context ctx) throws Epos2Exception {
+      printer.addPulse(drawer, time);
+    }
+
+    @Override void encode(EscPosEncoder out, Context ctx) {
+      int ms = 100;
+      if (time == Printer.PULSE_200) ms = 200;
+      else if (time == Printer.PULSE_300) ms = 300;
+      else if (time == Printer.PULSE_400) ms = 400;
+      else if (time == Printer.PULSE_500) ms = 500;
+      out.pulse(drawer == Printer.DRAWER_5PIN ? 1 : 0, ms);
+    }
+  }
+
+  /** Buzzer pattern; only models with a buzzer (or an external one) make a sound. */
+  static final class Beep extends ReceiptCommand {
+    final int pattern;
+    final int repeat;
+
+    Beep(int pattern, int repeat) {
+      this.pattern = pattern;
+      this.repeat = repeat;
+    }
+
+    static Beep parse(Map<String, Object> params) {
+      String p = params.get("pattern") != null ? String.valueOf(params.get("pattern")) : "A";
+      int pattern;
+      switch (p.toUpperCase()) {
+        case "B": pattern = Printer.PATTERN_B; break;
+        case "C": pattern = Printer.PATTERN_C; break;
+        case "D": pattern = Printer.PATTERN_D; break;
+        case "E": pattern = Printer.PATTERN_E; break;
+        case "ERROR": pattern = Printer.PATTERN_ERROR; break;
+        case "PAPER_EMPTY": pattern = Printer.PATTERN_PAPER_EMPTY; break;
+        default: pattern = Printer.PATTERN_A; break;
+      }
+      int repeat = getInt(params.get("repeat"), 1);
+      if (repeat < 0 || repeat > 255) repeat = 1;
+      return new Beep(pattern, repeat);
+    }
+
+    @Override void apply(Printer printer, Context ctx) throws Epos2Exception {
+      printer.addSound(pattern, repeat, Printer.PARAM_DEFAULT);
+    }
+    // No encode(): the buzzer command differs between models, so receipts with a beep use the SDK path
+  }
+
+  /**
+   * Prints a logo stored in the printer's NV graphics memory under a two-character key code. With
+   * an {@code imagePath} the image is uploaded first whenever the registry does not already record
+   * that exact raster for this printer, so the logo only crosses the wire when it changes.
+   */
+  static final class NvLogo extends ReceiptCommand {
+    /** A GS 8 L define command ready to go into the buffer. */
+    static final class Upload {
+      final String key;
+      final byte[] define;
+      final String hash;
+      final int width;
+      final int height;
+
+      Upload(String key, byte[] define, String hash, int width, int height) {
+        this.key = key;
+        this.define = define;
+        this.hash = hash;
+        this.width = width;
+        this.height = height;
+      }
+    }
+
+    final String key;
+    final Image source; // null when the logo is only printed
+    final int scale;
+    final int align;
+    final boolean print;
+    final boolean force;
+
+    NvLogo(String key, Image source, int scale, int align, boolean print, boolean force) {
+      this.key = key;
+      this.source = source;
+      this.scale = scale;
+      this.align = align;
+      this.print = print;
+      this.force = force;
+    }
+
+    static NvLogo parse(Map<String, Object> params, boolean print) {
+      String key = params.get("key") != null ? String.valueOf(params.get("key")) : null;
+      String path = (String) params.get("imagePath");
+      Image source = null;
+      if (path != null && !path.isEmpty()) {
+        int threshold = getInt(params.get("bwThreshold"), -1);
+        source = new Image(Bindable.of(path), false, threshold >= 0, false,
+            getInt(params.get("targetWidth"), -1), getInt(params.get("printerWidth"), 0), threshold, 0);
+      }
+      int scale = getInt(params.get("scale"), 1) == 2 ? 2 : 1;
+      return new NvLogo(key, source, scale, parseAlign((String) params.get("align")), print, getBool(params.get("force")));
+    }
+
+    @Override void prepare(Context ctx) {
+      if (!EpsonNvLogoRegistry.isValidKey(key)) throw new IllegalArgumentException("Invalid NV logo key: " + key);
+      if (source == null || ctx.nvUploads.containsKey(this)) return;
+      source.prepare(ctx);
+      EpsonBitmapCache.Entry prepared = ctx.preparedImages.get(source);
+      if (prepared == null) {
+        // Print whatever the printer already holds rather than failing the receipt
+        android.util.Log.w("EpsonPrinter", "NV logo " + key + ": image could not be decoded, not uploading");
+        return;
+      }
+      byte[] define;
+      try {
+        define = new EscPosEncoder(32 + (prepared.bitmap.getWidth() + 7) / 8 * prepared.bitmap.getHeight())
+            .nvGraphicsDefine(key, prepared.packed != null ? prepared.packed
+                : EpsonRasterPacker.pack(prepared.bitmap, prepared.thresholded ? 128 : EpsonRasterPacker.DITHER, null))
+            .toByteArray();
+      } catch (EscPosEncoder.Unsupported u) {
+        throw new IllegalArgumentException("NV logo " + key + ": " + u.getMessage());
+      }
+      String hash = sha1(define);
+      for (Upload pending : ctx.nvUploads.values()) {
+        if (pending.key.equals(key) && pending.hash.equals(hash)) return; // already uploaded earlier in this job
+      }
+      if (!force && !ctx.nvForce && ctx.nvLogos != null && hash.equals(ctx.nvLogos.hashOf(ctx.printerTarget, key))) return;
+      ctx.nvUploads.put(this, new Upload(key, define, hash, prepared.bitmap.getWidth(), prepared.bitmap.getHeight()));
+    }
+
+    @Override void apply(Printer printer, Context ctx) throws Epos2Exception {
+      Upload upload = ctx.nvUploads.get(this);
+      if (upload != null) {
+        printer.addCommand(upload.define);
+        ctx.nvSent.put(key, upload);
+      }
+      if (!print) return;
+      if (align >= 0) printer.addTextAlign(align);
+      if (scale == 1) {
+        printer.addLogo(key.charAt(0), key.charAt(1));
+      } else {
+        printer.addCommand(new EscPosEncoder(16).nvGraphicsPrint(key, scale).toByteArray());
+      }
+    }
+
+    @Override void encode(EscPosEncoder out, Context ctx) {
+      Upload upload = ctx.nvUploads.get(this);
+      if (upload != null) {
+        out.raw(upload.define);
+        ctx.nvSent.put(key, upload);
+      }
+      if (!print) return;
+      if (align >= 0) out.align(escPosAlign(align));
+      out.nvGraphicsPrint(key, scale);
+    }
+
+    @Override long estimateBytes(Context ctx) {
+      Upload upload = ctx.nvUploads.get(this);
+      return (upload != null ? upload.define.length : 0) + (print ? 14 : 0);
+    }
+
+    @Override void collectVariables(Set<String> out) {
+      if (source != null) source.collectVariables(out);
+    }
+
+    private static String sha1(byte[] data) {
+      try {
+        byte[] d = java.security.MessageDigest.getInstance("SHA-1").digest(data);
+        StringBuilder sb = new StringBuilder(d.length * 2);
+        for (byte b : d) sb.append(String.format("%02x", b & 0xFF));
+        return sb.toString();
+      } catch (java.security.NoSuchAlgorithmException e) {
+        // Every Android runtime ships SHA-1; a content hash of any kind would do
+        return Integer.toHexString(java.util.Arrays.hashCode(data)) + "-" + data.length;
+      }
+    }
+  }
+
+  static final class Barcode extends ReceiptCommand {
+    final Bindable data;
+    final int type;
+    final int hri;
+    final int font;
+    final int width;
+    final int height;
+
+    Barcode(Bindable data, int type, int hri, int font, int width, int height) {
+      this.data = data;
+      this.type = type;
+      this.hri = hri;
+      this.font = font;
+      this.width = width;
+      this.height = height;
+    }
+
+    static Barcode parse(Map<String, Object> params) {
+      String typeStr = (String) params.get("type");
+      String hriStr = (String) params.get("hri");
+      String fontStr = (String) params.get("font");
+      Object widthObj = params.get("width");
+      Object heightObj = params.get("height");
+
+      // Map barcode type
+      int barcodeType = Printer.BARCODE_CODE128_AUTO; // Default
+      if ("CODE128_AUTO".equals(typeStr)) {
+        barcodeType = Printer.BARCODE_CODE128_AUTO;
+      } else if ("CODE128".equals(typeStr)) {
+        barcodeType = Printer.BARCODE_CODE128;
+      } else if ("UPC_A".equals(typeStr)) {
+        barcodeType = Printer.BARCODE_UPC_A;
+      } else if ("UPC_E".equals(typeStr)) {
+        barcodeType = Printer.BARCODE_UPC_E;
+      } else if ("EAN13".equals(typeStr)) {
+        barcodeType = Printer.BARCODE_EAN13;
+      } else if ("EAN8".equals(typeStr)) {
+        barcodeType = Printer.BARCODE_EAN8;
+      } else if ("CODE39".equals(typeStr)) {
+        barcodeType = Printer.BARCODE_CODE39;
+      }
+
+      // Map HRI position
+      int hri = Printer.HRI_NONE; // Default
+      if ("below".equals(hriStr)) {
+        hri = Printer.HRI_BELOW;
+      } else if ("above".equals(hriStr)) {
+        hri = Printer.HRI_ABOVE;
+      } else if ("both".equals(hriStr)) {
+        hri = Printer.HRI_BOTH;
+      }
+
+      // Map font
+      int font = Printer.FONT_A; // Default
+      if ("B".equals(fontStr)) {
+        font = Printer.FONT_B;
+      } else if ("C".equals(fontStr)) {
+        font = Printer.FONT_C;
+      } else if ("D".equals(fontStr)) {
+        font = Printer.FONT_D;
+      } else if ("E".equals(fontStr)) {
+        font = Printer.FONT_E;
+      }
+
+      // Parse width and height
+      int width = 2; // Default
+      if (widthObj instanceof Number) {
+        width = ((Number) widthObj).intValue();
+        if (width < 2 || width > 6) width = 2;
+      }
+
+      int height = 60; // Default
+      if (heightObj instanceof Number) {
+        height = ((Number) heightObj).intValue();
+        if (height < 1 || height > 255) height = 60;
+      }
+      return new Barcode(Bindable.of((String) params.get("data")), barcodeType, hri, font, width, height);
+    }
+
+    @Override void apply(Printer printer, Context ctx) {
+      String s = data.bind(ctx);
+      if (s == null || s.isEmpty()) {
+        return; // Skip if no data
+      }
+      try {
+        printer.addBarcode(s, type, hri, font, width, height);
+      } catch (Exception ignored) {}
+    }
+
+    @Override void encode(EscPosEncoder out, Context ctx) throws EscPosEncoder.Unsupported {
+      String s = data.bind(ctx);
+      if (s == null || s.isEmpty()) return;
+      int m;
+      if (type == Printer.BARCODE_UPC_A) m = 65;
+      else if (type == Printer.BARCODE_UPC_E) m = 66;
+      else if (type == Printer.BARCODE_EAN13) m = 67;
+      else if (type == Printer.BARCODE_EAN8) m = 68;
+      else if (type == Printer.BARCODE_CODE39) m = 69;
+      else if (type == Printer.BARCODE_CODE128) m = 73;
+      else if (type == Printer.BARCODE_CODE128_AUTO) {
+        // The SDK picks code sets itself; code set B covers the printable ASCII we accept
+        m = 73;
+        if (!s.startsWith("{")) s = "{B" + s;
+      } else throw new EscPosEncoder.Unsupported("barcode type");
+      int escHri;
+      if (hri == Printer.HRI_ABOVE) escHri = 1;
+      else if (hri == Printer.HRI_BELOW) escHri = 2;
+      else if (hri == Printer.HRI_BOTH) escHri = 3;
+      else escHri = 0;
+      if (font != Printer.FONT_A && font != Printer.FONT_B) throw new EscPosEncoder.Unsupported("barcode HRI font");
+      out.barcode(m, s, escHri, font == Printer.FONT_B ? 1 : 0, width, height);
+    }
+
+    @Override long estimateBytes(Context ctx) {
+      String s = data.bind(ctx);
+      return 16 + (s != null ? s.length() : 0);
+    }
+
+    @Override void collectVariables(Set<String> out) { data.collect(out); }
+  }
+
+  static final class Image extends ReceiptCommand {
+    final Bindable imagePath;
+    final boolean debug;
+    final boolean advancedProcessing;
+    final boolean center;
+    final int targetWidth; // -1 keeps the source width
+    final int printerWidth;
+    final int bwThreshold; // -1 disables thresholding
+    final int bandHeight; // -1 uses the job's imageBandHeight, 0 sends the image in one piece
+
+    Image(Bindable imagePath, boolean debug, boolean advancedProcessing, boolean center,
+          int targetWidth, int printerWidth, int bwThreshold, int bandHeight) {
+      this.imagePath = imagePath;
+      this.debug = debug;
+      this.advancedProcessing = advancedProcessing;
+      this.center = center;
+      this.targetWidth = targetWidth;
+      this.printerWidth = printerWidth;
+      this.bwThreshold = bwThreshold;
+      this.bandHeight = bandHeight;
+    }
+
+    static Image parse(Map<String, Object> params) {
+      // Parameters: imagePath plus optional width & flags
+      boolean debug = false; // debug markers suppressed unless explicitly enabled in params
+      try { debug = getBool(params.get("debug")); } catch (Exception ignored) {}
+      boolean advancedProcessing = false;
+      try { advancedProcessing = getBool(params.get("advancedProcessing")); } catch (Exception ignored) {}
+      Object al = params.get("align");
+      boolean center = al != null && String.valueOf(al).equalsIgnoreCase("center");
+      int bwThreshold = -1;
+      try { Object th = params.get("bwThreshold"); if (th != null) bwThreshold = Integer.parseInt(String.valueOf(th)); } catch (Exception ignored) {}
+      return new Image(
+        Bindable.of((String) params.get("imagePath")),
+        debug,
+        advancedProcessing,
+        center,
+        getInt(params.get("targetWidth"), -1),
+        getInt(params.get("printerWidth"), 0),
+        bwThreshold,
+        getInt(params.get("bandHeight"), -1)
+      );
+    }
+
+    @Override void prepare(Context ctx) {
+      String path = imagePath.bind(ctx);
+      if (path == null || path.isEmpty()) return;
+      int paperDots = printerWidth(ctx);
+      String key = ctx.imageCache != null ? EpsonBitmapCache.key(path, targetWidth, thresholdOrOff(), paperDots) : null;
+      EpsonBitmapCache.Entry prepared = ctx.imageCache != null ? ctx.imageCache.get(key) : null;
+      if (prepared != null) {
+        ctx.imageCacheHits++;
+      } else {
+        prepared = decode(path, paperDots, ctx);
+        if (prepared != null && ctx.imageCache != null) ctx.imageCache.put(key, prepared);
+      }
+      ctx.preparedImages.put(this, prepared);
+    }
+
+    @Override void apply(Printer printer, Context ctx) throws Epos2Exception {
+      if (!ctx.preparedImages.containsKey(this)) prepare(ctx);
+      EpsonBitmapCache.Entry prepared = ctx.preparedImages.get(this);
+      if (prepared == null) {
+        if (debug && !imagePath.isEmpty(ctx)) {
+          try { printer.addText("[IMG_DECODE_FAILED]\n"); } catch (Exception ignored) {}
+        }
+        return;
+      }
+
+      Bitmap bmp = prepared.bitmap;
+      int width = bmp.getWidth();
+      int height = bmp.getHeight();
+      if (debug) { try { printer.addText("[IMG_START w="+width+" h="+height+"]\n"); } catch (Exception ignored) {} }
+      if (center) { try { printer.addTextAlign(Printer.ALIGN_CENTER); } catch (Exception ignored) {} }
+      if (debug && prepared.thresholded) { try { printer.addText("[IMG_THRESH "+String.format("%.2f",prepared.blackRatio)+"]\n"); } catch (Exception ignored) {} }
+      int color = Printer.PARAM_DEFAULT;
+      int mode = Printer.MODE_MONO;
+      int halftone = Printer.HALFTONE_DITHER;
+      double brightness = 1.0;
+      int compress = Printer.COMPRESS_AUTO;
+      int band = bandRows(ctx, height);
+      if (band > 0) {
+        // One raster command per band, all in the job's single send: a printer only starts on a
+        // raster command once it holds all of it, so it can print band 1 while later bands are
+        // still arriving instead of waiting for the whole image. The SDK allows one sendData in
+        // flight per printer, so the bands cannot be sent separately while earlier ones print.
+        for (int y = 0; y < height; y += band) {
+          printer.addImage(bmp, 0, y, width, Math.min(band, height - y), color, mode, halftone, brightness, compress);
+          ctx.imageBands++;
+        }
+      } else {
+        // Decoded at the connection's printable width, so a failure here is a real error
+        printer.addImage(bmp, 0, 0, width, height, color, mode, halftone, brightness, compress);
+      }
+      if (center) { try { printer.addTextAlign(Printer.ALIGN_LEFT); } catch (Exception ignored) {} }
+      if (debug) { try { printer.addText("[IMG_END w="+width+" h="+height+"]\n"); } catch (Exception ignored) {} }
+    }
+
+    @Override void encode(EscPosEncoder out, Context ctx) throws EscPosEncoder.Unsupported {
+      if (!ctx.preparedImages.containsKey(this)) prepare(ctx);
+      EpsonBitmapCache.Entry prepared = ctx.preparedImages.get(this);
+      if (prepared == null) {
+        if (debug && !imagePath.isEmpty(ctx)) out.text("[IMG_DECODE_FAILED]\n");
+        return;
+      }
+      Bitmap bmp = prepared.bitmap;
+      if (debug) out.text("[IMG_START w=" + bmp.getWidth() + " h=" + bmp.getHeight() + "]\n");
+      if (center) out.align(1);
+      int band = bandRows(ctx, bmp.getHeight());
+      if (band > 0) ctx.imageBands += (bmp.getHeight() + band - 1) / band;
+      int blockRows = band > 0 ? band : EscPosEncoder.RASTER_BLOCK_ROWS;
+      if (prepared.packed != null) {
+        out.raster(prepared.packed, blockRows);
+      } else {
+        out.raster(bmp, prepared.thresholded, blockRows);
+      }
+      if (center) out.align(0);
+      if (debug) out.text("[IMG_END w=" + bmp.getWidth() + " h=" + bmp.getHeight() + "]\n");
+    }
+
+    @Override long estimateBytes(Context ctx) {
+      EpsonBitmapCache.Entry prepared = ctx.preparedImages.get(this);
+      if (prepared == null) return 0;
+      int h = prepared.bitmap.getHeight();
+      int band = bandRows(ctx, h);
+      int blocks = band > 0 ? (h + band - 1) / band : 1;
+      return (long) (prepared.bitmap.getWidth() + 7) / 8 * h + 8L * blocks;
+    }
+
+    // An explicit printerWidth wins; otherwise the width resolved for the connection
+    private int printerWidth(Context ctx) {
+      return printerWidth > 0 ? printerWidth : ctx.printableWidth;
+    }
+
+    // Rows per band, or 0 when the image goes out as one raster. Multiples of 8 keep the halftone
+    // pattern continuous across band boundaries.
+    private int bandRows(Context ctx, int height) {
+      int band = bandHeight >= 0 ? bandHeight : ctx.imageBandHeight;
+      if (band <= 0) return 0;
+      band = Math.max(8, band - band % 8);
+      return band < height ? band : 0;
+    }
+
+    // Threshold only participates in the output (and the cache key) when advanced processing is on
+    private int thresholdOrOff() {
+      return advancedProcessing && bwThreshold >= 0 && bwThreshold <= 255 ? bwThreshold : -1;
+    }
+
+    // Decode at print width and optionally threshold; the result is what addImage receives
+    private EpsonBitmapCache.Entry decode(String path, int paperDots, Context ctx) {
+      long t0 = android.os.SystemClock.elapsedRealtime();
+      EpsonImageDecoder.Decoded decoded = EpsonImageDecoder.decode(path, targetWidth, paperDots);
+      if (decoded == null) {
+        // Check if file exists
+        java.io.File imageFile = new java.io.File(path);
+        android.util.Log.w("EpsonPrinter", "Failed to decode image " + path + " (exists: " + imageFile.exists()
+            + ", canRead: " + imageFile.canRead() + ", size: " + imageFile.length() + ")");
+        return null;
+      }
+      Bitmap bmp = decoded.bitmap;
+      int width = bmp.getWidth();
+      int height = bmp.getHeight();
+      long peak = decoded.peakBytes;
+      EpsonBitmapCache.Entry entry = new EpsonBitmapCache.Entry(bmp, false, 0);
+      // Advanced processing: optional threshold + histogram (lightweight)
+      int threshold = thresholdOrOff();
+      if (threshold >= 0) {
+        try {
+          // Rows are packed in parallel; the bitmap is only rewritten if the result is usable
+          EpsonRasterPacker.Packed packed = EpsonRasterPacker.pack(bmp, threshold, null);
+          double ratio = (double) packed.blackPixels / ((double) width * height);
+          boolean collapsed = ratio > 0.98 || ratio < 0.02;
+          if (!collapsed) {
+            Bitmap target = bmp.isMutable() ? bmp : bmp.copy(Bitmap.Config.RGB_565, true);
+            if (target != null) {
+              try {
+                EpsonRasterPacker.unpackInto(packed, target);
+              } catch (Throwable t) {
+                // Keep the source: entry still points at it and is cached below
+                if (target != bmp) target.recycle();
+                throw t;
+              }
+              if (target != bmp) {
+                peak = Math.max(peak, (long) bmp.getByteCount() + target.getByteCount());
+                bmp.recycle();
+              }
+              peak = Math.max(peak, (long) target.getByteCount() + packed.data.length);
+              entry = new EpsonBitmapCache.Entry(target, true, ratio, packed);
+            }
+          }
+        } catch (Throwable ignored) {}
+      }
+      ctx.imagesDecoded++;
+      ctx.imageDecodeMs += android.os.SystemClock.elapsedRealtime() - t0;
+      ctx.imagePeakBytes = Math.max(ctx.imagePeakBytes, peak);
+      android.util.Log.d("EpsonPrinter", "Decoded " + path + " " + decoded.sourceWidth + "x" + decoded.sourceHeight
+          + " -> " + width + "x" + height + " (sample " + decoded.sampleSize + ", peak " + peak + " bytes)");
+      return entry;
+    }
+
+    @Override void collectVariables(Set<String> out) { imagePath.collect(out); }
+  }
+}
@@ -0,0 +1,87 @@
+package com.example.epson_printer_android;
+
+import com.epson.epos2.printer.Printer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Removes alignment and style changes that do not change anything and merges consecutive text
+ * into one {@code addText}.
+ *
+ * Receipt builders tend to set alignment and style before every line. The pass tracks the state
+ * the printer will be in while the buffer is replayed; the state starts unknown (the previous job
+ * may have left anything behind), so the first alignment and style of a receipt are always kept.
+ * Commands whose effect on that state is not known reset it to unknown.
+ */
+final class ReceiptOptimizer {
+
+  // Encoded sizes of what gets dropped: ESC a n, and GS B / ESC - / ESC E
+  static final int ALIGN_BYTES = 3;
+  static final int STYLE_BYTES = 9;
+
+  private ReceiptOptimizer() {}
+
+  /** Returns an optimized copy; the input (possibly a shared template) is never modified. */
+  static List<ReceiptCommand> optimize(List<ReceiptCommand> in, ReceiptCommand.Context ctx) {
+    List<ReceiptCommand> out = new ArrayList<>(in.size());
+    int align = -1;
+    ReceiptCommand.TextStyle style = null;
+
+    for (ReceiptCommand cmd : in) {
+      if (cmd instanceof ReceiptCommand.Text) {
+        ReceiptCommand.Text text = (ReceiptCommand.Text) cmd;
+        int newAlign = text.align;
+        if (newAlign >= 0 && newAlign == align) {
+          newAlign = -1;
+          ctx.alignsRemoved++;
+          ctx.bytesSaved += ALIGN_BYTES;
+        } else if (newAlign >= 0) {
+          align = newAlign;
+        }
+        ReceiptCommand last = out.isEmpty() ? null : out.get(out.size() - 1);
+        if (newAlign < 0 && text.data.isAlwaysEmpty()) {
+          ctx.commandsEliminated++;
+        } else if (newAlign < 0 && last instanceof ReceiptCommand.Text) {
+          // Nothing changed since the previous text, so both go out in one addText
+          ReceiptCommand.Text prev = (ReceiptCommand.Text) last;
+          out.set(out.size() - 1, new ReceiptCommand.Text(ReceiptCommand.Bindable.concat(prev.data, text.data), prev.align));
+          ctx.textsMerged++;
+          ctx.commandsEliminated++;
+        } else if (newAlign != text.align) {
+          out.add(new ReceiptCommand.Text(text.data, newAlign));
+        } else {
+          out.add(text);
+        }
+      } else if (cmd instanceof ReceiptCommand.TextStyle) {
+        ReceiptCommand.TextStyle s = (ReceiptCommand.TextStyle) cmd;
+        if (style != null && sameStyle(style, s)) {
+          ctx.stylesRemoved++;
+          ctx.commandsEliminated++;
+          ctx.bytesSaved += STYLE_BYTES;
+        } else {
+          style = s;
+          out.add(s);
+        }
+      } else {
+        out.add(cmd);
+        if (cmd instanceof ReceiptCommand.Image) {
+          // A centered image restores left alignment afterwards
+          if (((ReceiptCommand.Image) cmd).center) align = Printer.ALIGN_LEFT;
+        } else if (cmd instanceof ReceiptCommand.QrCode) {
+          int qrAlign = ((ReceiptCommand.QrCode) cmd).align;
+          if (qrAlign >= 0) align = qrAlign;
+        } else if (!(cmd instanceof ReceiptCommand.Feed || cmd instanceof ReceiptCommand.Barcode
+            || cmd instanceof ReceiptCommand.Pulse || cmd instanceof ReceiptCommand.Beep)) {
+          align = -1;
+          style = null;
+        }
+      }
+    }
+    return out;
+  }
+
+  private static boolean sameStyle(ReceiptCommand.TextStyle a, ReceiptCommand.TextStyle b) {
+    return a.reverse == b.reverse && a.underline == b.underline && a.bold == b.bold && a.color == b.color;
+  }
+}
@@ -0,0 +1,66 @@
+package com.example.epson_printer_android;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+public class EpsonDrawerProfilesTest {
+
+  @Test
+  public void planWithoutHistoryIsTheDefaultOrder() {
+    assertEquals(EpsonDrawerProfiles.DEFAULTS, EpsonDrawerProfiles.plan(null, null));
+  }
+
+  @Test
+  public void learnedPulseMovesToTheFront() {
+    EpsonDrawerProfiles.Pulse learned = EpsonDrawerProfiles.DEFAULTS.get(5);
+    List<EpsonDrawerProfiles.Pulse> plan = EpsonDrawerProfiles.plan(null, learned);
+    assertEquals(EpsonDrawerProfiles.DEFAULTS.size(), plan.size());
+    assertEquals(learned, plan.get(0));
+    // The rest keep their order
+    for (int i = 0, j = 1; i < EpsonDrawerProfiles.DEFAULTS.size(); i++) {
+      if (i == 5) continue;
+      assertEquals(EpsonDrawerProfiles.DEFAULTS.get(i), plan.get(j++));
+    }
+  }
+
+  @Test
+  public void learnedPulseOutsideDefaultsIsTriedFirst() {
+    EpsonDrawerProfiles.Pulse learned = EpsonDrawerProfiles.Pulse.of(true, 5, 300);
+    List<EpsonDrawerProfiles.Pulse> plan = EpsonDrawerProfiles.plan(null, learned);
+    assertEquals(EpsonDrawerProfiles.DEFAULTS.size() + 1, plan.size());
+    assertEquals(learned, plan.get(0));
+    assertEquals(EpsonDrawerProfiles.DEFAULTS, plan.subList(1, plan.size()));
+  }
+
+  @Test
+  public void overrideIsTheOnlyPulse() {
+    EpsonDrawerProfiles.Pulse override = EpsonDrawerProfiles.Pulse.of(false, 5, 300);
+    assertEquals(Collections.singletonList(override),
+        EpsonDrawerProfiles.plan(override, EpsonDrawerProfiles.DEFAULTS.get(0)));
+  }
+
+  @Test
+  public void pulseEncodingRoundTrips() {
+    EpsonDrawerProfiles.Pulse p = EpsonDrawerProfiles.Pulse.of(true, 2, 120);
+    assertEquals(p, EpsonDrawerProfiles.Pulse.decode(p.encode()));
+    // Learned entries carry a timestamp after the pulse
+    assertEquals(p, EpsonDrawerProfiles.Pulse.decode(p.encode() + ",1700000000000"));
+    assertNull(EpsonDrawerProfiles.Pulse.decode("sdk,3,100"));
+    assertNull(EpsonDrawerProfiles.Pulse.decode("garbage"));
+  }
+
+  @Test
+  public void sdkPulseWidthsAreWholeHundreds() {
+    try {
+      EpsonDrawerProfiles.Pulse.of(false, 2, 150);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+}
@@ -0,0 +1,89 @@
+package com.example.epson_printer_android;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+public class EpsonPrintMetricsTest {
+
+  private static Map<String, Object> summary(String metric, long value) {
+    Map<String, Object> m = new HashMap<>();
+    m.put(metric, value);
+    return m;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Map<String, Object> histogram(EpsonPrintMetrics metrics, String metric) {
+    return (Map<String, Object>) ((Map<String, Object>) metrics.snapshot().get("histograms")).get(metric);
+  }
+
+  @Test
+  public void percentilesUseNearestRank() {
+    EpsonPrintMetrics metrics = new EpsonPrintMetrics(EpsonPrintMetrics.DEFAULT_WINDOW);
+    // Out of order on purpose; describe() sorts a copy
+    for (int i = 100; i >= 1; i--) metrics.record("printReceipt", summary("totalMs", i), null);
+    Map<String, Object> h = histogram(metrics, "totalMs");
+    assertEquals(100, h.get("count"));
+    assertEquals(1L, h.get("min"));
+    assertEquals(100L, h.get("max"));
+    assertEquals(50.5, (Double) h.get("mean"), 1e-9);
+    assertEquals(50L, h.get("p50"));
+    assertEquals(90L, h.get("p90"));
+    assertEquals(99L, h.get("p99"));
+  }
+
+  @Test
+  public void singleSampleIsEveryPercentile() {
+    EpsonPrintMetrics metrics = new EpsonPrintMetrics(EpsonPrintMetrics.DEFAULT_WINDOW);
+    metrics.record("printReceipt", summary("printMs", 42), null);
+    Map<String, Object> h = histogram(metrics, "printMs");
+    assertEquals(42L, h.get("p50"));
+    assertEquals(42L, h.get("p99"));
+  }
+
+  @Test
+  public void windowKeepsLatestSamples() {
+    EpsonPrintMetrics metrics = new EpsonPrintMetrics(16);
+    for (int i = 1; i <= 20; i++) metrics.record("printReceipt", summary("buildMs", i), null);
+    Map<String, Object> h = histogram(metrics, "buildMs");
+    assertEquals(16, h.get("count"));
+    assertEquals(5L, h.get("min"));
+    assertEquals(20L, h.get("max"));
+  }
+
+  @Test
+  public void negativeAndUnknownValuesAreSkipped() {
+    EpsonPrintMetrics metrics = new EpsonPrintMetrics(EpsonPrintMetrics.DEFAULT_WINDOW);
+    metrics.record("printReceipt", summary("printMs", -1), null);
+    metrics.record("printReceipt", summary("notAMetric", 5), null);
+    @SuppressWarnings("unchecked")
+    Map<String, Object> histograms = (Map<String, Object>) metrics.snapshot().get("histograms");
+    assertFalse(histograms.containsKey("printMs"));
+    assertFalse(histograms.containsKey("notAMetric"));
+  }
+
+  @Test
+  public void countsJobsAndErrors() {
+    EpsonPrintMetrics metrics = new EpsonPrintMetrics(EpsonPrintMetrics.DEFAULT_WINDOW);
+    Map<String, Object> none = Collections.emptyMap();
+    metrics.record("printReceipt", none, null);
+    metrics.record("printReceipt", none, "ERR_EMPTY");
+    Map<String, Object> event = metrics.record("openCashDrawer", none, "ERR_EMPTY");
+    assertEquals("failed", event.get("status"));
+    assertEquals("openCashDrawer", event.get("kind"));
+
+    Map<String, Object> snapshot = metrics.snapshot();
+    assertEquals(3, snapshot.get("jobs"));
+    assertEquals(2, snapshot.get("failures"));
+    assertEquals(2, ((Map<?, ?>) snapshot.get("jobsByKind")).get("printReceipt"));
+    assertEquals(2, ((Map<?, ?>) snapshot.get("errors")).get("ERR_EMPTY"));
+
+    metrics.reset();
+    assertEquals(0, metrics.snapshot().get("jobs"));
+  }
+}
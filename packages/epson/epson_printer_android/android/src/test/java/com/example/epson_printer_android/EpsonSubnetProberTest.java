@@ -0,0 +1,99 @@
+package com.example.epson_printer_android;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class EpsonSubnetProberTest {
+
+  @Test
+  public void hostsSkipsNetworkAndBroadcast() {
+    assertEquals(Arrays.asList("192.168.1.1", "192.168.1.2"), EpsonSubnetProber.hosts("192.168.1.0/30"));
+  }
+
+  @Test
+  public void hostsKeepsBothAddressesOfSlash31() {
+    assertEquals(Arrays.asList("10.0.0.4", "10.0.0.5"), EpsonSubnetProber.hosts("10.0.0.5/31"));
+  }
+
+  @Test
+  public void bareAddressIsSlash32() {
+    assertEquals(Arrays.asList("10.0.0.5"), EpsonSubnetProber.hosts(" 10.0.0.5 "));
+  }
+
+  @Test
+  public void hostsAlignsToTheNetwork() {
+    List<String> hosts = EpsonSubnetProber.hosts("10.20.3.7/22");
+    assertEquals(1022, hosts.size());
+    assertEquals("10.20.0.1", hosts.get(0));
+    assertEquals("10.20.3.254", hosts.get(hosts.size() - 1));
+  }
+
+  @Test
+  public void rejectsRangesWiderThanMinPrefix() {
+    try {
+      EpsonSubnetProber.hosts("10.0.0.0/15");
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+    try {
+      EpsonSubnetProber.hosts("10.0.0/24");
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  @Test
+  public void identifiesPrinterAnsweringGsI() throws Exception {
+    try (ServerSocketChannel server = ServerSocketChannel.open()) {
+      server.bind(new InetSocketAddress("127.0.0.1", 0));
+      int port = ((InetSocketAddress) server.getLocalAddress()).getPort();
+      final byte[][] request = new byte[1][];
+      Thread printer = new Thread(() -> {
+        try (SocketChannel ch = server.accept()) {
+          ByteBuffer in = ByteBuffer.allocate(6);
+          while (in.hasRemaining() && ch.read(in) >= 0) {}
+          request[0] = Arrays.copyOf(in.array(), in.position());
+          ch.write(ByteBuffer.wrap("_TM-T88VI\0_X8TF012345\0".getBytes(StandardCharsets.US_ASCII)));
+          // Stay open like a printer does; the prober closes once both answers are in
+          ch.read(ByteBuffer.allocate(1));
+        } catch (IOException ignored) {
+        }
+      });
+      printer.start();
+
+      final List<String> serials = new ArrayList<>();
+      EpsonSubnetProber prober = new EpsonSubnetProber(new int[] { port }, 1000, 1000, 4, true);
+      List<String> hits = prober.probe("127.0.0.1", (entry, serial) -> serials.add(serial));
+      printer.join(2000);
+
+      assertArrayEquals(new byte[] { 0x1D, 0x49, 0x43, 0x1D, 0x49, 0x44 }, request[0]);
+      assertEquals(Arrays.asList("TCP:127.0.0.1:TM-T88VI"), hits);
+      assertEquals(Arrays.asList("X8TF012345"), serials);
+    }
+  }
+
+  @Test
+  public void closedPortIsNoHit() throws Exception {
+    int port;
+    try (ServerSocketChannel server = ServerSocketChannel.open()) {
+      server.bind(new InetSocketAddress("127.0.0.1", 0));
+      port = ((InetSocketAddress) server.getLocalAddress()).getPort();
+    }
+    EpsonSubnetProber prober = new EpsonSubnetProber(new int[] { port }, 500, 500, 4, false);
+    assertTrue(prober.probe("127.0.0.1", null).isEmpty());
+  }
+}
@@ -0,0 +1,100 @@
+package com.example.epson_printer_android;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+public class EscPosEncoderTest {
+
+  private static byte[] bytes(int... values) {
+    byte[] out = new byte[values.length];
+    for (int i = 0; i < values.length; i++) out[i] = (byte) values[i];
+    return out;
+  }
+
+  @Test
+  public void textDropsCarriageReturns() throws Exception {
+    assertArrayEquals(bytes('A', '\n', 'B', '\t'), new EscPosEncoder().text("A\r\nB\t").toByteArray());
+  }
+
+  @Test
+  public void textRejectsNonAscii() {
+    try {
+      new EscPosEncoder().text("caf\u00e9");
+      fail();
+    } catch (EscPosEncoder.Unsupported expected) {
+    }
+  }
+
+  @Test
+  public void alignStyleAndCut() {
+    EscPosEncoder out = new EscPosEncoder().align(1).style(true, false, true).cut(true, true).cut(false, false);
+    assertArrayEquals(bytes(
+        0x1B, 'a', 1,
+        0x1D, 'B', 1, 0x1B, '-', 0, 0x1B, 'E', 1,
+        0x1D, 'V', 65, 0,
+        0x1D, 'V', 1), out.toByteArray());
+  }
+
+  @Test
+  public void feedLinesSplitsAt255() {
+    assertArrayEquals(bytes(0x1B, 'd', 255, 0x1B, 'd', 45), new EscPosEncoder().feedLines(300).toByteArray());
+  }
+
+  @Test
+  public void barcodeLengthCountsSentBytes() throws Exception {
+    byte[] out = new EscPosEncoder().barcode(73, "12\r34", 2, 0, 3, 162).toByteArray();
+    assertArrayEquals(bytes(
+        0x1D, 'h', 162, 0x1D, 'w', 3, 0x1D, 'H', 2, 0x1D, 'f', 0,
+        0x1D, 'k', 73, 4, '1', '2', '3', '4'), out);
+  }
+
+  @Test
+  public void qrStoreLengthCountsSentBytes() throws Exception {
+    byte[] out = new EscPosEncoder().qrCode("AB\rC", 2, 1, 6).toByteArray();
+    assertArrayEquals(bytes(
+        0x1D, '(', 'k', 4, 0, 49, 65, 50, 0,
+        0x1D, '(', 'k', 3, 0, 49, 67, 6,
+        0x1D, '(', 'k', 3, 0, 49, 69, 49,
+        0x1D, '(', 'k', 6, 0, 49, 80, 48, 'A', 'B', 'C',
+        0x1D, '(', 'k', 3, 0, 49, 81, 48), out);
+  }
+
+  @Test
+  public void pulseClampsToTwoMillisecondUnits() {
+    assertArrayEquals(bytes(0x1B, 'p', 1, 50, 50), new EscPosEncoder().pulse(1, 100).toByteArray());
+    assertArrayEquals(bytes(0x1B, 'p', 0, 255, 255), new EscPosEncoder().pulse(0, 1000).toByteArray());
+  }
+
+  @Test
+  public void nvGraphicsDelete() {
+    assertArrayEquals(bytes(0x1D, '(', 'L', 4, 0, 48, 66, 'L', '1'), new EscPosEncoder().nvGraphicsDelete("L1").toByteArray());
+  }
+
+  private static EpsonRasterPacker.Packed packed(int rowBytes, int height) {
+    EpsonRasterPacker.Packed p = new EpsonRasterPacker.Packed();
+    p.rowBytes = rowBytes;
+    p.width = rowBytes * 8;
+    p.height = height;
+    p.data = new byte[rowBytes * height];
+    for (int i = 0; i < p.data.length; i++) p.data[i] = (byte) (i + 1);
+    return p;
+  }
+
+  @Test
+  public void rasterSplitsIntoBlocks() {
+    byte[] out = new EscPosEncoder().raster(packed(2, 3), 2).toByteArray();
+    assertArrayEquals(bytes(
+        0x1D, 'v', '0', 0, 2, 0, 2, 0, 1, 2, 3, 4,
+        0x1D, 'v', '0', 0, 2, 0, 1, 0, 5, 6), out);
+  }
+
+  @Test
+  public void rasterRowRange() {
+    byte[] out = new EscPosEncoder().raster(packed(1, 5), 2, 2, 5).toByteArray();
+    assertArrayEquals(bytes(
+        0x1D, 'v', '0', 0, 1, 0, 2, 0, 3, 4,
+        0x1D, 'v', '0', 0, 1, 0, 1, 0, 5), out);
+  }
+}
@@ -22,25 +22,31 @@ abstract class EpsonPrinterPlatform extends PlatformInterface {
   }
 
   /// Discovers available Epson printers
-  Future<List<String>> discoverPrinters() {
+  Future<List<String>> discoverPrinters({bool useCache = false}) {
     throw UnimplementedError('discoverPrinters() has not been implemented.');
   }
 
   /// Discovers available Bluetooth Epson printers specifically
-  Future<List<String>> discoverBluetoothPrinters() {
+  Future<List<String>> discoverBluetoothPrinters({bool useCache = false}) {
     throw UnimplementedError('discoverBluetoothPrinters() has not been implemented.');
   }
 
   /// Discovers available USB Epson printers specifically
-  Future<List<String>> discoverUsbPrinters() {
+  Future<List<String>> discoverUsbPrinters({bool useCache = false, bool sdkDiscovery = false}) {
     throw UnimplementedError('discoverUsbPrinters() has not been implemented.');
   }
 
   /// Discovers LAN, Bluetooth, and USB in a single orchestrated pass (platform-native)
-  Future<List<String>> discoverAllPrinters() {
+  Future<List<String>> discoverAllPrinters(
+      {bool singleSession = false, String? expectedTarget, int? timeoutMs, bool useCache = false}) {
     throw UnimplementedError('discoverAllPrinters() has not been implemented.');
   }
 
+  /// Printers found by a single-session discovery, as they answer
+  Stream<Map<String, dynamic>> get discoveryEvents {
+    throw UnimplementedError('discoveryEvents has not been implemented.');
+  }
+
   Future<List<String>> findPairedBluetoothPrinters() {
     throw UnimplementedError('findPairedBluetoothPrinters() has not been implemented.');
   }
@@ -54,33 +60,38 @@ abstract class EpsonPrinterPlatform extends PlatformInterface {
     throw UnimplementedError('usbDiagnostics() has not been implemented.');
   }
 
-  /// Connects to a Epson printer
-  Future<void> connect(EpsonConnectionSettings settings) {
+  /// Connects to a Epson printer; resolves to the connect phase timings (may be empty)
+  Future<Map<String, dynamic>> connect(EpsonConnectionSettings settings) {
     throw UnimplementedError('connect() has not been implemented.');
   }
 
+  /// Cancels connects still in progress; returns how many were cancelled
+  Future<int> cancelConnect() {
+    throw UnimplementedError('cancelConnect() has not been implemented.');
+  }
+
   /// Disconnects from the current printer
-  Future<void> disconnect() {
+  Future<void> disconnect({String? target}) {
     throw UnimplementedError('disconnect() has not been implemented.');
   }
 
-  /// Prints a receipt with the given content
-  Future<void> printReceipt(EpsonPrintJob printJob) {
+  /// Prints a receipt with the given content; resolves to the native job summary (may be empty)
+  Future<Map<String, dynamic>> printReceipt(EpsonPrintJob printJob) {
     throw UnimplementedError('printReceipt() has not been implemented.');
   }
 
   /// Gets the current printer status
-  Future<EpsonPrinterStatus> getStatus() {
+  Future<EpsonPrinterStatus> getStatus({String? target}) {
     throw UnimplementedError('getStatus() has not been implemented.');
   }
 
-  /// Opens the cash drawer
-  Future<void> openCashDrawer() {
+  /// Opens the cash drawer; resolves to the drawer kick used and how many attempts it took
+  Future<Map<String, dynamic>> openCashDrawer({String? target}) {
     throw UnimplementedError('openCashDrawer() has not been implemented.');
   }
 
   /// Checks if a printer is connected
-  Future<bool> isConnected() {
+  Future<bool> isConnected({String? target}) {
     throw UnimplementedError('isConnected() has not been implemented.');
   }
 
@@ -95,7 +106,148 @@ abstract class EpsonPrinterPlatform extends PlatformInterface {
   }
 
   /// Detects the paper width of the connected printer
-  Future<String> detectPaperWidth() {
+  Future<String> detectPaperWidth({String? target}) {
     throw UnimplementedError('detectPaperWidth() has not been implemented.');
   }
+
+  /// Returns the connected printer's job queue depth, capacity and oldest job age
+  Future<Map<String, dynamic>> getJobQueueStatus({String? target}) {
+    throw UnimplementedError('getJobQueueStatus() has not been implemented.');
+  }
+
+  /// Prints several receipts in one buffer and one send, cutting between them
+  Future<Map<String, dynamic>> printBatch(List<EpsonPrintJob> receipts,
+      {bool cutBetween = true, Map<String, dynamic>? settings, String? target}) {
+    throw UnimplementedError('printBatch() has not been implemented.');
+  }
+
+  /// Compiles a receipt skeleton natively; `{{name}}` placeholders are bound by [printTemplate]
+  Future<Map<String, dynamic>> registerTemplate(String id, List<EpsonPrintCommand> commands) {
+    throw UnimplementedError('registerTemplate() has not been implemented.');
+  }
+
+  /// Prints a registered template, sending only the variable values across the channel
+  Future<Map<String, dynamic>> printTemplate(String id, Map<String, String> variables,
+      {Map<String, dynamic>? settings, String? target}) {
+    throw UnimplementedError('printTemplate() has not been implemented.');
+  }
+
+  /// Removes a registered template; returns false if the id was unknown
+  Future<bool> unregisterTemplate(String id) {
+    throw UnimplementedError('unregisterTemplate() has not been implemented.');
+  }
+
+  /// Returns hit/miss/eviction counters and memory use of the native print-ready image cache
+  Future<Map<String, dynamic>> getImageCacheStats() {
+    throw UnimplementedError('getImageCacheStats() has not been implemented.');
+  }
+
+  /// Resizes and/or clears the native image cache; returns the updated stats
+  Future<Map<String, dynamic>> configureImageCache({int? maxBytes, bool clear = false}) {
+    throw UnimplementedError('configureImageCache() has not been implemented.');
+  }
+
+  /// Stores an image in the printer's NV graphics memory under a two-character key code
+  Future<Map<String, dynamic>> uploadNvLogo(String key, String imagePath,
+      {int? targetWidth, int? bwThreshold, bool force = false, String? target}) {
+    throw UnimplementedError('uploadNvLogo() has not been implemented.');
+  }
+
+  /// Deletes an NV graphics key code from the printer and the registry
+  Future<Map<String, dynamic>> deleteNvLogo(String key, {String? target}) {
+    throw UnimplementedError('deleteNvLogo() has not been implemented.');
+  }
+
+  /// Forgets which NV logo [key] (or every logo) the printer holds, so the next use uploads it again
+  Future<int> forgetNvLogos({String? key, String? target}) {
+    throw UnimplementedError('forgetNvLogos() has not been implemented.');
+  }
+
+  /// Returns the NV logos recorded for the connected printer, by key code
+  Future<Map<String, dynamic>> getNvLogos({String? target}) {
+    throw UnimplementedError('getNvLogos() has not been implemented.');
+  }
+
+  /// Returns the printable width (dots) images are scaled to on the current connection
+  Future<Map<String, dynamic>> getPrintableWidth({String? target}) {
+    throw UnimplementedError('getPrintableWidth() has not been implemented.');
+  }
+
+  /// Probes a CIDR range for LAN printers without relying on broadcast
+  Future<Map<String, dynamic>> probeSubnet(String cidr,
+      {List<int>? ports, int? timeoutMs, int? identifyTimeoutMs, int? maxConcurrency, bool requireIdentify = true}) {
+    throw UnimplementedError('probeSubnet() has not been implemented.');
+  }
+
+  /// Returns the persisted discovery cache (ttlMs, lastConnected, printers)
+  Future<Map<String, dynamic>> getDiscoveryCache() {
+    throw UnimplementedError('getDiscoveryCache() has not been implemented.');
+  }
+
+  /// Sets the discovery cache TTL and/or clears it; returns the TTL in effect
+  Future<int> configureDiscoveryCache({int? ttlMs, bool clear = false}) {
+    throw UnimplementedError('configureDiscoveryCache() has not been implemented.');
+  }
+
+  /// Returns one record per physical printer with its transports, fastest first
+  Future<List<Map<String, dynamic>>> getPrinterIdentities() {
+    throw UnimplementedError('getPrinterIdentities() has not been implemented.');
+  }
+
+  /// Forgets printer identities and transport measurements
+  Future<void> clearPrinterIdentities() {
+    throw UnimplementedError('clearPrinterIdentities() has not been implemented.');
+  }
+
+  /// Returns the learned drawer kick and override of every printer on record, by target
+  Future<Map<String, dynamic>> getDrawerProfiles() {
+    throw UnimplementedError('getDrawerProfiles() has not been implemented.');
+  }
+
+  /// Pins a printer's drawer kick; with neither [pin] nor [pulseMs] the override is removed
+  Future<Map<String, dynamic>> setDrawerOverride({String? target, int? pin, int? pulseMs, bool rawEscPos = false}) {
+    throw UnimplementedError('setDrawerOverride() has not been implemented.');
+  }
+
+  /// Forgets learned drawer kicks and overrides for [target], or for every printer
+  Future<void> clearDrawerProfiles({String? target}) {
+    throw UnimplementedError('clearDrawerProfiles() has not been implemented.');
+  }
+
+  /// Returns link state, reconnect counts and downtime of the connected printer
+  Future<Map<String, dynamic>> getConnectionMetrics({String? target}) {
+    throw UnimplementedError('getConnectionMetrics() has not been implemented.');
+  }
+
+  /// Lists the connected printers with their link state, printable width and queue depth
+  Future<List<Map<String, dynamic>>> getConnectedPrinters() {
+    throw UnimplementedError('getConnectedPrinters() has not been implemented.');
+  }
+
+  /// Returns rolling per-job timing, byte and error statistics; [reset] clears them afterwards
+  Future<Map<String, dynamic>> getPrintMetrics({bool reset = false}) {
+    throw UnimplementedError('getPrintMetrics() has not been implemented.');
+  }
+
+  /// One record per finished print or drawer job
+  Stream<Map<String, dynamic>> get jobEvents {
+    throw UnimplementedError('jobEvents has not been implemented.');
+  }
+
+  /// One record per status monitor change of a connected printer
+  Stream<Map<String, dynamic>> get statusEvents {
+    throw UnimplementedError('statusEvents has not been implemented.');
+  }
+
+  /// Times image thresholding: former single-threaded loop versus the packed, parallel path
+  Future<Map<String, dynamic>> benchmarkImagePacking(String imagePath,
+      {int threshold = 128, int iterations = 10, int? targetWidth, int? printerWidth}) {
+    throw UnimplementedError('benchmarkImagePacking() has not been implemented.');
+  }
+
+  /// Times building [commands] through the SDK versus the raw ESC/POS encoder (no printing)
+  Future<Map<String, dynamic>> benchmarkEncoder(List<EpsonPrintCommand> commands,
+      {int iterations = 50, EpsonPrinterSeries? printerSeries, EpsonModelLang? modelLang}) {
+    throw UnimplementedError('benchmarkEncoder() has not been implemented.');
+  }
 }
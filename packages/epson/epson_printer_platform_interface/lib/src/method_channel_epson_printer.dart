@@ -9,30 +9,58 @@ class MethodChannelEpsonPrinter extends EpsonPrinterPlatform {
   @visibleForTesting
   final methodChannel = const MethodChannel('epson_printer');
 
+  /// The event channel the native side pushes finished job records on.
+  @visibleForTesting
+  final jobEventChannel = const EventChannel('epson_printer/jobs');
+
+  /// The event channel single-session discovery streams printers on.
+  @visibleForTesting
+  final discoveryEventChannel = const EventChannel('epson_printer/discovery');
+
+  /// The event channel the native status monitors push printer status changes on.
+  @visibleForTesting
+  final statusEventChannel = const EventChannel('epson_printer/status');
+
   @override
-  Future<List<String>> discoverPrinters() async {
-    final result = await methodChannel.invokeMethod<List<dynamic>>('discoverPrinters');
+  Future<List<String>> discoverPrinters({bool useCache = false}) async {
+    final result = await methodChannel.invokeMethod<List<dynamic>>('discoverPrinters', {'useCache': useCache});
     return result?.cast<String>() ?? [];
   }
 
   @override
-  Future<List<String>> discoverBluetoothPrinters() async {
-    final List<dynamic> result = await methodChannel.invokeMethod('discoverBluetoothPrinters');
+  Future<List<String>> discoverBluetoothPrinters({bool useCache = false}) async {
+    final List<dynamic> result = await methodChannel.invokeMethod('discoverBluetoothPrinters', {'useCache': useCache});
     return result.cast<String>();
   }
 
   @override
-  Future<List<String>> discoverUsbPrinters() async {
-    final List<dynamic> result = await methodChannel.invokeMethod('discoverUsbPrinters');
+  Future<List<String>> discoverUsbPrinters({bool useCache = false, bool sdkDiscovery = false}) async {
+    final List<dynamic> result = await methodChannel.invokeMethod('discoverUsbPrinters', {
+      'useCache': useCache,
+      'usbMode': sdkDiscovery ? 'sdk' : 'fast',
+    });
     return result.cast<String>();
   }
 
   @override
-  Future<List<String>> discoverAllPrinters() async {
-    final List<dynamic> result = await methodChannel.invokeMethod('discoverAllPrinters');
+  Future<List<String>> discoverAllPrinters(
+      {bool singleSession = false, String? expectedTarget, int? timeoutMs, bool useCache = false}) async {
+    final List<dynamic> result = await methodChannel.invokeMethod('discoverAllPrinters', {
+      'singleSession': singleSession,
+      'useCache': useCache,
+      'expectedTarget': expectedTarget,
+      'timeout': timeoutMs,
+    });
     return result.cast<String>();
   }
 
+  @override
+  Stream<Map<String, dynamic>> get discoveryEvents {
+    return discoveryEventChannel
+        .receiveBroadcastStream()
+        .map((event) => Map<String, dynamic>.from(event as Map));
+  }
+
   @override
   Future<List<String>> findPairedBluetoothPrinters() async {
     final List<dynamic> result = await methodChannel.invokeMethod('findPairedBluetoothPrinters');
@@ -52,34 +80,43 @@ class MethodChannelEpsonPrinter extends EpsonPrinterPlatform {
   }
 
   @override
-  Future<void> connect(EpsonConnectionSettings settings) async {
-    await methodChannel.invokeMethod<void>('connect', settings.toMap());
+  Future<Map<String, dynamic>> connect(EpsonConnectionSettings settings) async {
+    final result = await methodChannel.invokeMethod<Map<dynamic, dynamic>>('connect', settings.toMap());
+    return Map<String, dynamic>.from(result ?? {});
   }
 
   @override
-  Future<void> disconnect() async {
-    await methodChannel.invokeMethod<void>('disconnect');
+  Future<int> cancelConnect() async {
+    final result = await methodChannel.invokeMethod<int>('cancelConnect');
+    return result ?? 0;
   }
 
   @override
-  Future<void> printReceipt(EpsonPrintJob printJob) async {
-    await methodChannel.invokeMethod<void>('printReceipt', printJob.toMap());
+  Future<void> disconnect({String? target}) async {
+    await methodChannel.invokeMethod<void>('disconnect', {'target': target});
   }
 
   @override
-  Future<EpsonPrinterStatus> getStatus() async {
-    final result = await methodChannel.invokeMethod<Map<String, dynamic>>('getStatus');
-    return EpsonPrinterStatus.fromMap(result ?? {});
+  Future<Map<String, dynamic>> printReceipt(EpsonPrintJob printJob) async {
+    final result = await methodChannel.invokeMethod<Map<dynamic, dynamic>>('printReceipt', printJob.toMap());
+    return Map<String, dynamic>.from(result ?? {});
   }
 
   @override
-  Future<void> openCashDrawer() async {
-    await methodChannel.invokeMethod<void>('openCashDrawer');
+  Future<EpsonPrinterStatus> getStatus({String? target}) async {
+    final result = await methodChannel.invokeMethod<Map<dynamic, dynamic>>('getStatus', {'target': target});
+    return EpsonPrinterStatus.fromMap(Map<String, dynamic>.from(result ?? {}));
+  }
+
+  @override
+  Future<Map<String, dynamic>> openCashDrawer({String? target}) async {
+    final result = await methodChannel.invokeMethod<Map<dynamic, dynamic>>('openCashDrawer', {'target': target});
+    return Map<String, dynamic>.from(result ?? {});
   }
 
   @override
-  Future<bool> isConnected() async {
-    final result = await methodChannel.invokeMethod<bool>('isConnected');
+  Future<bool> isConnected({String? target}) async {
+    final result = await methodChannel.invokeMethod<bool>('isConnected', {'target': target});
     return result ?? false;
   }
 
@@ -95,8 +132,225 @@ class MethodChannelEpsonPrinter extends EpsonPrinterPlatform {
   }
 
   @override
-  Future<String> detectPaperWidth() async {
-    final result = await methodChannel.invokeMethod<String>('detectPaperWidth');
+  Future<String> detectPaperWidth({String? target}) async {
+    final result = await methodChannel.invokeMethod<String>('detectPaperWidth', {'target': target});
     return result ?? 'Unknown';
   }
+
+  @override
+  Future<Map<String, dynamic>> getJobQueueStatus({String? target}) async {
+    final result = await methodChannel.invokeMethod<Map<dynamic, dynamic>>('getJobQueueStatus', {'target': target});
+    return Map<String, dynamic>.from(result ?? {});
+  }
+
+  @override
+  Future<Map<String, dynamic>> printBatch(List<EpsonPrintJob> receipts,
+      {bool cutBetween = true, Map<String, dynamic>? settings, String? target}) async {
+    final result = await methodChannel.invokeMethod<Map<dynamic, dynamic>>('printBatch', {
+      'receipts': receipts.map((job) => job.toMap()).toList(),
+      'cutBetween': cutBetween,
+      'settings': settings,
+      'target': target,
+    });
+    return Map<String, dynamic>.from(result ?? {});
+  }
+
+  @override
+  Future<Map<String, dynamic>> registerTemplate(String id, List<EpsonPrintCommand> commands) async {
+    final result = await methodChannel.invokeMethod<Map<dynamic, dynamic>>('registerTemplate', {
+      'id': id,
+      'commands': commands.map((cmd) => cmd.toMap()).toList(),
+    });
+    return Map<String, dynamic>.from(result ?? {});
+  }
+
+  @override
+  Future<Map<String, dynamic>> printTemplate(String id, Map<String, String> variables,
+      {Map<String, dynamic>? settings, String? target}) async {
+    final result = await methodChannel.invokeMethod<Map<dynamic, dynamic>>('printTemplate', {
+      'id': id,
+      'variables': variables,
+      'settings': settings,
+      'target': target,
+    });
+    return Map<String, dynamic>.from(result ?? {});
+  }
+
+  @override
+  Future<bool> unregisterTemplate(String id) async {
+    final result = await methodChannel.invokeMethod<bool>('unregisterTemplate', {'id': id});
+    return result ?? false;
+  }
+
+  @override
+  Future<Map<String, dynamic>> getImageCacheStats() async {
+    final result = await methodChannel.invokeMethod<Map<dynamic, dynamic>>('getImageCacheStats');
+    return Map<String, dynamic>.from(result ?? {});
+  }
+
+  @override
+  Future<Map<String, dynamic>> configureImageCache({int? maxBytes, bool clear = false}) async {
+    final result = await methodChannel.invokeMethod<Map<dynamic, dynamic>>('configureImageCache', {
+      'maxBytes': maxBytes,
+      'clear': clear,
+    });
+    return Map<String, dynamic>.from(result ?? {});
+  }
+
+  @override
+  Future<Map<String, dynamic>> uploadNvLogo(String key, String imagePath,
+      {int? targetWidth, int? bwThreshold, bool force = false, String? target}) async {
+    final result = await methodChannel.invokeMethod<Map<dynamic, dynamic>>('uploadNvLogo', {
+      'key': key,
+      'imagePath': imagePath,
+      'targetWidth': targetWidth,
+      'bwThreshold': bwThreshold,
+      'force': force,
+      'target': target,
+    });
+    return Map<String, dynamic>.from(result ?? {});
+  }
+
+  @override
+  Future<Map<String, dynamic>> deleteNvLogo(String key, {String? target}) async {
+    final result = await methodChannel.invokeMethod<Map<dynamic, dynamic>>('deleteNvLogo', {'key': key, 'target': target});
+    return Map<String, dynamic>.from(result ?? {});
+  }
+
+  @override
+  Future<int> forgetNvLogos({String? key, String? target}) async {
+    final result = await methodChannel.invokeMethod<int>('forgetNvLogos', {'key': key, 'target': target});
+    return result ?? 0;
+  }
+
+  @override
+  Future<Map<String, dynamic>> getNvLogos({String? target}) async {
+    final result = await methodChannel.invokeMethod<Map<dynamic, dynamic>>('getNvLogos', {'target': target});
+    return Map<String, dynamic>.from(result ?? {});
+  }
+
+  @override
+  Future<Map<String, dynamic>> getPrintableWidth({String? target}) async {
+    final result = await methodChannel.invokeMethod<Map<dynamic, dynamic>>('getPrintableWidth', {'target': target});
+    return Map<String, dynamic>.from(result ?? {});
+  }
+
+  @override
+  Future<Map<String, dynamic>> probeSubnet(String cidr,
+      {List<int>? ports, int? timeoutMs, int? identifyTimeoutMs, int? maxConcurrency, bool requireIdentify = true}) async {
+    final result = await methodChannel.invokeMethod<Map<dynamic, dynamic>>('probeSubnet', {
+      'cidr': cidr,
+      'ports': ports,
+      'timeout': timeoutMs,
+      'identifyTimeout': identifyTimeoutMs,
+      'maxConcurrency': maxConcurrency,
+      'requireIdentify': requireIdentify,
+    });
+    return Map<String, dynamic>.from(result ?? {});
+  }
+
+  @override
+  Future<Map<String, dynamic>> getDiscoveryCache() async {
+    final result = await methodChannel.invokeMethod<Map<dynamic, dynamic>>('getDiscoveryCache');
+    return Map<String, dynamic>.from(result ?? {});
+  }
+
+  @override
+  Future<int> configureDiscoveryCache({int? ttlMs, bool clear = false}) async {
+    final result = await methodChannel.invokeMethod<int>('configureDiscoveryCache', {
+      'ttlMs': ttlMs,
+      'clear': clear,
+    });
+    return result ?? 0;
+  }
+
+  @override
+  Future<List<Map<String, dynamic>>> getPrinterIdentities() async {
+    final result = await methodChannel.invokeMethod<List<dynamic>>('getPrinterIdentities');
+    return (result ?? []).map((e) => Map<String, dynamic>.from(e as Map)).toList();
+  }
+
+  @override
+  Future<void> clearPrinterIdentities() async {
+    await methodChannel.invokeMethod<void>('clearPrinterIdentities');
+  }
+
+  @override
+  Future<Map<String, dynamic>> getDrawerProfiles() async {
+    final result = await methodChannel.invokeMethod<Map<dynamic, dynamic>>('getDrawerProfiles');
+    return Map<String, dynamic>.from(result ?? {});
+  }
+
+  @override
+  Future<Map<String, dynamic>> setDrawerOverride({String? target, int? pin, int? pulseMs, bool rawEscPos = false}) async {
+    final result = await methodChannel.invokeMethod<Map<dynamic, dynamic>>('setDrawerOverride', {
+      'target': target,
+      'pin': pin,
+      'pulseMs': pulseMs,
+      'rawEscPos': rawEscPos,
+    });
+    return Map<String, dynamic>.from(result ?? {});
+  }
+
+  @override
+  Future<void> clearDrawerProfiles({String? target}) async {
+    await methodChannel.invokeMethod<void>('clearDrawerProfiles', {'target': target});
+  }
+
+  @override
+  Future<Map<String, dynamic>> getConnectionMetrics({String? target}) async {
+    final result = await methodChannel.invokeMethod<Map<dynamic, dynamic>>('getConnectionMetrics', {'target': target});
+    return Map<String, dynamic>.from(result ?? {});
+  }
+
+  @override
+  Future<List<Map<String, dynamic>>> getConnectedPrinters() async {
+    final result = await methodChannel.invokeMethod<List<dynamic>>('getConnectedPrinters');
+    return (result ?? []).map((e) => Map<String, dynamic>.from(e as Map)).toList();
+  }
+
+  @override
+  Future<Map<String, dynamic>> getPrintMetrics({bool reset = false}) async {
+    final result = await methodChannel.invokeMethod<Map<dynamic, dynamic>>('getPrintMetrics', {'reset': reset});
+    return Map<String, dynamic>.from(result ?? {});
+  }
+
+  @override
+  Stream<Map<String, dynamic>> get jobEvents {
+    return jobEventChannel
+        .receiveBroadcastStream()
+        .map((event) => Map<String, dynamic>.from(event as Map));
+  }
+
+  @override
+  Stream<Map<String, dynamic>> get statusEvents {
+    return statusEventChannel
+        .receiveBroadcastStream()
+        .map((event) => Map<String, dynamic>.from(event as Map));
+  }
+
+  @override
+  Future<Map<String, dynamic>> benchmarkImagePacking(String imagePath,
+      {int threshold = 128, int iterations = 10, int? targetWidth, int? printerWidth}) async {
+    final result = await methodChannel.invokeMethod<Map<dynamic, dynamic>>('benchmarkImagePacking', {
+      'imagePath': imagePath,
+      'threshold': threshold,
+      'iterations': iterations,
+      'targetWidth': targetWidth,
+      'printerWidth': printerWidth,
+    });
+    return Map<String, dynamic>.from(result ?? {});
+  }
+
+  @override
+  Future<Map<String, dynamic>> benchmarkEncoder(List<EpsonPrintCommand> commands,
+      {int iterations = 50, EpsonPrinterSeries? printerSeries, EpsonModelLang? modelLang}) async {
+    final result = await methodChannel.invokeMethod<Map<dynamic, dynamic>>('benchmarkEncoder', {
+      'commands': commands.map((cmd) => cmd.toMap()).toList(),
+      'iterations': iterations,
+      'printerSeries': printerSeries?.index,
+      'modelLang': modelLang?.index,
+    });
+    return Map<String, dynamic>.from(result ?? {});
+  }
 }
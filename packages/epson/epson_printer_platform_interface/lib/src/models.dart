@@ -59,12 +59,54 @@ class EpsonConnectionSettings {
   final EpsonPrinterSeries? printerSeries;
   final EpsonModelLang? modelLang;
 
+  /// Maximum number of print/drawer jobs allowed to wait for this printer (Android)
+  final int jobQueueCapacity;
+
+  /// Printable width in dots; when null the plugin asks the printer for its paper width once
+  /// per connection (Android)
+  final int? printableWidth;
+
+  /// Connect to the last printer connected to successfully if the discovery cache still holds it
+  /// as fresh, without discovering first; [identifier] is only used when it does not (Android)
+  final bool useCachedTarget;
+
+  /// Connect through whichever transport of the same printer (matched by MAC, IP or serial) has
+  /// measured fastest and was seen recently, instead of the one [identifier] names (Android)
+  final bool preferFastestTransport;
+
+  /// Keep the link up between jobs: when it drops, queued jobs wait while the plugin reconnects in
+  /// the background with exponential backoff (Android). The job that was being sent when the link
+  /// dropped fails with `ERR_DISCONNECT` and is not retried; resubmit it if it must print. Without
+  /// it the link `state` in `getConnectionMetrics` is `unmanaged`.
+  final bool autoReconnect;
+
+  /// How long a dropped link may stay down before queued jobs fail and the printer is released
+  /// (ms, default 120000; Android)
+  final int? reconnectTimeout;
+
+  /// Watch paper, cover and online state with the SDK's status monitor so `getStatus`
+  /// answers from a cache, changes are pushed to `statusEvents` and print jobs fail at once with
+  /// `PRINTER_NOT_READY` while the printer cannot print (Android). Off by default: it polls the
+  /// printer every [statusInterval] and makes jobs fail fast instead of waiting for the printer
+  final bool monitorStatus;
+
+  /// Status monitor polling interval (ms, at least 1000, default 1000; Android)
+  final int? statusInterval;
+
   const EpsonConnectionSettings({
     required this.portType,
     required this.identifier,
     this.timeout = 15000,
     this.printerSeries,
     this.modelLang = EpsonModelLang.ank,
+    this.jobQueueCapacity = 16,
+    this.printableWidth,
+    this.useCachedTarget = false,
+    this.preferFastestTransport = false,
+    this.autoReconnect = true,
+    this.reconnectTimeout,
+    this.monitorStatus = false,
+    this.statusInterval,
   });
 
   /// Generates the target string for the Epson connect API
@@ -98,6 +140,14 @@ class EpsonConnectionSettings {
       'targetString': targetString,
       'printerSeries': printerSeries?.index,
       'modelLang': modelLang?.index,
+      'jobQueueCapacity': jobQueueCapacity,
+      'printableWidth': printableWidth,
+      'useCachedTarget': useCachedTarget,
+      'preferFastestTransport': preferFastestTransport,
+      'autoReconnect': autoReconnect,
+      'reconnectTimeout': reconnectTimeout,
+      'monitorStatus': monitorStatus,
+      'statusInterval': statusInterval,
     };
   }
 
@@ -112,6 +162,14 @@ class EpsonConnectionSettings {
       modelLang: map['modelLang'] != null 
           ? EpsonModelLang.values[map['modelLang']] 
           : null,
+      jobQueueCapacity: map['jobQueueCapacity'] ?? 16,
+      printableWidth: map['printableWidth'],
+      useCachedTarget: map['useCachedTarget'] ?? false,
+      preferFastestTransport: map['preferFastestTransport'] ?? false,
+      autoReconnect: map['autoReconnect'] ?? true,
+      reconnectTimeout: map['reconnectTimeout'],
+      monitorStatus: map['monitorStatus'] ?? false,
+      statusInterval: map['statusInterval'],
     );
   }
 }
@@ -120,16 +178,20 @@ class EpsonConnectionSettings {
 class EpsonPrintJob {
   final List<EpsonPrintCommand> commands;
   final Map<String, dynamic>? settings;
+  /// Connected printer to print on; null for the one connected last
+  final String? target;
 
   const EpsonPrintJob({
     required this.commands,
     this.settings,
+    this.target,
   });
 
   Map<String, dynamic> toMap() {
     return {
       'commands': commands.map((cmd) => cmd.toMap()).toList(),
       'settings': settings,
+      'target': target,
     };
   }
 }
@@ -328,6 +390,7 @@ enum EpsonCommandType {
   pulse,
   beep,
   layout,
+  nvLogo,
 }
 
 /// Port types supported by Epson printers